@@ -0,0 +1,81 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import com.wealthpilot.quote.store.util.AssignedOrSequenceGenerator;
+import com.wealthpilot.quote.store.util.IsinQuote;
+
+/**
+ * Bulk inserts of new quotes and identifiers with ids allocated one by one (<code>idIncrementSize</code> 1, a sequence call per row) and in
+ * pooled blocks, the sequence of the benchmark database increments by the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IdAllocationBenchmark {
+
+    private static final int BULK_SIZE = 500;
+
+    @Param({ "1", "10", "50" })
+    public int idIncrementSize;
+
+    private ConfigurableApplicationContext context;
+    private JPAQuoteService quoteService;
+    private QuoteGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = QuoteStoreBenchmarkApplication.start("spring.jpa.properties." + AssignedOrSequenceGenerator.INCREMENT_SIZE_SETTING + "=" + idIncrementSize,
+                        "spring.liquibase.parameters.id_increment_size=" + idIncrementSize);
+        quoteService = context.getBean(JPAQuoteService.class);
+        generator = new QuoteGenerator(1, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Stores the history of a new ISIN, inserting {@value #BULK_SIZE} quotes.
+     *
+     * @return the number of quotes written.
+     */
+    @Benchmark
+    public int replaceQuoteHistoryNewIsin() {
+        String isin = generator.newIsin();
+        return quoteService.replaceQuoteHistory(isin, generator.history(isin, BULK_SIZE, LocalDate.now()));
+    }
+
+    /**
+     * Stores one quote each of {@value #BULK_SIZE} new ISINs, inserting as many identifiers, quotes and latest quotes.
+     */
+    @Benchmark
+    public void storeQuotesNewIsins() {
+        List<IsinQuote> quotes = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++) {
+            quotes.add(generator.isinQuote(generator.newIsin(), LocalDate.now()));
+        }
+        quoteService.storeQuotes(quotes);
+    }
+}
@@ -0,0 +1,106 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteSeries;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+/**
+ * Benchmarks of building an {@link IsinQuoteHistory} and of lookups in it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsinQuoteHistoryBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({ "250", "5000" })
+    public int historyLength;
+
+    private List<Quote> quotes;
+    private List<Quote> shuffledQuotes;
+    private IsinQuoteHistory history;
+    private final LocalDate[] lookupDates = new LocalDate[LOOKUPS];
+    private int nextLookup;
+
+    @Setup
+    public void setUp() {
+        IsinQuoteHistory generated = new QuoteGenerator(1, 42).history(QuoteGenerator.isin(0), historyLength, LocalDate.now());
+        quotes = new ArrayList<>(generated.getQuotes().values());
+        shuffledQuotes = new ArrayList<>(quotes);
+        Collections.shuffle(shuffledQuotes, new Random(42));
+        history = build(quotes);
+        Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookupDates[i] = quotes.get(random.nextInt(quotes.size())).getDate();
+        }
+    }
+
+    private static IsinQuoteHistory build(List<Quote> quotes) {
+        IsinQuoteHistory history = new IsinQuoteHistory(QuoteGenerator.isin(0), "GER", QuoteSource.NDGIT);
+        quotes.forEach(history::addQuote);
+        history.getSeries();
+        return history;
+    }
+
+    @Benchmark
+    public IsinQuoteHistory buildFromSortedQuotes() {
+        return build(quotes);
+    }
+
+    @Benchmark
+    public IsinQuoteHistory buildFromShuffledQuotes() {
+        return build(shuffledQuotes);
+    }
+
+    @Benchmark
+    public QuoteSeries buildSeriesFromSortedQuotes() {
+        QuoteSeries.Builder builder = QuoteSeries.builder();
+        quotes.forEach(builder::add);
+        return builder.build();
+    }
+
+    @Benchmark
+    public Optional<Quote> getQuote() {
+        return history.getQuote(lookupDates[nextLookup++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public Optional<LocalDate> getLatestDate() {
+        return history.getLatestDate();
+    }
+
+    @Benchmark
+    public Optional<LocalDate> getFirstDate() {
+        return history.getFirstDate();
+    }
+
+    @Benchmark
+    public void iterateQuotes(Blackhole blackhole) {
+        history.getQuotes().forEach((date, quote) -> blackhole.consume(quote.getAmount()));
+    }
+}
@@ -0,0 +1,174 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.context.ConfigurableApplicationContext;
+import com.wealthpilot.quote.store.util.FillPolicy;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.PriceMatrix;
+import com.wealthpilot.quote.store.util.Quote;
+
+/**
+ * Benchmarks of the {@link JPAQuoteService} read and write paths against an in-memory database,
+ * prefilled with <code>isinCardinality</code> histories of <code>historyLength</code> quotes each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class JPAQuoteServiceBenchmark {
+
+    private static final int BULK_SIZE = 50;
+    private static final int CHANGED_QUOTES = 5;
+
+    @Param("200")
+    public int isinCardinality;
+
+    @Param({ "20", "5000" })
+    public int historyLength;
+
+    @Param({ "true", "false" })
+    public boolean historyCache;
+
+    private ConfigurableApplicationContext context;
+    private JPAQuoteService quoteService;
+    private QuoteGenerator generator;
+    private LocalDate lastDate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = QuoteStoreBenchmarkApplication.start("quote-store.history-cache.max-quotes=" + (historyCache ? Integer.MAX_VALUE : 0));
+        quoteService = context.getBean(JPAQuoteService.class);
+        generator = new QuoteGenerator(isinCardinality, 42);
+        lastDate = LocalDate.now();
+        prefill(context, generator, historyLength, lastDate);
+    }
+
+    /**
+     * Creates the identifiers of all ISINs of the generator and stores a history of the given length for each of them.
+     *
+     * @param context the context to prefill the database of.
+     * @param generator generates the ISINs and histories.
+     * @param historyLength the number of quotes per ISIN.
+     * @param lastDate the latest date of the histories.
+     */
+    static void prefill(ConfigurableApplicationContext context, QuoteGenerator generator, int historyLength, LocalDate lastDate) {
+        JPAQuoteService quoteService = context.getBean(JPAQuoteService.class);
+        // refreshQuoteHistory is not part of the proxied API, it runs its own transaction on the target
+        JPAQuoteService target = (JPAQuoteService) AopProxyUtils.getSingletonTarget(quoteService);
+        List<String> isins = generator.isins();
+        quoteService.getQuoteHistories(isins);
+        for (String isin : isins) {
+            JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
+            identifier.setIsin(isin);
+            target.refreshQuoteHistory(identifier, generator.history(isin, historyLength, lastDate));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void storeQuoteNewIsin() {
+        quoteService.storeQuote(generator.isinQuote(generator.newIsin(), lastDate));
+    }
+
+    @Benchmark
+    public void storeQuoteExistingDate() {
+        quoteService.storeQuote(generator.isinQuote(generator.randomIsin(), lastDate));
+    }
+
+    @Benchmark
+    public void storeQuoteNewDate() {
+        quoteService.storeQuote(generator.isinQuote(generator.randomIsin(), lastDate.plusDays(1)));
+    }
+
+    /**
+     * Replaces the history of an ISIN by one with the latest quotes changed, as after a split correction of a few days.
+     *
+     * @return the number of quotes written.
+     */
+    @Benchmark
+    public int replaceQuoteHistory() {
+        String isin = generator.randomIsin();
+        IsinQuoteHistory storedHistory = quoteService.getQuoteHistory(isin);
+        IsinQuoteHistory history = new IsinQuoteHistory(isin, storedHistory.getMarketPlace(), storedHistory.getQuoteSource());
+        storedHistory.getQuotes().values().forEach(history::addQuote);
+        List<Quote> latestQuotes = new ArrayList<>(storedHistory.getQuotes().values());
+        for (Quote quote : latestQuotes.subList(Math.max(0, latestQuotes.size() - CHANGED_QUOTES), latestQuotes.size())) {
+            history.addQuote(new Quote(quote.getCurrency(), quote.getAmount() + 0.01, quote.getDate()));
+        }
+        return quoteService.replaceQuoteHistory(isin, history);
+    }
+
+    @Benchmark
+    public IsinQuoteHistory getQuoteHistory() {
+        return quoteService.getQuoteHistory(generator.randomIsin());
+    }
+
+    @Benchmark
+    public Map<String, IsinQuoteHistory> getQuoteHistories() {
+        return quoteService.getQuoteHistories(randomIsins());
+    }
+
+    @Benchmark
+    public Map<String, Quote> getLatestQuotes() {
+        return quoteService.getLatestQuotes(randomIsins());
+    }
+
+    @Benchmark
+    public PriceMatrix getPriceMatrix() {
+        return quoteService.getPriceMatrix(randomIsins(), lastDate.minusYears(1), lastDate, FillPolicy.FORWARD_FILL);
+    }
+
+    /**
+     * The same matrix as {@link #getPriceMatrix()} (without forward fill) joined by hand from the histories, for comparison.
+     *
+     * @return the amounts by ISIN and date.
+     */
+    @Benchmark
+    public double[][] getQuoteHistoriesJoined() {
+        List<String> isins = randomIsins();
+        Map<String, IsinQuoteHistory> histories = quoteService.getQuoteHistories(isins);
+        TreeSet<LocalDate> dates = new TreeSet<>();
+        LocalDate from = lastDate.minusYears(1);
+        histories.values().forEach(history -> history.getQuotes().keySet().stream().filter(date -> !date.isBefore(from)).forEach(dates::add));
+        double[][] amounts = new double[isins.size()][];
+        for (int column = 0; column < amounts.length; column++) {
+            Map<LocalDate, Quote> quotes = histories.get(isins.get(column)).getQuotes();
+            amounts[column] = dates.stream().mapToDouble(date -> quotes.containsKey(date) ? quotes.get(date).getAmount() : Double.NaN).toArray();
+        }
+        return amounts;
+    }
+
+    private List<String> randomIsins() {
+        List<String> isins = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++) {
+            isins.add(generator.randomIsin());
+        }
+        return isins;
+    }
+}
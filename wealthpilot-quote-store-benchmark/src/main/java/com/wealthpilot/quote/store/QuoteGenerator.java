@@ -0,0 +1,99 @@
+package com.wealthpilot.quote.store;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.wealthpilot.quote.store.util.IsinQuote;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+/**
+ * Generates synthetic ISINs and quote histories (random walks over business days) with a configurable number of distinct ISINs.
+ * The same seed always generates the same data.
+ */
+public class QuoteGenerator {
+
+    private final int isinCardinality;
+    private final SplittableRandom random;
+    private int nextNewIsin;
+
+    public QuoteGenerator(int isinCardinality, long seed) {
+        this.isinCardinality = isinCardinality;
+        this.random = new SplittableRandom(seed);
+        this.nextNewIsin = isinCardinality;
+    }
+
+    /**
+     * @param number the number of the ISIN.
+     * @return the ISIN with the given number, formatted like a real ISIN (country code, 9 digits, check digit placeholder).
+     */
+    public static String isin(int number) {
+        return String.format("XS%09d0", number);
+    }
+
+    public List<String> isins() {
+        List<String> isins = new ArrayList<>(isinCardinality);
+        for (int i = 0; i < isinCardinality; i++) {
+            isins.add(isin(i));
+        }
+        return isins;
+    }
+
+    /**
+     * @return one of the known ISINs, chosen uniformly.
+     */
+    public String randomIsin() {
+        return isin(random.nextInt(isinCardinality));
+    }
+
+    /**
+     * @return an ISIN that was not returned before, outside the known ISINs.
+     */
+    public String newIsin() {
+        return isin(nextNewIsin++);
+    }
+
+    /**
+     * @param isin the ISIN of the history.
+     * @param length the number of quotes.
+     * @param lastDate the latest possible date of the history.
+     * @return a history with the given number of quotes on business days, ending on <code>lastDate</code>.
+     */
+    public IsinQuoteHistory history(String isin, int length, LocalDate lastDate) {
+        IsinQuoteHistory history = new IsinQuoteHistory(isin, "GER", QuoteSource.NDGIT);
+        List<LocalDate> dates = businessDays(length, lastDate);
+        double amount = 50 + random.nextDouble() * 100;
+        for (LocalDate date : dates) {
+            amount = Math.max(0.01, amount * (1 + (random.nextDouble() - 0.5) * 0.04));
+            history.addQuote(date, "EUR", Math.round(amount * 100) / 100.0);
+        }
+        return history;
+    }
+
+    public IsinQuote isinQuote(String isin, LocalDate date) {
+        return new IsinQuote("GER", isin, date, new Quote("EUR", 50 + random.nextDouble() * 100, date), QuoteSource.BANK_API, false);
+    }
+
+    /**
+     * @param count the number of days.
+     * @param lastDate the latest possible day.
+     * @return the given number of business days (monday to friday) in ascending order, ending on or before <code>lastDate</code>.
+     */
+    public static List<LocalDate> businessDays(int count, LocalDate lastDate) {
+        List<LocalDate> dates = new ArrayList<>(count);
+        LocalDate date = lastDate;
+        while (dates.size() < count) {
+            if (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                dates.add(date);
+            }
+            date = date.minusDays(1);
+        }
+        Collections.reverse(dates);
+        return dates;
+    }
+}
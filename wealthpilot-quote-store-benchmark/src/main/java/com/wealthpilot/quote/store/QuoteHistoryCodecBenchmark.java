@@ -0,0 +1,64 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.QuoteHistoryCodec;
+
+/**
+ * Encoding and decoding of synthetic business day histories with {@link QuoteHistoryCodec}. The setup prints the encoded size per quote and the
+ * compression ratio against 12 bytes per quote (epoch-day as int and amount as double).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuoteHistoryCodecBenchmark {
+
+    @Param({ "250", "5000" })
+    public int historyLength;
+
+    private IsinQuoteHistory history;
+    private byte[] encoded;
+    private LocalDate lastYearFrom;
+    private LocalDate lastYearTo;
+
+    @Setup
+    public void setUp() {
+        history = new QuoteGenerator(1, 42).history(QuoteGenerator.isin(0), historyLength, LocalDate.now()).toUnmodifiable();
+        encoded = QuoteHistoryCodec.encode(history);
+        lastYearTo = history.getLatestDate().orElseThrow();
+        lastYearFrom = lastYearTo.minusYears(1);
+        System.out.printf("%n%d quotes encoded in %d bytes, %.2f bytes per quote, compression ratio %.2f%n", historyLength, encoded.length,
+                        (double) encoded.length / historyLength, historyLength * 12.0 / encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return QuoteHistoryCodec.encode(history);
+    }
+
+    @Benchmark
+    public IsinQuoteHistory decode() {
+        return QuoteHistoryCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public IsinQuoteHistory decodeLastYear() {
+        return QuoteHistoryCodec.decode(encoded, lastYearFrom, lastYearTo);
+    }
+}
@@ -0,0 +1,83 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.springframework.context.ConfigurableApplicationContext;
+import com.wealthpilot.quote.store.util.IsinQuote;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+/**
+ * Contention benchmark of the creation of quote identifiers: many threads read or store quotes of ISINs unknown to the store,
+ * either every thread its own ISINs or all threads the same ISINs at about the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuoteIdentifierCreationBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean identifierUpsert;
+
+    private final AtomicInteger nextIsin = new AtomicInteger();
+    private ConfigurableApplicationContext context;
+    private JPAQuoteService quoteService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = QuoteStoreBenchmarkApplication.start("quote-store.identifier-upsert=" + identifierUpsert);
+        quoteService = context.getBean(JPAQuoteService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private static IsinQuote isinQuote(int isinNumber) {
+        LocalDate today = LocalDate.now();
+        return new IsinQuote("GER", QuoteGenerator.isin(isinNumber), today, new Quote("EUR", 1.0, today), QuoteSource.BANK_API, false);
+    }
+
+    @Benchmark
+    public Optional<Quote> disjointIsins() {
+        return quoteService.getQuoteAsOf(QuoteGenerator.isin(nextIsin.getAndIncrement()), LocalDate.now());
+    }
+
+    @Benchmark
+    public Optional<Quote> overlappingIsins(BenchmarkParams params) {
+        return quoteService.getQuoteAsOf(QuoteGenerator.isin(nextIsin.getAndIncrement() / params.getThreads()), LocalDate.now());
+    }
+
+    @Benchmark
+    public void storeQuoteDisjointIsins() {
+        quoteService.storeQuote(isinQuote(nextIsin.getAndIncrement()));
+    }
+
+    @Benchmark
+    public void storeQuoteOverlappingIsins(BenchmarkParams params) {
+        quoteService.storeQuote(isinQuote(nextIsin.getAndIncrement() / params.getThreads()));
+    }
+}
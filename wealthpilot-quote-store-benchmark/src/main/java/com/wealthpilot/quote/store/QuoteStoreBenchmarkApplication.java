@@ -0,0 +1,43 @@
+package com.wealthpilot.quote.store;
+
+import org.ff4j.FF4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Minimal application context of the quote store on an embedded in-memory H2 database, the schema is created by the quote store liquibase changelog.
+ */
+@SpringBootApplication
+public class QuoteStoreBenchmarkApplication {
+
+    @Bean
+    public FF4j ff4j() {
+        return new FF4j();
+    }
+
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    /**
+     * Starts a new context with its own in-memory database.
+     *
+     * @param properties additional properties in the form <code>key=value</code>.
+     * @return the started context, to be closed by the caller.
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        SpringApplication application = new SpringApplication(QuoteStoreBenchmarkApplication.class);
+        String[] args = new String[properties.length + 1];
+        args[0] = "--spring.datasource.url=jdbc:h2:mem:quote-store-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE";
+        for (int i = 0; i < properties.length; i++) {
+            args[i + 1] = "--" + properties[i];
+        }
+        return application.run(args);
+    }
+}
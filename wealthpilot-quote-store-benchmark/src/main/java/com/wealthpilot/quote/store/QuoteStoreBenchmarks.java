@@ -0,0 +1,40 @@
+package com.wealthpilot.quote.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the quote store benchmarks. Accepts the usual JMH command line options; unless <code>-rf</code>/<code>-rff</code> are given,
+ * the results are written as JSON to <code>target/jmh-results/</code> for comparison between runs.
+ */
+public final class QuoteStoreBenchmarks {
+
+    private QuoteStoreBenchmarks() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            options.include(QuoteStoreBenchmarks.class.getPackageName() + ".*Benchmark");
+        }
+        if (!commandLineOptions.getResult().hasValue()) {
+            Path resultDirectory = Files.createDirectories(Path.of("target", "jmh-results"));
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            options.resultFormat(commandLineOptions.getResultFormat().orElse(ResultFormatType.JSON))
+                            .result(resultDirectory.resolve("quote-store-" + timestamp + ".json").toString());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,69 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.wealthpilot.quote.store.util.QuoteType;
+
+/**
+ * Benchmark of {@link JPAQuoteService#shouldReplaceExistingQuotes} for large existing and new histories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShouldReplaceExistingQuotesBenchmark {
+
+    @Param({ "5000", "100000" })
+    public int historyLength;
+
+    private JPAQuoteService quoteService;
+    private JPAQuoteIdentifier identifier;
+    private List<JPAQuote> existingQuotes;
+    private List<JPAQuote> newQuotes;
+
+    @Setup
+    @SuppressWarnings("ConstantConditions") // shouldReplaceExistingQuotes does not use any of the dependencies
+    public void setUp() {
+        quoteService = new JPAQuoteService(null, null, null, null, null, null, null);
+        identifier = new JPAQuoteIdentifier();
+        identifier.setIsin(QuoteGenerator.isin(0));
+        List<LocalDate> dates = QuoteGenerator.businessDays(historyLength + 1, LocalDate.now());
+        existingQuotes = quotes(dates.subList(1, dates.size()));
+        newQuotes = quotes(dates);
+    }
+
+    private List<JPAQuote> quotes(List<LocalDate> dates) {
+        List<JPAQuote> quotes = new ArrayList<>(dates.size());
+        for (LocalDate date : dates) {
+            JPAQuote quote = new JPAQuote();
+            quote.setIdentifier(identifier);
+            quote.setQuoteDate(date);
+            quote.setQuoteAmount(1.0);
+            quote.setQuoteCurrency("EUR");
+            quote.setQuoteType(QuoteType.PRICE);
+            quotes.add(quote);
+        }
+        return quotes;
+    }
+
+    @Benchmark
+    public boolean shouldReplaceExistingQuotes() {
+        return quoteService.shouldReplaceExistingQuotes(identifier, existingQuotes, newQuotes);
+    }
+}
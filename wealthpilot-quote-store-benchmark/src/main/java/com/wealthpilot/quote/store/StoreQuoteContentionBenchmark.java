@@ -0,0 +1,264 @@
+package com.wealthpilot.quote.store;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.CannotCreateTransactionException;
+import com.wealthpilot.quote.store.util.IsinQuote;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Stress harness of the lock contention of {@link JPAQuoteService#storeQuote}, which locks the identifier of the ISIN with
+ * <code>PESSIMISTIC_WRITE</code> in a new transaction: all threads (<code>-t</code>, 64 by default) store quotes of
+ * <code>isinCardinality</code> ISINs chosen with a Zipf distribution of exponent <code>zipfExponent</code> (0 is uniform, larger values
+ * concentrate the stores on a few hot ISINs). A share of <code>duplicateRatio</code> of the stores repeats the quote of today, the others
+ * send quotes of new dates. The ISINs and dates drawn by every thread are seeded by its index, so runs are reproducible.
+ * The connection pool has one connection per thread, as in production, so a store holding more than one connection shows up as
+ * <code>connectionTimeouts</code>.
+ * <p>
+ * Reports throughput and the latency percentiles of <code>storeQuote</code> as primary results, deadlocks, lock timeouts, connection timeouts
+ * and the retries of stores failed by them as secondary results, and prints the lock wait time and the retried identifier inserts after the
+ * trial. Stores still failing after {@value #MAX_ATTEMPTS} attempts are counted as <code>failures</code>. At the end of the trial the stored quotes are checked:
+ * every ISIN has at most one identifier and one quote, every successfully stored ISIN has exactly one, as <code>storeQuote</code> only stores
+ * the first quote of an ISIN, with the amount sent for its date and a matching latest quote snapshot. A violation fails the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StoreQuoteContentionBenchmark {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_REPORTED_VIOLATIONS = 10;
+
+    @Param({ "16", "100000" })
+    public int isinCardinality;
+
+    @Param("1.0")
+    public double zipfExponent;
+
+    @Param("0.2")
+    public double duplicateRatio;
+
+    @Param({ "true", "false" })
+    public boolean identifierUpsert;
+
+    private ConfigurableApplicationContext context;
+    private JPAQuoteService quoteService;
+    private MeterRegistry meterRegistry;
+    private LocalDate today;
+    // cumulative probabilities of the ISIN numbers, the lowest numbers are the hottest ISINs
+    private double[] zipfDistribution;
+    // 1 for the ISINs with at least one successful store
+    private AtomicIntegerArray stored;
+    private final AtomicLong failures = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        context = QuoteStoreBenchmarkApplication.start("quote-store.identifier-upsert=" + identifierUpsert,
+                        "spring.datasource.hikari.maximum-pool-size=" + params.getThreads());
+        quoteService = context.getBean(JPAQuoteService.class);
+        meterRegistry = context.getBean(MeterRegistry.class);
+        today = LocalDate.now();
+        zipfDistribution = zipfDistribution(isinCardinality, zipfExponent);
+        stored = new AtomicIntegerArray(isinCardinality);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        try {
+            Timer lockTimer = meterRegistry.get(QuoteIdentifierResolver.LOCK_TIMER).timer();
+            Counter insertConflicts = meterRegistry.get(QuoteIdentifierResolver.INSERT_CONFLICT_COUNTER).counter();
+            System.out.printf("%n%d identifier locks, mean wait %.3f ms, max wait %.3f ms, total wait %.1f s, %.0f retried identifier inserts,"
+                            + " %d failed stores%n", lockTimer.count(), lockTimer.mean(TimeUnit.MILLISECONDS), lockTimer.max(TimeUnit.MILLISECONDS),
+                            lockTimer.totalTime(TimeUnit.SECONDS), insertConflicts.count(), failures.get());
+            verifyStoredQuotes();
+        } finally {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public void storeQuote(ThreadState thread, LockFailures lockFailures) {
+        int isinNumber = nextIsinNumber(thread.random);
+        LocalDate date = thread.random.nextDouble() < duplicateRatio ? today : today.plusDays(thread.nextNewDay());
+        IsinQuote quote = isinQuote(isinNumber, date);
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                quoteService.storeQuote(quote);
+                stored.lazySet(isinNumber, 1);
+                return;
+            } catch (DeadlockLoserDataAccessException e) {
+                lockFailures.deadlocks++;
+            } catch (PessimisticLockingFailureException e) {
+                lockFailures.lockTimeouts++;
+            } catch (CannotCreateTransactionException | DataAccessResourceFailureException e) {
+                // no connection within the connection timeout of the pool
+                lockFailures.connectionTimeouts++;
+            }
+            if (attempt < MAX_ATTEMPTS) {
+                lockFailures.retries++;
+            }
+        }
+        lockFailures.failures++;
+        failures.incrementAndGet();
+    }
+
+    private int nextIsinNumber(SplittableRandom random) {
+        int index = Arrays.binarySearch(zipfDistribution, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, isinCardinality - 1);
+    }
+
+    // the amount depends only on the ISIN and the date, so the stored quote can be checked against what was sent
+    private static IsinQuote isinQuote(int isinNumber, LocalDate date) {
+        return new IsinQuote("GER", QuoteGenerator.isin(isinNumber), date, new Quote("EUR", expectedAmount(isinNumber, date), date), QuoteSource.BANK_API,
+                        false);
+    }
+
+    private static double expectedAmount(int isinNumber, LocalDate date) {
+        return 1 + isinNumber % 1000 + date.toEpochDay() % 1000 / 1000.0;
+    }
+
+    private static double[] zipfDistribution(int cardinality, double exponent) {
+        double[] cumulative = new double[cardinality];
+        double sum = 0;
+        for (int rank = 1; rank <= cardinality; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < cardinality; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private void verifyStoredQuotes() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+        List<String> violations = new ArrayList<>();
+        jdbcTemplate.queryForList("select isin, count(*) as identifiers from quote_identifier group by isin having count(*) > 1")
+                        .forEach(row -> violations.add(row.get("isin") + " has " + row.get("identifiers") + " identifiers"));
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("select i.isin, count(q.id) as quotes, max(q.quote_date) as quote_date,"
+                        + " max(q.quote_amount) as quote_amount, max(l.quote_date) as latest_quote_date from quote_identifier i"
+                        + " left join quote q on q.quote_identifier_id = i.id left join latest_quote l on l.id = i.id group by i.isin");
+        int[] quotesByIsinNumber = new int[isinCardinality];
+        for (Map<String, Object> row : rows) {
+            String isin = (String) row.get("isin");
+            int isinNumber = Integer.parseInt(isin.substring(2, 11));
+            int quotes = ((Number) row.get("quotes")).intValue();
+            quotesByIsinNumber[isinNumber] = quotes;
+            if (quotes > 1) {
+                violations.add(isin + " has " + quotes + " quotes");
+            } else if (quotes == 1) {
+                LocalDate quoteDate = toLocalDate(row.get("quote_date"));
+                double amount = ((Number) row.get("quote_amount")).doubleValue();
+                if (amount != expectedAmount(isinNumber, quoteDate)) {
+                    violations.add(isin + " has amount " + amount + " on " + quoteDate + " instead of " + expectedAmount(isinNumber, quoteDate));
+                }
+                if (!quoteDate.equals(toLocalDate(row.get("latest_quote_date")))) {
+                    violations.add(isin + " has latest quote of " + row.get("latest_quote_date") + " instead of " + quoteDate);
+                }
+            }
+        }
+        for (int isinNumber = 0; isinNumber < isinCardinality; isinNumber++) {
+            if (stored.get(isinNumber) == 1 && quotesByIsinNumber[isinNumber] == 0) {
+                violations.add(QuoteGenerator.isin(isinNumber) + " was stored but has no quote");
+            }
+        }
+        if (!violations.isEmpty()) {
+            throw new IllegalStateException(violations.size() + " integrity violations after concurrent stores: "
+                            + violations.subList(0, Math.min(violations.size(), MAX_REPORTED_VIOLATIONS)));
+        }
+        System.out.printf("Verified the quotes of %d ISINs%n", rows.size());
+    }
+
+    private static LocalDate toLocalDate(Object date) {
+        return date instanceof Date ? ((Date) date).toLocalDate() : (LocalDate) Objects.requireNonNull(date);
+    }
+
+    /**
+     * The random ISINs and dates of a thread, seeded by the thread index.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SplittableRandom random;
+        private int threadIndex;
+        private int threads;
+        private int newQuotes;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            random = new SplittableRandom(params.getThreadIndex());
+            threadIndex = params.getThreadIndex();
+            threads = params.getThreadCount();
+        }
+
+        // days after today, distinct across all threads within ten years
+        int nextNewDay() {
+            return 1 + (threadIndex + threads * newQuotes++) % 3650;
+        }
+    }
+
+    /**
+     * Secondary results: the number of stores failed by lock conflicts or by waiting for a connection, of the retries of them and of the stores
+     * failed for good.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LockFailures {
+        public long deadlocks;
+        public long lockTimeouts;
+        public long connectionTimeouts;
+        public long retries;
+        public long failures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            deadlocks = 0;
+            lockTimeouts = 0;
+            connectionTimeouts = 0;
+            retries = 0;
+            failures = 0;
+        }
+    }
+}
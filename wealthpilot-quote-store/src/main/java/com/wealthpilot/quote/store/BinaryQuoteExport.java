@@ -0,0 +1,231 @@
+package com.wealthpilot.quote.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+import org.springframework.lang.Nullable;
+import com.wealthpilot.quote.store.util.QuoteSource;
+import com.wealthpilot.quote.store.util.QuoteType;
+
+/**
+ * The {@link QuoteExportFormat#BINARY} format: a header ({@link #MAGIC}, {@link #VERSION}) followed by records, each prefixed with the
+ * length of its body as unsigned varint and ended by a record of length 0. The first byte of the body is the record type:
+ * <ul>
+ * <li>{@link #IDENTIFIER}: ISIN, market place and quote source as modified UTF-8, fetch date as epoch millis.</li>
+ * <li>{@link #QUOTE}: a quote of the preceding identifier, days since the previous quote of the identifier (since the epoch for the first)
+ * as varint, amount as double, currency as modified UTF-8 and the ordinal of the quote type.</li>
+ * </ul>
+ * Readers skip records of unknown types, so records can be added without breaking older readers. Records longer than
+ * {@link #MAX_RECORD_LENGTH} are rejected as corrupt.
+ */
+final class BinaryQuoteExport {
+
+    static final int MAGIC = 0x57505153; // "WPQS"
+    static final byte VERSION = 1;
+    static final byte IDENTIFIER = 1;
+    static final byte QUOTE = 2;
+    // far above the largest identifier record of three modified UTF-8 strings, so a corrupt length fails before allocating its buffer
+    static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private static final QuoteType[] QUOTE_TYPES = QuoteType.values();
+
+    private BinaryQuoteExport() {
+    }
+
+    static final class Writer implements QuoteExportWriter {
+
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream record = new DataOutputStream(recordBytes);
+        @Nullable
+        private String isin;
+        private long previousEpochDay;
+
+        Writer(OutputStream out) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+        }
+
+        @Override
+        public void write(QuoteExportRow row) throws IOException {
+            if (isin == null) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+            }
+            if (!row.getIsin().equals(isin)) {
+                isin = row.getIsin();
+                previousEpochDay = 0;
+                record.writeByte(IDENTIFIER);
+                record.writeUTF(row.getIsin());
+                record.writeUTF(row.getMarketPlace());
+                record.writeUTF(row.getQuoteSource().name());
+                record.writeLong(row.getFetchDate().toInstant().toEpochMilli());
+                writeRecord();
+            }
+            if (row.hasQuote()) {
+                long epochDay = Objects.requireNonNull(row.getQuoteDate()).toEpochDay();
+                record.writeByte(QUOTE);
+                writeVarLong(record, epochDay - previousEpochDay);
+                record.writeDouble(Objects.requireNonNull(row.getQuoteAmount()));
+                record.writeUTF(Objects.requireNonNull(row.getQuoteCurrency()));
+                record.writeByte(Objects.requireNonNull(row.getQuoteType()).ordinal());
+                writeRecord();
+                previousEpochDay = epochDay;
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (isin == null) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+            }
+            writeVarLong(out, 0);
+            out.flush();
+        }
+
+        private void writeRecord() throws IOException {
+            writeVarLong(out, recordBytes.size());
+            recordBytes.writeTo(out);
+            recordBytes.reset();
+        }
+    }
+
+    static final class Reader implements QuoteExportReader {
+
+        private final DataInputStream in;
+        private final RecordInputStream recordBytes = new RecordInputStream();
+        private final DataInputStream record = new DataInputStream(recordBytes);
+        private boolean headerRead;
+        private boolean finished;
+        @Nullable
+        private QuoteExportRow identifier;
+        private boolean identifierReturned;
+        private long previousEpochDay;
+
+        Reader(InputStream in) {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+        }
+
+        @Override
+        @Nullable
+        public QuoteExportRow read() throws IOException {
+            if (!headerRead) {
+                readHeader();
+            }
+            while (!finished) {
+                long length = readVarLong(in);
+                if (length < 0 || length > MAX_RECORD_LENGTH) {
+                    throw new StreamCorruptedException("Invalid record length " + length + " in binary quote export");
+                }
+                if (length == 0) {
+                    finished = true;
+                    return pendingIdentifier();
+                }
+                recordBytes.fill(in, (int) length);
+                byte type = record.readByte();
+                if (type == IDENTIFIER) {
+                    QuoteExportRow previous = pendingIdentifier();
+                    String isin = record.readUTF();
+                    String marketPlace = record.readUTF();
+                    QuoteSource quoteSource = QuoteSource.valueOf(record.readUTF());
+                    ZonedDateTime fetchDate = ZonedDateTime.ofInstant(Instant.ofEpochMilli(record.readLong()), ZoneId.systemDefault());
+                    identifier = new QuoteExportRow(isin, fetchDate, marketPlace, quoteSource, null, null, null, null);
+                    identifierReturned = false;
+                    previousEpochDay = 0;
+                    if (previous != null) {
+                        return previous;
+                    }
+                } else if (type == QUOTE) {
+                    if (identifier == null) {
+                        throw new StreamCorruptedException("Quote before the first identifier in binary quote export");
+                    }
+                    previousEpochDay += readVarLong(record);
+                    identifierReturned = true;
+                    return new QuoteExportRow(identifier.getIsin(), identifier.getFetchDate(), identifier.getMarketPlace(), identifier.getQuoteSource(),
+                                    LocalDate.ofEpochDay(previousEpochDay), record.readDouble(), record.readUTF(), QUOTE_TYPES[record.readUnsignedByte()]);
+                }
+            }
+            return null;
+        }
+
+        private void readHeader() throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not a binary quote export");
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported binary quote export version " + version);
+            }
+            headerRead = true;
+        }
+
+        /**
+         * @return the last identifier read if none of its quotes were returned, {@code null} otherwise.
+         */
+        @Nullable
+        private QuoteExportRow pendingIdentifier() {
+            if (identifier == null || identifierReturned) {
+                return null;
+            }
+            identifierReturned = true;
+            return identifier;
+        }
+    }
+
+    /**
+     * Holds the body of one record at a time, reusing its buffer.
+     */
+    private static final class RecordInputStream extends ByteArrayInputStream {
+
+        RecordInputStream() {
+            super(new byte[64]);
+        }
+
+        void fill(DataInputStream in, int length) throws IOException {
+            if (buf.length < length) {
+                buf = new byte[Math.max(length, buf.length * 2)];
+            }
+            in.readFully(buf, 0, length);
+            pos = 0;
+            count = length;
+        }
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.writeByte((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated binary quote export");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint in binary quote export");
+    }
+}
@@ -0,0 +1,180 @@
+package com.wealthpilot.quote.store;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.lang.Nullable;
+import com.wealthpilot.quote.store.util.QuoteSource;
+import com.wealthpilot.quote.store.util.QuoteType;
+
+/**
+ * The {@link QuoteExportFormat#CSV} format: RFC 4180 CSV in UTF-8 with a header line and one line per quote. An identifier without quotes
+ * is written as one line with empty quote fields.
+ */
+final class CsvQuoteExport {
+
+    static final String HEADER = "isin,market_place,quote_source,fetch_date,quote_date,quote_amount,quote_currency,quote_type";
+    private static final int COLUMNS = 8;
+
+    private CsvQuoteExport() {
+    }
+
+    static final class Writer implements QuoteExportWriter {
+
+        private final java.io.Writer out;
+        private boolean headerWritten;
+
+        Writer(OutputStream out) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void write(QuoteExportRow row) throws IOException {
+            writeHeader();
+            writeField(row.getIsin());
+            out.write(',');
+            writeField(row.getMarketPlace());
+            out.write(',');
+            out.write(row.getQuoteSource().name());
+            out.write(',');
+            out.write(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(row.getFetchDate()));
+            out.write(',');
+            if (row.hasQuote()) {
+                out.write(String.valueOf(row.getQuoteDate()));
+                out.write(',');
+                out.write(String.valueOf(row.getQuoteAmount()));
+                out.write(',');
+                writeField(row.getQuoteCurrency());
+                out.write(',');
+                out.write(String.valueOf(row.getQuoteType()));
+            } else {
+                out.write(",,,");
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writeHeader();
+            out.flush();
+        }
+
+        private void writeHeader() throws IOException {
+            if (!headerWritten) {
+                out.write(HEADER);
+                out.write("\r\n");
+                headerWritten = true;
+            }
+        }
+
+        private void writeField(@Nullable String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    static final class Reader implements QuoteExportReader {
+
+        private final BufferedReader in;
+        private final List<String> fields = new ArrayList<>(COLUMNS);
+        private final StringBuilder field = new StringBuilder();
+        private long line;
+
+        Reader(InputStream in) {
+            this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        @Nullable
+        public QuoteExportRow read() throws IOException {
+            if (line == 0) {
+                if (!readLine() || !HEADER.equals(String.join(",", fields))) {
+                    throw new StreamCorruptedException("Not a CSV quote export, header expected: " + HEADER);
+                }
+            }
+            if (!readLine()) {
+                return null;
+            }
+            if (fields.size() != COLUMNS) {
+                throw new StreamCorruptedException("Expected " + COLUMNS + " fields in line " + line + " of CSV quote export: " + fields);
+            }
+            ZonedDateTime fetchDate = ZonedDateTime.parse(fields.get(3), DateTimeFormatter.ISO_OFFSET_DATE_TIME).withZoneSameInstant(ZoneId.systemDefault());
+            QuoteSource quoteSource = QuoteSource.valueOf(fields.get(2));
+            if (fields.get(4).isEmpty()) {
+                return new QuoteExportRow(fields.get(0), fetchDate, fields.get(1), quoteSource, null, null, null, null);
+            }
+            return new QuoteExportRow(fields.get(0), fetchDate, fields.get(1), quoteSource, LocalDate.parse(fields.get(4)), Double.valueOf(fields.get(5)),
+                            fields.get(6), QuoteType.valueOf(fields.get(7)));
+        }
+
+        /**
+         * Reads the fields of the next line, quoted fields may contain line breaks.
+         *
+         * @return {@code false} at the end of the stream.
+         * @throws IOException if the stream cannot be read.
+         */
+        private boolean readLine() throws IOException {
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            int c = in.read();
+            if (c < 0) {
+                return false;
+            }
+            line++;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new StreamCorruptedException("Unterminated quoted field in line " + line + " of CSV quote export");
+                    }
+                    if (c == '"') {
+                        c = in.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    field.append((char) c);
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c < 0 || c == '\n' || c == '\r') {
+                    fields.add(field.toString());
+                    if (c == '\r') {
+                        in.mark(1);
+                        if (in.read() != '\n') {
+                            in.reset();
+                        }
+                    }
+                    return true;
+                } else {
+                    field.append((char) c);
+                }
+                c = in.read();
+            }
+        }
+    }
+}
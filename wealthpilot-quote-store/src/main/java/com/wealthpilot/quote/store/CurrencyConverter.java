@@ -0,0 +1,23 @@
+package com.wealthpilot.quote.store;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+import com.wealthpilot.quote.store.util.Currencies;
+
+/**
+ * Replaces the currency read from a row by its canonical instance, see {@link Currencies}, so loaded quotes do not keep a copy each.
+ */
+@Converter
+public class CurrencyConverter implements AttributeConverter<String, String> {
+
+    @Override
+    public String convertToDatabaseColumn(String currency) {
+        return currency;
+    }
+
+    @Override
+    public String convertToEntityAttribute(String currency) {
+        return Currencies.intern(currency);
+    }
+}
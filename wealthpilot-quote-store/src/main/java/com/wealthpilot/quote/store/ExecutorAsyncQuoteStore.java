@@ -0,0 +1,167 @@
+package com.wealthpilot.quote.store;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import com.wealthpilot.quote.store.util.AsyncQuoteStore;
+import com.wealthpilot.quote.store.util.IsinQuote;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Runs the {@link QuoteStore} operations on a virtual thread per operation, if the runtime supports them (Java 21+), otherwise on a pool of
+ * {@code max-concurrency} platform threads with a bounded queue. At most {@code max-concurrency} operations run at once, each holding at most
+ * one JDBC connection at a time (missing identifiers are created before the transaction of the operation), so it should not exceed the JDBC
+ * pool size. Both ways at most {@code queue-capacity} operations wait to run, further operations are rejected. The time an operation waited
+ * before running is recorded per operation as {@value #QUEUE_TIMER}.
+ */
+@Component
+@Log4j2
+public class ExecutorAsyncQuoteStore implements AsyncQuoteStore, DisposableBean {
+
+    static final String QUEUE_TIMER = "quote_store.async.queue";
+
+    private final QuoteStore quoteStore;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    // running and waiting operations, bounds the tasks of the virtual thread executor like the queue of the platform thread pool
+    private final Semaphore admissions;
+
+    public ExecutorAsyncQuoteStore(QuoteStore quoteStore, MeterRegistry meterRegistry, @Value("${quote-store.async.virtual-threads:true}") boolean virtualThreads,
+                    @Value("${quote-store.async.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+                    @Value("${quote-store.async.queue-capacity:10000}") int queueCapacity) {
+        this.quoteStore = quoteStore;
+        this.meterRegistry = meterRegistry;
+        this.permits = new Semaphore(maxConcurrency);
+        this.admissions = new Semaphore(maxConcurrency + queueCapacity);
+        Optional<ExecutorService> virtualThreadExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : Optional.empty();
+        this.executor = virtualThreadExecutor.orElseGet(() -> new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("quote-store-async-")));
+        log.info("Running async quote store operations on {}, at most {} at once", virtualThreadExecutor.isPresent() ? "virtual threads" : "platform threads",
+                        maxConcurrency);
+    }
+
+    @Override
+    public CompletableFuture<Void> storeQuote(IsinQuote quote) {
+        return submit("storeQuote", () -> {
+            quoteStore.storeQuote(quote);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> storeQuotes(Collection<IsinQuote> quotes) {
+        return submit("storeQuotes", () -> {
+            quoteStore.storeQuotes(quotes);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<IsinQuoteHistory> getQuoteHistory(String isin) {
+        return submit("getQuoteHistory", () -> quoteStore.getQuoteHistory(isin));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, IsinQuoteHistory>> getQuoteHistories(Collection<String> isins) {
+        return submit("getQuoteHistories", () -> quoteStore.getQuoteHistories(isins));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Quote>> getLatestQuotes(Collection<String> isins) {
+        return submit("getLatestQuotes", () -> quoteStore.getLatestQuotes(isins));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Async quote store operations did not terminate, cancelling them");
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param operation the name of the operation, tag of the {@value #QUEUE_TIMER} timer.
+     * @param call the blocking operation.
+     * @param <T> the result of the operation.
+     * @return completes with the result of the operation, exceptionally if it failed or the queue was full.
+     */
+    private <T> CompletableFuture<T> submit(final String operation, final Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Timer queueTimer = Timer.builder(QUEUE_TIMER).tag("operation", operation).register(meterRegistry);
+        long submitted = System.nanoTime();
+        if (!admissions.tryAcquire()) {
+            future.completeExceptionally(new RejectedExecutionException("Queue of async quote store operations is full"));
+            return future;
+        }
+        try {
+            executor.execute(() -> run(call, future, queueTimer, submitted));
+        } catch (RejectedExecutionException e) {
+            admissions.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> void run(final Supplier<T> call, final CompletableFuture<T> future, final Timer queueTimer, final long submitted) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            admissions.release();
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return;
+        }
+        queueTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+        T result = null;
+        Throwable failure = null;
+        try {
+            result = call.get();
+        } catch (Throwable e) {
+            // errors as well, so the future completes and the permits are not lost
+            failure = e;
+        } finally {
+            // released before completing, so dependent stages running on this thread do not hold a permit
+            release();
+        }
+        if (failure != null) {
+            future.completeExceptionally(failure);
+        } else {
+            future.complete(result);
+        }
+    }
+
+    private void release() {
+        permits.release();
+        admissions.release();
+    }
+
+    private static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        try {
+            return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+
+/**
+ * Projection of a quote date of a {@link JPAQuoteIdentifier}, used by set-based queries that only need the dates and not the full {@link JPAQuote}.
+ */
+public interface JPAIdentifierQuoteDate {
+    Long getIdentifierId();
+
+    LocalDate getQuoteDate();
+}
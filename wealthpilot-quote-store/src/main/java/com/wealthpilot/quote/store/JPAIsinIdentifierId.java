@@ -0,0 +1,10 @@
+package com.wealthpilot.quote.store;
+
+/**
+ * Projection of the id of a {@link JPAQuoteIdentifier} with its ISIN, used to resolve ISINs without loading the full identifiers.
+ */
+public interface JPAIsinIdentifierId {
+    String getIsin();
+
+    Long getIdentifierId();
+}
@@ -0,0 +1,81 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.MapsId;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.DynamicUpdate;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteType;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Copy of the latest {@link JPAQuote} of an identifier, maintained in the same transaction as the quotes. Its id is the id of the identifier.
+ * Its quote date is copied to {@link JPAQuoteIdentifier#getLatestQuoteDate()}, which has to be cleared where snapshots are deleted.
+ */
+@Setter
+@Getter
+@Entity(name = "LatestQuote")
+@Table(name = "latest_quote")
+@DynamicUpdate
+@ToString
+public class JPALatestQuote {
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    // a wrapper, so Spring Data persists instead of merging new snapshots with their derived id
+    @Version
+    private Integer version;
+
+    @Column(name = "quote_date")
+    private LocalDate quoteDate;
+    @Column(name = "quote_amount")
+    private Double quoteAmount;
+    @Column(name = "quote_currency")
+    @Convert(converter = CurrencyConverter.class)
+    private String quoteCurrency;
+    @Column(name = "quote_type")
+    @Enumerated(EnumType.STRING)
+    private QuoteType quoteType;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "id")
+    @ToString.Exclude
+    private JPAQuoteIdentifier identifier;
+
+    static JPALatestQuote of(JPAQuoteIdentifier identifier, JPAQuote quote) {
+        JPALatestQuote latestQuote = new JPALatestQuote();
+        latestQuote.setId(identifier.getId());
+        latestQuote.setIdentifier(identifier);
+        latestQuote.update(quote);
+        return latestQuote;
+    }
+
+    void update(JPAQuote quote) {
+        quoteDate = quote.getQuoteDate();
+        quoteAmount = quote.getQuoteAmount();
+        quoteCurrency = quote.getQuoteCurrency();
+        quoteType = quote.getQuoteType();
+        identifier.setLatestQuoteDate(quoteDate);
+    }
+
+    Quote toQuote() {
+        return new Quote(getQuoteCurrency(), getQuoteAmount(), getQuoteDate());
+    }
+}
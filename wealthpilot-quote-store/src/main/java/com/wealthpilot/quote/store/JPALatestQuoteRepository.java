@@ -0,0 +1,32 @@
+package com.wealthpilot.quote.store;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+public interface JPALatestQuoteRepository extends JpaRepository<JPALatestQuote, Long> {
+
+    @Query("select l from LatestQuote l join fetch l.identifier i where i.isin in :isins")
+    List<JPALatestQuote> findAllByIsinIn(Collection<String> isins);
+
+    @Modifying
+    @Query("delete from LatestQuote where id in :identifierIds")
+    int deleteAllByIdentifierIdIn(Collection<Long> identifierIds);
+
+    /**
+     * Recomputes the snapshots of the given identifiers from their quotes, which must not have snapshots.
+     *
+     * @param identifierIds the ids of the identifiers.
+     * @return the number of snapshots inserted, one per identifier with quotes.
+     */
+    @Modifying
+    @Query(value = "insert into latest_quote (id, version, quote_date, quote_amount, quote_currency, quote_type)"
+                    + " select q.quote_identifier_id, 0, q.quote_date, q.quote_amount, q.quote_currency, q.quote_type from quote q"
+                    + " where q.quote_identifier_id in :identifierIds"
+                    + " and q.quote_date = (select max(m.quote_date) from quote m where m.quote_identifier_id = q.quote_identifier_id)",
+                    nativeQuery = true)
+    int insertFromQuotes(Collection<Long> identifierIds);
+}
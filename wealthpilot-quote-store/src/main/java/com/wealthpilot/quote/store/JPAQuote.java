@@ -3,6 +3,7 @@ package com.wealthpilot.quote.store;
 import java.time.LocalDate;
 
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
@@ -35,6 +36,7 @@ public class JPAQuote extends BaseEntity {
     @Column(name = "quote_amount")
     private Double quoteAmount;
     @Column(name = "quote_currency")
+    @Convert(converter = CurrencyConverter.class)
     private String quoteCurrency;
     @Column(name = "quote_type")
     @Enumerated(EnumType.STRING)
@@ -1,5 +1,6 @@
 package com.wealthpilot.quote.store;
 
+import java.time.LocalDate;
 import java.time.ZonedDateTime;
 
 import javax.persistence.Column;
@@ -23,6 +24,15 @@ public class JPAQuoteIdentifier extends BaseEntity {
     private String isin;
     @Column(name = "fetch_date")
     private ZonedDateTime fetchDate;
+    // fetch date of the history the stored quotes were replaced with, null if never replaced. Unlike the fetch date not set by single quotes.
+    @Column(name = "history_fetch_date")
+    private ZonedDateTime historyFetchDate;
+    // date of the JPALatestQuote, null without quotes. Maintained with the snapshot, orders the identifiers by staleness.
+    @Column(name = "latest_quote_date")
+    private LocalDate latestQuoteDate;
+    // start of the last update run that fetched the history, null if never attempted. Only written by the QuoteStoreUpdater with a bulk update.
+    @Column(name = "last_update_attempt", insertable = false, updatable = false)
+    private ZonedDateTime lastUpdateAttempt;
     @Column(name = "market_place")
     private String marketPlace;
     @Enumerated(EnumType.STRING)
@@ -41,6 +51,18 @@ public class JPAQuoteIdentifier extends BaseEntity {
         return this.fetchDate;
     }
 
+    public ZonedDateTime getHistoryFetchDate() {
+        return this.historyFetchDate;
+    }
+
+    public LocalDate getLatestQuoteDate() {
+        return this.latestQuoteDate;
+    }
+
+    public ZonedDateTime getLastUpdateAttempt() {
+        return this.lastUpdateAttempt;
+    }
+
     public String getMarketPlace() {
         return this.marketPlace;
     }
@@ -61,6 +83,14 @@ public class JPAQuoteIdentifier extends BaseEntity {
         this.fetchDate = fetchDate;
     }
 
+    public void setHistoryFetchDate(ZonedDateTime historyFetchDate) {
+        this.historyFetchDate = historyFetchDate;
+    }
+
+    public void setLatestQuoteDate(LocalDate latestQuoteDate) {
+        this.latestQuoteDate = latestQuoteDate;
+    }
+
     public void setMarketPlace(String marketPlace) {
         this.marketPlace = marketPlace;
     }
@@ -70,7 +100,9 @@ public class JPAQuoteIdentifier extends BaseEntity {
     }
 
     public String toString() {
-        return "JPAQuoteIdentifier(version=" + this.getVersion() + ", isin=" + this.getIsin() + ", fetchDate=" + this.getFetchDate() + ", marketPlace="
+        return "JPAQuoteIdentifier(version=" + this.getVersion() + ", isin=" + this.getIsin() + ", fetchDate=" + this.getFetchDate() + ", historyFetchDate=" + this.getHistoryFetchDate()
+                        + ", latestQuoteDate="
+                        + this.getLatestQuoteDate() + ", lastUpdateAttempt=" + this.getLastUpdateAttempt() + ", marketPlace="
                         + this.getMarketPlace() + ", quoteSource=" + this.getQuoteSource() + ")";
     }
 }
\ No newline at end of file
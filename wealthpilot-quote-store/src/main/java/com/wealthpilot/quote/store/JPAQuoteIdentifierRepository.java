@@ -1,15 +1,94 @@
 package com.wealthpilot.quote.store;
 
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import javax.persistence.LockModeType;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+import com.wealthpilot.quote.store.util.QuoteSource;
 
 public interface JPAQuoteIdentifierRepository extends JpaRepository<JPAQuoteIdentifier, Long> {
     Optional<JPAQuoteIdentifier> findOneByIsin(String isin);
 
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     Optional<JPAQuoteIdentifier> findAndLockOneByIsin(String isin);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<JPAQuoteIdentifier> findAndLockById(Long id);
+
+    List<JPAQuoteIdentifier> findAllByIsinIn(Collection<String> isins);
+
+    @Query("select i.isin as isin, i.id as identifierId from JPAQuoteIdentifier i where i.isin in :isins")
+    List<JPAIsinIdentifierId> findIdsByIsinIn(Collection<String> isins);
+
+    // ordered by id so concurrent batches always lock in the same order
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<JPAQuoteIdentifier> findAndLockAllByIdInOrderById(Collection<Long> ids);
+
+    // only for identifiers whose cached id is outdated, all others are locked by id
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<JPAQuoteIdentifier> findAndLockAllByIsinInOrderByIsin(Collection<String> isins);
+
+    // keyset pagination over all ISINs
+    @Query("select i.isin from JPAQuoteIdentifier i where i.isin > :after order by i.isin")
+    List<String> findIsinsAfter(String after, Pageable page);
+
+    /**
+     * The staleness queue of a source: the identifiers without quotes first, then by the date of their latest quote and the least recently
+     * fetched first, skipping the identifiers attempted by an update run recently (see {@link #recordUpdateAttempt}). Served by the index
+     * <code>idx_quote_identifier_staleness</code> without sorting.
+     *
+     * @param quoteSource the source of the identifiers.
+     * @param fetchedBefore only identifiers fetched before, to skip identifiers fetched during the current update.
+     * @param attemptedBefore only identifiers never attempted or attempted before.
+     * @param page the number of identifiers, usually of the first page.
+     * @return the most stale identifiers of the source.
+     */
+    @Query("select i from JPAQuoteIdentifier i where i.quoteSource = :quoteSource and i.fetchDate < :fetchedBefore"
+                    + " and (i.lastUpdateAttempt is null or i.lastUpdateAttempt < :attemptedBefore)"
+                    + " order by i.latestQuoteDate asc nulls first, i.fetchDate, i.id")
+    List<JPAQuoteIdentifier> findMostStale(QuoteSource quoteSource, ZonedDateTime fetchedBefore, ZonedDateTime attemptedBefore, Pageable page);
+
+    /**
+     * Keeps the identifiers out of the staleness queue for the attempt cooldown, whether fetching their histories succeeds or not.
+     *
+     * @param identifierIds the ids of the identifiers taken by the update run.
+     * @param runStart the start of the update run.
+     * @return the number of updated identifiers.
+     */
+    @Transactional
+    @Modifying
+    @Query("update JPAQuoteIdentifier i set i.lastUpdateAttempt = :runStart where i.id in :identifierIds")
+    int recordUpdateAttempt(Collection<Long> identifierIds, ZonedDateTime runStart);
+
+    // after the snapshots were rebuilt by a bulk insert
+    @Modifying
+    @Query(value = "update quote_identifier set latest_quote_date = (select l.quote_date from latest_quote l where l.id = quote_identifier.id)"
+                    + " where id in :identifierIds", nativeQuery = true)
+    int updateLatestQuoteDates(Collection<Long> identifierIds);
+
+    /**
+     * PostgreSQL only: inserts a new identifier unless one exists for the ISIN, in one statement that neither fails nor aborts the transaction
+     * on a concurrent insert of the same ISIN. The id is taken from the sequence of the {@link com.wealthpilot.quote.store.util.AssignedOrSequenceGenerator},
+     * so the unique ISIN is the only possible conflict (no conflict target, as H2 supports <code>on conflict do nothing</code> only without).
+     *
+     * @param isin the ISIN of the identifier.
+     * @param fetchDate the initial fetch date.
+     * @param marketPlace the initial market place.
+     * @param quoteSource the name of the initial {@link QuoteSource}.
+     * @return 1 if the identifier was inserted, 0 if it already existed.
+     */
+    @Modifying
+    @Query(value = "insert into quote_identifier (id, version, isin, fetch_date, market_place, quote_source)"
+                    + " values (nextval('assigned_or_sequence'), 0, :isin, :fetchDate, :marketPlace, :quoteSource) on conflict do nothing",
+                    nativeQuery = true)
+    int insertIfAbsent(String isin, ZonedDateTime fetchDate, String marketPlace, String quoteSource);
 }
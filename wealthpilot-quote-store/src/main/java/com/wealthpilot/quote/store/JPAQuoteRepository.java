@@ -1,6 +1,7 @@
 package com.wealthpilot.quote.store;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,12 +13,30 @@ import org.springframework.stereotype.Repository;
 @Repository("QuoteRepository") // set custom bean name to avoid conflict with com.wealthpilot.transactions.infrastructure.persistence.jpa.JPAQuoteRepository
 public interface JPAQuoteRepository extends JpaRepository<JPAQuote, Long> {
 
-    Optional<JPAQuote> findFirstByIdentifierOrderByQuoteDateDesc(JPAQuoteIdentifier identifier);
-
     Optional<JPAQuote> findByIdentifierAndQuoteDate(JPAQuoteIdentifier identifier, LocalDate date);
 
+    Optional<JPAQuote> findFirstByIdentifierIdAndQuoteDateLessThanEqualOrderByQuoteDateDesc(Long identifierId, LocalDate date);
+
+    List<JPAQuote> findAllByIdentifierAndQuoteDateBetweenOrderByQuoteDate(JPAQuoteIdentifier identifier, LocalDate from, LocalDate to);
+
+    // ordered by date, so the quotes can be appended to a QuoteSeries without sorting
+    @Query("select q from Quote q where q.identifier = :identifier order by q.quoteDate")
     List<JPAQuote> findAllByIdentifier(JPAQuoteIdentifier identifier);
 
+    @Query("select q from Quote q where q.identifier in :identifiers order by q.quoteDate")
+    List<JPAQuote> findAllByIdentifierIn(Collection<JPAQuoteIdentifier> identifiers);
+
+    @Query("select q from Quote q where q.identifier in :identifiers and q.quoteDate between :from and :to order by q.quoteDate")
+    List<JPAQuote> findAllByIdentifierInAndQuoteDateBetween(Collection<JPAQuoteIdentifier> identifiers, LocalDate from, LocalDate to);
+
+    @Query("select q.identifier.id as identifierId, q.quoteDate as quoteDate from Quote q where q.identifier in :identifiers and q.quoteDate in :dates")
+    List<JPAIdentifierQuoteDate> findQuoteDates(Collection<JPAQuoteIdentifier> identifiers, Collection<LocalDate> dates);
+
+    // by date instead of id, so only the partitions of the dates are touched when the quote table is partitioned by quote_date
+    @Modifying
+    @Query("delete from Quote where identifier = :identifier and quoteDate in :dates")
+    int deleteByIdentifierAndQuoteDateIn(JPAQuoteIdentifier identifier, Collection<LocalDate> dates);
+
     @Modifying
     @Query("delete from Quote where identifier = :identifier") // NOTE: JPAQuote has a custom entity-name "Quote" that must be used in queries!
     void deleteByIdentifier(JPAQuoteIdentifier identifier);
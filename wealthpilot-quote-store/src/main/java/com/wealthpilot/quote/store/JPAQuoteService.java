@@ -2,13 +2,22 @@ package com.wealthpilot.quote.store;
 
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
-import org.ff4j.FF4j;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.lang.Nullable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -17,9 +26,14 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import com.wealthpilot.quote.store.util.Constants;
+import com.wealthpilot.quote.store.util.Currencies;
+import com.wealthpilot.quote.store.util.FillPolicy;
 import com.wealthpilot.quote.store.util.IsinQuote;
 import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.PriceMatrix;
 import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteChangeEvent;
+import com.wealthpilot.quote.store.util.QuoteSeries;
 import com.wealthpilot.quote.store.util.QuoteSource;
 import com.wealthpilot.quote.store.util.QuoteStore;
 import com.wealthpilot.quote.store.util.QuoteType;
@@ -27,33 +41,111 @@ import com.wealthpilot.quote.store.util.QuoteType;
 import io.micrometer.core.annotation.Timed;
 import lombok.extern.log4j.Log4j2;
 
+/**
+ * The JPA quote store. Changes of the stored quotes are published as {@link QuoteChangeEvent}s, which the {@link QuoteChangeDispatcher} delivers
+ * after the commit.
+ */
 @Transactional
 @Service
 @Log4j2
-public class JPAQuoteService implements QuoteStore {
+public class JPAQuoteService implements QuoteStore, ApplicationEventPublisherAware {
+
+    /**
+     * Max. number of ISINs or dates bound to one set-based query, and of ISINs handled by one transaction in {@link #storeQuotes(Collection)}.
+     */
+    static final int CHUNK_SIZE = 1000;
 
     private final JPAQuoteRepository quoteRepository;
     private final JPAQuoteIdentifierRepository quoteIdentifierRepository;
+    private final JPALatestQuoteRepository latestQuoteRepository;
     private final TransactionTemplate transactionTemplate;
-    private final FF4j ff4j;
+    private final QuoteHistoryCache historyCache;
+    private final QuoteStoreUpdater quoteStoreUpdater;
+    private final QuoteIdentifierResolver identifierResolver;
+    private ApplicationEventPublisher eventPublisher = event -> { };
 
-    @java.beans.ConstructorProperties({ "quoteRepository", "quoteIdentifierRepository", "transactionTemplate", "ff4j" })
-    public JPAQuoteService(JPAQuoteRepository quoteRepository, JPAQuoteIdentifierRepository quoteIdentifierRepository, TransactionTemplate transactionTemplate,
-                    FF4j ff4j) {
+    @java.beans.ConstructorProperties({ "quoteRepository", "quoteIdentifierRepository", "latestQuoteRepository", "transactionTemplate", "historyCache",
+                    "quoteStoreUpdater", "identifierResolver" })
+    public JPAQuoteService(JPAQuoteRepository quoteRepository, JPAQuoteIdentifierRepository quoteIdentifierRepository,
+                    JPALatestQuoteRepository latestQuoteRepository, TransactionTemplate transactionTemplate, QuoteHistoryCache historyCache,
+                    QuoteStoreUpdater quoteStoreUpdater, QuoteIdentifierResolver identifierResolver) {
         this.quoteRepository = quoteRepository;
         this.quoteIdentifierRepository = quoteIdentifierRepository;
+        this.latestQuoteRepository = latestQuoteRepository;
         this.transactionTemplate = transactionTemplate;
-        this.ff4j = ff4j;
+        this.historyCache = historyCache;
+        this.quoteStoreUpdater = quoteStoreUpdater;
+        this.identifierResolver = identifierResolver;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
     }
 
+    /**
+     * @return an immutable snapshot of the history, which may be served from the {@link QuoteHistoryCache}. A missing identifier of the ISIN is
+     *         created before the read-only transaction loading the history.
+     */
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
     public IsinQuoteHistory getQuoteHistory(final String isin) {
-        JPAQuoteIdentifier quoteIdentifier = quoteIdentifierRepository.findOneByIsin(isin).orElseGet(() -> createIdentifierAndFetch(isin));
-        return getIsinQuoteHistory(quoteIdentifier);
+        return historyCache.get(isin, this::loadQuoteHistory);
+    }
+
+    private IsinQuoteHistory loadQuoteHistory(final String isin) {
+        return Objects.requireNonNull(identifierResolver.inReadOnlyTransaction(List.of(isin), status -> getIsinQuoteHistory(identifierResolver.get(isin))));
+    }
+
+    /**
+     * @return an immutable history with the quotes from (inclusive) to (inclusive) the given dates, taken from the {@link QuoteHistoryCache} if the full
+     *         history is cached.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public IsinQuoteHistory getQuoteHistory(final String isin, final LocalDate from, final LocalDate to) {
+        IsinQuoteHistory cachedHistory = historyCache.getIfPresent(isin);
+        if (cachedHistory != null) {
+            return cachedHistory.subHistory(from, to);
+        }
+        return Objects.requireNonNull(identifierResolver.inReadOnlyTransaction(List.of(isin), status -> {
+            JPAQuoteIdentifier quoteIdentifier = identifierResolver.get(isin);
+            List<JPAQuote> quotes = quoteRepository.findAllByIdentifierAndQuoteDateBetweenOrderByQuoteDate(quoteIdentifier, from, to);
+            return toIsinQuoteHistory(quoteIdentifier, quotes).toUnmodifiable();
+        }));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<Quote> getQuoteAsOf(final String isin, final LocalDate date) {
+        IsinQuoteHistory cachedHistory = historyCache.getIfPresent(isin);
+        Optional<Quote> quote;
+        if (cachedHistory != null) {
+            quote = cachedHistory.getSeries().getLatestQuoteAsOf(date);
+        } else {
+            quote = Objects.requireNonNull(identifierResolver.inReadOnlyTransaction(List.of(isin), status -> quoteRepository
+                            .findFirstByIdentifierIdAndQuoteDateLessThanEqualOrderByQuoteDateDesc(identifierResolver.getId(isin), date).map(JPAQuote::toQuote)));
+        }
+        return quote.filter(latestQuote -> latestQuote.isValidForDate(date));
+    }
+
+    /**
+     * @return immutable snapshots of the histories, which may be served from the {@link QuoteHistoryCache}.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Map<String, IsinQuoteHistory> getQuoteHistories(final Collection<String> isins) {
+        return historyCache.getAll(isins, this::loadQuoteHistories);
     }
 
-    private synchronized JPAQuoteIdentifier createIdentifierAndFetch(final String isin) {
-        return quoteIdentifierRepository.findOneByIsin(isin).orElseGet(() -> Objects.requireNonNull(transactionTemplate.execute(status -> getOrCreateQuoteIdentifier(isin))));
+    private Map<String, IsinQuoteHistory> loadQuoteHistories(final Collection<String> isins) {
+        return Objects.requireNonNull(identifierResolver.inReadOnlyTransaction(isins, status -> {
+            Map<String, IsinQuoteHistory> histories = new HashMap<>();
+            for (List<String> chunk : chunks(isins)) {
+                getIsinQuoteHistories(identifierResolver.getAll(chunk)).forEach(history -> histories.put(history.getIsin(), history));
+            }
+            return histories;
+        }));
     }
 
     private IsinQuoteHistory getIsinQuoteHistory(final JPAQuoteIdentifier quoteIdentifier) {
@@ -61,20 +153,110 @@ public class JPAQuoteService implements QuoteStore {
         return toIsinQuoteHistory(quoteIdentifier, quotes);
     }
 
+    private List<IsinQuoteHistory> getIsinQuoteHistories(final List<JPAQuoteIdentifier> identifiers) {
+        if (identifiers.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, QuoteSeries.Builder> seriesByIdentifierId = new HashMap<>();
+        for (JPAQuote quote : quoteRepository.findAllByIdentifierIn(identifiers)) {
+            seriesByIdentifierId.computeIfAbsent(quote.getIdentifier().getId(), id -> QuoteSeries.builder()).add(quote.toQuote());
+        }
+        return identifiers.stream().map(identifier -> {
+            QuoteSeries.Builder series = seriesByIdentifierId.get(identifier.getId());
+            return newIsinQuoteHistory(identifier, series == null ? QuoteSeries.EMPTY : series.build());
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the latest quotes read from the {@link JPALatestQuote} snapshots, with one query per {@link #CHUNK_SIZE} ISINs.
+     */
     @Override
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Transactional(readOnly = true)
+    public Map<String, Quote> getLatestQuotes(final Collection<String> isins) {
+        Map<String, Quote> latestQuotes = new HashMap<>();
+        for (List<String> chunk : chunks(isins)) {
+            latestQuoteRepository.findAllByIsinIn(chunk).forEach(latestQuote -> latestQuotes.put(latestQuote.getIdentifier().getIsin(), latestQuote.toQuote()));
+        }
+        return latestQuotes;
+    }
+
+    /**
+     * @return the matrix of the cached histories and of the quotes of the other ISINs within the range (and the days forward filled from),
+     *         read with one query per {@link #CHUNK_SIZE} ISINs. The columns are built in parallel.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public PriceMatrix getPriceMatrix(final Collection<String> isins, final LocalDate from, final LocalDate to, final FillPolicy fillPolicy) {
+        List<String> columnIsins = List.copyOf(new LinkedHashSet<>(isins));
+        LocalDate loadFrom = fillPolicy == FillPolicy.FORWARD_FILL ? from.minusDays(Quote.MAX_DAYS_VALID_QUOTE) : from;
+        Map<String, QuoteSeries> seriesByIsin = new HashMap<>();
+        List<String> uncachedIsins = new ArrayList<>();
+        for (String isin : columnIsins) {
+            IsinQuoteHistory cachedHistory = historyCache.getIfPresent(isin);
+            if (cachedHistory != null) {
+                seriesByIsin.put(isin, cachedHistory.getSeries().subSeries(loadFrom, to));
+            } else {
+                uncachedIsins.add(isin);
+            }
+        }
+        if (!to.isBefore(from) && !uncachedIsins.isEmpty()) {
+            identifierResolver.inReadOnlyTransaction(uncachedIsins, status -> {
+                for (List<String> chunk : chunks(uncachedIsins)) {
+                    seriesByIsin.putAll(loadQuoteSeries(identifierResolver.getAll(chunk), loadFrom, to));
+                }
+                return null;
+            });
+        }
+        List<QuoteSeries> columns = columnIsins.stream().map(isin -> seriesByIsin.getOrDefault(isin, QuoteSeries.EMPTY)).collect(Collectors.toList());
+        return PriceMatrix.of(columnIsins, columns, from, to, fillPolicy);
+    }
+
+    private Map<String, QuoteSeries> loadQuoteSeries(final List<JPAQuoteIdentifier> identifiers, final LocalDate from, final LocalDate to) {
+        if (identifiers.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, QuoteSeries.Builder> seriesByIdentifierId = new HashMap<>();
+        for (JPAQuote quote : quoteRepository.findAllByIdentifierInAndQuoteDateBetween(identifiers, from, to)) {
+            seriesByIdentifierId.computeIfAbsent(quote.getIdentifier().getId(), id -> QuoteSeries.builder()).add(quote.toQuote());
+        }
+        Map<String, QuoteSeries> seriesByIsin = new HashMap<>();
+        for (JPAQuoteIdentifier identifier : identifiers) {
+            QuoteSeries.Builder series = seriesByIdentifierId.get(identifier.getId());
+            if (series != null) {
+                seriesByIsin.put(identifier.getIsin(), series.build());
+            }
+        }
+        return seriesByIsin;
+    }
+
+    /**
+     * Stores the quote in a new transaction, a missing identifier of the ISIN is created before it.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void storeQuote(IsinQuote quoteFromBank) {
-        JPAQuoteIdentifier quoteIdentifier = getOrCreateQuoteIdentifier(quoteFromBank.getIsin());
+        identifierResolver.inTransaction(List.of(quoteFromBank.getIsin()), status -> {
+            storeQuoteInTransaction(quoteFromBank);
+            return null;
+        });
+    }
+
+    private void storeQuoteInTransaction(final IsinQuote quoteFromBank) {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.getAndLock(quoteFromBank.getIsin());
         final Optional<JPAQuote> dbQuoteForDate = quoteRepository.findByIdentifierAndQuoteDate(quoteIdentifier, quoteFromBank.getQuote().getDate());
         if (dbQuoteForDate.isPresent()) {
             log.debug("Quote is already saved {}", quoteFromBank);
             return;
         }
 
-            final Optional<JPAQuote> currentQuote = quoteRepository.findFirstByIdentifierOrderByQuoteDateDesc(quoteIdentifier);
+            final Optional<JPALatestQuote> currentQuote = latestQuoteRepository.findById(Objects.requireNonNull(quoteIdentifier.getId()));
             if (currentQuote.isEmpty()) {
                 updateIdentifier(quoteIdentifier, quoteFromBank.getQuoteSource(), quoteFromBank.getMarketPlace());
-                quoteRepository.save(toQuoteStoreQuote(quoteIdentifier, quoteFromBank.getQuote()));
+                JPAQuote quote = toQuoteStoreQuote(quoteIdentifier, quoteFromBank.getQuote());
+                quoteRepository.save(quote);
+                latestQuoteRepository.save(JPALatestQuote.of(quoteIdentifier, quote));
+                historyCache.evict(quoteIdentifier.getIsin());
+                eventPublisher.publishEvent(new QuoteChangeEvent.NewQuote(quoteIdentifier.getIsin(), quote.toQuote(), quoteFromBank.getQuoteSource()));
             } else {
                 if (!currentQuote.get().toQuote().isValidForDate(LocalDate.now())) {
                     log.warn("No valid quote for {}", quoteIdentifier);
@@ -84,12 +266,192 @@ public class JPAQuoteService implements QuoteStore {
             }
     }
 
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void storeQuotes(Collection<IsinQuote> quotesFromBank) {
+        Map<String, List<IsinQuote>> quotesByIsin = quotesFromBank.stream().collect(Collectors.groupingBy(IsinQuote::getIsin, TreeMap::new, Collectors.toList()));
+        for (List<String> chunk : chunks(quotesByIsin.keySet())) {
+            identifierResolver.createMissing(chunk);
+        }
+        for (List<String> chunk : chunks(quotesByIsin.keySet())) {
+            transactionTemplate.execute(status -> storeQuotesOfChunk(chunk, quotesByIsin));
+        }
+    }
+
+    private int storeQuotesOfChunk(final List<String> isins, final Map<String, List<IsinQuote>> quotesByIsin) {
+        List<JPAQuoteIdentifier> identifiers = identifierResolver.findAndLockAll(isins);
+        Map<Long, LocalDate> latestDates = latestQuoteRepository.findAllById(identifiers.stream().map(JPAQuoteIdentifier::getId).collect(Collectors.toList()))
+                        .stream()
+                        .collect(Collectors.toMap(JPALatestQuote::getId, JPALatestQuote::getQuoteDate));
+        Set<LocalDate> candidateDates = isins.stream()
+                        .flatMap(isin -> quotesByIsin.get(isin).stream())
+                        .map(quote -> quote.getQuote().getDate())
+                        .collect(Collectors.toSet());
+        Map<Long, Set<LocalDate>> existingDates = new HashMap<>();
+        if (!latestDates.isEmpty()) {
+            quoteRepository.findQuoteDates(identifiers, candidateDates)
+                            .forEach(date -> existingDates.computeIfAbsent(date.getIdentifierId(), id -> new HashSet<>()).add(date.getQuoteDate()));
+        }
+
+        List<JPAQuote> newQuotes = new ArrayList<>();
+        List<JPALatestQuote> newLatestQuotes = new ArrayList<>();
+        for (JPAQuoteIdentifier quoteIdentifier : identifiers) {
+            Set<LocalDate> datesOfIdentifier = existingDates.computeIfAbsent(quoteIdentifier.getId(), id -> new HashSet<>());
+            LocalDate latestDate = latestDates.get(quoteIdentifier.getId());
+            for (IsinQuote quoteFromBank : quotesByIsin.get(quoteIdentifier.getIsin())) {
+                LocalDate date = quoteFromBank.getQuote().getDate();
+                if (datesOfIdentifier.contains(date)) {
+                    log.debug("Quote is already saved {}", quoteFromBank);
+                } else if (latestDate == null) {
+                    updateIdentifier(quoteIdentifier, quoteFromBank.getQuoteSource(), quoteFromBank.getMarketPlace());
+                    JPAQuote quote = toQuoteStoreQuote(quoteIdentifier, quoteFromBank.getQuote());
+                    newQuotes.add(quote);
+                    newLatestQuotes.add(JPALatestQuote.of(quoteIdentifier, quote));
+                    historyCache.evict(quoteIdentifier.getIsin());
+                    eventPublisher.publishEvent(new QuoteChangeEvent.NewQuote(quoteIdentifier.getIsin(), quote.toQuote(), quoteFromBank.getQuoteSource()));
+                    datesOfIdentifier.add(date);
+                    latestDate = date;
+                } else if (!Quote.isValidForDate(latestDate, LocalDate.now())) {
+                    log.warn("No valid quote for {}", quoteIdentifier);
+                } else {
+                    log.debug("Valid quotes already present, ignoring quote from bank {}", quoteFromBank);
+                }
+            }
+        }
+        quoteRepository.saveAll(newQuotes);
+        latestQuoteRepository.saveAll(newLatestQuotes);
+        log.debug("Stored {} new quotes for {} isins", newQuotes.size(), isins.size());
+        return newQuotes.size();
+    }
+
+    static <T extends Comparable<? super T>> List<List<T>> chunks(final Collection<T> values) {
+        List<T> sortedValues = values.stream().distinct().sorted().collect(Collectors.toList());
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < sortedValues.size(); from += CHUNK_SIZE) {
+            chunks.add(sortedValues.subList(from, Math.min(from + CHUNK_SIZE, sortedValues.size())));
+        }
+        return chunks;
+    }
+
     @Timed
     @Scheduled(cron = "${quote-store.update.cron}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void updateAllQuotes() {
-        if (!ff4j.check("BATCH_UPDATE_QUOTE_STORE")) {
-            return;
+        quoteStoreUpdater.updateAll(this::refreshQuoteHistory);
+    }
+
+    /**
+     * Replaces the stored quotes of the identifier with the fetched history in a new transaction, if {@link #shouldReplaceExistingQuotes} agrees.
+     * Like {@link #replaceQuoteHistory(String, IsinQuoteHistory)} only the difference is written. The fetch date of the identifier is updated in
+     * any case.
+     *
+     * @param identifier the identifier of the fetched history.
+     * @param fetchedHistory the history as fetched from the quote source.
+     * @return whether any stored quote was changed.
+     */
+    boolean refreshQuoteHistory(final JPAQuoteIdentifier identifier, final IsinQuoteHistory fetchedHistory) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            JPAQuoteIdentifier lockedIdentifier = identifierResolver.findAndLock(identifier.getIsin()).orElseThrow();
+            List<JPAQuote> existingQuotes = quoteRepository.findAllByIdentifier(lockedIdentifier);
+            List<JPAQuote> newQuotes = toQuoteStoreQuotes(lockedIdentifier, fetchedHistory);
+            if (!shouldReplaceExistingQuotes(lockedIdentifier, existingQuotes, newQuotes)) {
+                lockedIdentifier.setFetchDate(ZonedDateTime.now());
+                return false;
+            }
+            int touchedRows = replaceQuotes(lockedIdentifier, existingQuotes, newQuotes);
+            updateIdentifier(lockedIdentifier, fetchedHistory.getQuoteSource(), fetchedHistory.getMarketPlace());
+            historyCache.evict(lockedIdentifier.getIsin());
+            publishHistoryReplaced(lockedIdentifier.getIsin(), touchedRows);
+            return touchedRows > 0;
+        }));
+    }
+
+    /**
+     * Joins the current transaction, without one a missing identifier of the ISIN is created before the transaction of the replacement.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public int replaceQuoteHistory(final String isin, final IsinQuoteHistory history) {
+        if (!isin.equals(history.getIsin())) {
+            throw new IllegalArgumentException("History of " + history.getIsin() + " cannot replace the history of " + isin);
         }
+        return Objects.requireNonNull(identifierResolver.inTransaction(List.of(isin), status -> replaceQuoteHistoryInTransaction(isin, history)));
+    }
+
+    private int replaceQuoteHistoryInTransaction(final String isin, final IsinQuoteHistory history) {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.getAndLock(isin);
+        int touchedRows = replaceQuotes(quoteIdentifier, quoteRepository.findAllByIdentifier(quoteIdentifier), toQuoteStoreQuotes(quoteIdentifier, history));
+        updateIdentifier(quoteIdentifier, history.getQuoteSource(), history.getMarketPlace());
+        historyCache.evict(isin);
+        publishHistoryReplaced(isin, touchedRows);
+        log.debug("Replaced quote history of {}, touched {} of {} quotes", isin, touchedRows, history.getSeries().size());
+        return touchedRows;
+    }
+
+    private void publishHistoryReplaced(final String isin, final int touchedRows) {
+        if (touchedRows > 0) {
+            eventPublisher.publishEvent(new QuoteChangeEvent.HistoryReplaced(isin, touchedRows));
+        }
+    }
+
+    /**
+     * Makes the stored quotes equal to the new quotes by date: inserts the quotes of new dates, updates the existing quotes of dates with
+     * another amount, currency or type, and deletes the quotes of dates missing in the new quotes. Unchanged quotes are not written at all.
+     *
+     * @param identifier the identifier of the quotes, its {@link JPALatestQuote} is replaced as well.
+     * @param existingQuotes the managed quotes stored for the identifier.
+     * @param newQuotes the quotes replacing them, at most one per date.
+     * @return the number of inserted, updated and deleted quotes.
+     */
+    private int replaceQuotes(final JPAQuoteIdentifier identifier, final List<JPAQuote> existingQuotes, final List<JPAQuote> newQuotes) {
+        Map<LocalDate, JPAQuote> existingQuotesByDate = new HashMap<>(existingQuotes.size() * 2);
+        existingQuotes.forEach(quote -> existingQuotesByDate.put(quote.getQuoteDate(), quote));
+        List<JPAQuote> insertedQuotes = new ArrayList<>();
+        int updatedQuotes = 0;
+        for (JPAQuote newQuote : newQuotes) {
+            JPAQuote existingQuote = existingQuotesByDate.remove(newQuote.getQuoteDate());
+            if (existingQuote == null) {
+                insertedQuotes.add(newQuote);
+            } else if (!Objects.equals(existingQuote.getQuoteAmount(), newQuote.getQuoteAmount())
+                            || !Objects.equals(existingQuote.getQuoteCurrency(), newQuote.getQuoteCurrency())
+                            || existingQuote.getQuoteType() != newQuote.getQuoteType()) {
+                // written by dirty checking, only the changed columns thanks to @DynamicUpdate
+                existingQuote.setQuoteAmount(newQuote.getQuoteAmount());
+                existingQuote.setQuoteCurrency(newQuote.getQuoteCurrency());
+                existingQuote.setQuoteType(newQuote.getQuoteType());
+                updatedQuotes++;
+            }
+        }
+        List<LocalDate> deletedDates = new ArrayList<>(existingQuotesByDate.keySet());
+        for (List<LocalDate> chunk : chunks(deletedDates)) {
+            quoteRepository.deleteByIdentifierAndQuoteDateIn(identifier, chunk);
+        }
+        quoteRepository.saveAll(insertedQuotes);
+        replaceLatestQuote(identifier, newQuotes.isEmpty() ? null : newQuotes.get(newQuotes.size() - 1));
+        identifier.setHistoryFetchDate(ZonedDateTime.now());
+        return insertedQuotes.size() + updatedQuotes + deletedDates.size();
+    }
+
+    private void replaceLatestQuote(final JPAQuoteIdentifier identifier, @Nullable final JPAQuote quote) {
+        Optional<JPALatestQuote> latestQuote = latestQuoteRepository.findById(Objects.requireNonNull(identifier.getId()));
+        if (quote == null) {
+            latestQuote.ifPresent(latestQuoteRepository::delete);
+            identifier.setLatestQuoteDate(null);
+        } else if (latestQuote.isPresent()) {
+            // written by dirty checking only if it changed
+            latestQuote.get().update(quote);
+        } else {
+            latestQuoteRepository.save(JPALatestQuote.of(identifier, quote));
+        }
+    }
+
+    private List<JPAQuote> toQuoteStoreQuotes(final JPAQuoteIdentifier identifier, final IsinQuoteHistory history) {
+        QuoteSeries series = history.getSeries();
+        List<JPAQuote> quotes = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            quotes.add(toQuoteStoreQuote(identifier, series.getQuote(i)));
+        }
+        return quotes;
     }
 
     private Optional<LocalDate> getLatestQuoteDate(final List<JPAQuote> quotes) {
@@ -125,15 +487,17 @@ public class JPAQuoteService implements QuoteStore {
         return true;
     }
 
+    private IsinQuoteHistory newIsinQuoteHistory(final JPAQuoteIdentifier identifier, final QuoteSeries series) {
+        return new IsinQuoteHistory(identifier.getIsin(), identifier.getMarketPlace(), identifier.getQuoteSource(), series);
+    }
+
     private IsinQuoteHistory toIsinQuoteHistory(final JPAQuoteIdentifier identifier, final List<JPAQuote> quotes) {
-        String marketPlace = identifier.getMarketPlace();
-        QuoteSource quoteSource = identifier.getQuoteSource();
-        IsinQuoteHistory history = new IsinQuoteHistory(identifier.getIsin(), marketPlace, quoteSource);
+        QuoteSeries.Builder series = QuoteSeries.builder();
         for (JPAQuote quote: quotes) {
             final Quote quoteInCorrectFormat = quote.toQuote();
-            history.addQuote(quoteInCorrectFormat);
+            series.add(quoteInCorrectFormat);
         }
-        return history;
+        return newIsinQuoteHistory(identifier, series.build());
     }
 
     private JPAQuote toQuoteStoreQuote(final JPAQuoteIdentifier identifier, final Quote externalQuote) {
@@ -156,29 +520,7 @@ public class JPAQuoteService implements QuoteStore {
         if (!"%".equals(currency) && currency.length() != 3) {
             log.warn("Unexpected currency {} for {}", currency, quote);
         }
-        return currency.toUpperCase();
-    }
-
-    private JPAQuoteIdentifier getOrCreateQuoteIdentifier(final String isin) {
-        return quoteIdentifierRepository.findAndLockOneByIsin(isin).orElseGet(() -> createIdentifierInTransaction(isin));
-    }
-
-    private JPAQuoteIdentifier createIdentifierInTransaction(final String isin) {
-        try {
-            return Objects.requireNonNull(transactionTemplate.execute(status -> createIdentifier(isin)));
-        } catch (DataIntegrityViolationException e) {
-            log.info("Conflict on concurrent insert of quote-identifier: {}", isin);
-            return quoteIdentifierRepository.findAndLockOneByIsin(isin).orElseThrow();
-        }
-    }
-
-    protected JPAQuoteIdentifier createIdentifier(String isin) {
-        JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
-        identifier.setIsin(isin);
-        identifier.setFetchDate(ZonedDateTime.now().minusYears(1));
-        identifier.setMarketPlace("n/a");
-        identifier.setQuoteSource(QuoteSource.MANUAL);
-        return quoteIdentifierRepository.save(identifier);
+        return Objects.requireNonNull(Currencies.canonical(currency));
     }
 
     private void updateIdentifier(final JPAQuoteIdentifier identifier, QuoteSource quoteSource, @Nullable String marketPlace) {
@@ -0,0 +1,43 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.DynamicUpdate;
+import com.wealthpilot.quote.store.util.BaseEntity;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Split factor of an identifier: quotes dated before the ex-date are multiplied by the factor in split adjusted histories, see
+ * {@link SplitAdjustmentService}.
+ */
+@Setter
+@Getter
+@Entity(name = "SplitFactor")
+@Table(name = "split_factor")
+@DynamicUpdate
+@ToString
+public class JPASplitFactor extends BaseEntity {
+    @Version
+    private int version;
+
+    @Column(name = "ex_date")
+    private LocalDate exDate;
+    @Column(name = "factor")
+    private Double factor;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "quote_identifier_id")
+    @ToString.Exclude
+    private JPAQuoteIdentifier identifier;
+}
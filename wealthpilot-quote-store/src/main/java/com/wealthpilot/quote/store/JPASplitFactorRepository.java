@@ -0,0 +1,14 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface JPASplitFactorRepository extends JpaRepository<JPASplitFactor, Long> {
+
+    List<JPASplitFactor> findAllByIdentifierIdOrderByExDate(Long identifierId);
+
+    Optional<JPASplitFactor> findByIdentifierIdAndExDate(Long identifierId, LocalDate exDate);
+}
@@ -0,0 +1,100 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Recomputes all {@link JPALatestQuote} snapshots and the latest quote dates of the identifiers from the stored quotes, to repair snapshots
+ * that diverged e.g. by manual changes of the quote table. The ISINs are processed in chunks on a bounded worker pool, every chunk in its own
+ * transaction that locks the identifiers of the chunk like the quote writes do, so quotes stored concurrently are not lost.
+ */
+@Component
+@Log4j2
+public class LatestQuoteRebuilder {
+
+    private final JPAQuoteIdentifierRepository quoteIdentifierRepository;
+    private final JPALatestQuoteRepository latestQuoteRepository;
+    private final QuoteIdentifierResolver identifierResolver;
+    private final TransactionTemplate transactionTemplate;
+    private final int threads;
+    private final int chunkSize;
+
+    public LatestQuoteRebuilder(JPAQuoteIdentifierRepository quoteIdentifierRepository, JPALatestQuoteRepository latestQuoteRepository,
+                    QuoteIdentifierResolver identifierResolver, TransactionTemplate transactionTemplate, @Value("${quote-store.latest-quotes.rebuild-threads:4}") int threads,
+                    @Value("${quote-store.latest-quotes.rebuild-chunk-size:1000}") int chunkSize) {
+        this.quoteIdentifierRepository = quoteIdentifierRepository;
+        this.latestQuoteRepository = latestQuoteRepository;
+        this.identifierResolver = identifierResolver;
+        this.transactionTemplate = transactionTemplate;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the number of snapshots written, one per identifier with quotes.
+     */
+    @Timed
+    @Scheduled(cron = "${quote-store.latest-quotes.rebuild-cron:-}")
+    public int rebuildAll() {
+        ZonedDateTime start = ZonedDateTime.now();
+        AtomicInteger rebuilt = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 2),
+                        new CustomizableThreadFactory("quote-store-latest-quotes-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            PageRequest page = PageRequest.ofSize(chunkSize);
+            List<String> isins = quoteIdentifierRepository.findIsinsAfter("", page);
+            while (!isins.isEmpty()) {
+                List<String> chunk = isins;
+                executor.execute(() -> rebuilt.addAndGet(rebuildChunk(chunk)));
+                isins = quoteIdentifierRepository.findIsinsAfter(chunk.get(chunk.size() - 1), page);
+            }
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+        log.info("Rebuilt {} latest quotes in {} with {} threads", rebuilt.get(), Duration.between(start, ZonedDateTime.now()), threads);
+        return rebuilt.get();
+    }
+
+    private int rebuildChunk(final List<String> isins) {
+        return Objects.requireNonNull(transactionTemplate.execute(status -> {
+            List<Long> identifierIds = identifierResolver.findAndLockAll(isins)
+                            .stream()
+                            .map(JPAQuoteIdentifier::getId)
+                            .collect(Collectors.toList());
+            latestQuoteRepository.deleteAllByIdentifierIdIn(identifierIds);
+            int inserted = latestQuoteRepository.insertFromQuotes(identifierIds);
+            quoteIdentifierRepository.updateLatestQuoteDates(identifierIds);
+            return inserted;
+        }));
+    }
+
+    private static void awaitTermination(ThreadPoolExecutor executor) {
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+                log.error("Rebuild of latest quotes did not terminate, cancelling {} pending chunks", executor.getQueue().size());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import com.wealthpilot.quote.store.util.AggregatedQuote;
+import com.wealthpilot.quote.store.util.Granularity;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.QuoteAggregator;
+import com.wealthpilot.quote.store.util.QuoteSeries;
+
+/**
+ * Aggregated histories for charts and reports over long horizons, e.g. one point per week or month instead of the daily quotes.
+ * Histories in the {@link QuoteHistoryCache} are aggregated in memory. The others are aggregated in the database with date truncation and
+ * window functions if {@code quote-store.aggregation.in-database} is set (PostgreSQL, H2), otherwise their quotes of the range are loaded and
+ * aggregated in memory by the {@link QuoteAggregator}. Missing identifiers of the uncached ISINs are created before the read-only transaction
+ * loading them.
+ */
+@Service
+@Transactional(propagation = Propagation.SUPPORTS)
+public class QuoteAggregationService {
+
+    // %1$s is the SQL expression of the first day of the period of q.quote_date
+    private static final String AGGREGATION_QUERY = "select x.quote_identifier_id, x.period_start, max(x.quote_date) as last_date,"
+                    + " min(x.open_amount) as open_amount, max(x.quote_amount) as high_amount, min(x.quote_amount) as low_amount,"
+                    + " min(x.last_amount) as last_amount, avg(x.quote_amount) as average_amount, count(*) as quote_count,"
+                    + " min(x.last_currency) as last_currency"
+                    + " from (select q.quote_identifier_id, q.quote_date, q.quote_amount, %1$s as period_start,"
+                    + " first_value(q.quote_amount) over w as open_amount, last_value(q.quote_amount) over w as last_amount,"
+                    + " last_value(q.quote_currency) over w as last_currency"
+                    + " from quote q where q.quote_identifier_id in (:identifierIds) and q.quote_date between :from and :to"
+                    + " window w as (partition by q.quote_identifier_id, %1$s order by q.quote_date"
+                    + " rows between unbounded preceding and unbounded following)) x"
+                    + " group by x.quote_identifier_id, x.period_start order by x.quote_identifier_id, x.period_start";
+
+    private final EntityManager entityManager;
+    private final JPAQuoteRepository quoteRepository;
+    private final QuoteIdentifierResolver identifierResolver;
+    private final QuoteHistoryCache historyCache;
+    private final boolean inDatabase;
+
+    public QuoteAggregationService(EntityManager entityManager, JPAQuoteRepository quoteRepository, QuoteIdentifierResolver identifierResolver,
+                    QuoteHistoryCache historyCache, @Value("${quote-store.aggregation.in-database:false}") boolean inDatabase) {
+        this.entityManager = entityManager;
+        this.quoteRepository = quoteRepository;
+        this.identifierResolver = identifierResolver;
+        this.historyCache = historyCache;
+        this.inDatabase = inDatabase;
+    }
+
+    /**
+     * @param isin the ISIN of the history.
+     * @param from the first date of the range.
+     * @param to the last date of the range.
+     * @param granularity the length of the periods.
+     * @return one aggregated quote per period with quotes from (inclusive) to (inclusive) the given dates, ordered by period. The first and last
+     *         period only contain the quotes within the range.
+     */
+    public List<AggregatedQuote> getAggregatedHistory(String isin, LocalDate from, LocalDate to, Granularity granularity) {
+        return getAggregatedHistories(List.of(isin), from, to, granularity).get(isin);
+    }
+
+    /**
+     * Bulk variant of {@link #getAggregatedHistory(String, LocalDate, LocalDate, Granularity)} with one query per
+     * {@link JPAQuoteService#CHUNK_SIZE} ISINs that are not cached.
+     *
+     * @param isins the ISINs of the histories.
+     * @param from the first date of the range.
+     * @param to the last date of the range.
+     * @param granularity the length of the periods.
+     * @return the aggregated histories mapped by ISIN, containing an entry for every given ISIN.
+     */
+    public Map<String, List<AggregatedQuote>> getAggregatedHistories(Collection<String> isins, LocalDate from, LocalDate to, Granularity granularity) {
+        Map<String, List<AggregatedQuote>> histories = new HashMap<>();
+        List<String> uncachedIsins = new ArrayList<>();
+        for (String isin : isins) {
+            IsinQuoteHistory cachedHistory = historyCache.getIfPresent(isin);
+            if (cachedHistory != null) {
+                histories.put(isin, QuoteAggregator.aggregate(cachedHistory.getSeries().subSeries(from, to), granularity));
+            } else {
+                uncachedIsins.add(isin);
+            }
+        }
+        if (!to.isBefore(from) && !uncachedIsins.isEmpty()) {
+            identifierResolver.inReadOnlyTransaction(uncachedIsins, status -> {
+                for (List<String> chunk : JPAQuoteService.chunks(uncachedIsins)) {
+                    List<JPAQuoteIdentifier> identifiers = identifierResolver.getAll(chunk);
+                    Map<Long, List<AggregatedQuote>> aggregatedQuotes = inDatabase ? aggregateInDatabase(identifiers, from, to, granularity)
+                                    : aggregateInMemory(identifiers, from, to, granularity);
+                    identifiers.forEach(identifier -> histories.put(identifier.getIsin(), aggregatedQuotes.getOrDefault(identifier.getId(), List.of())));
+                }
+                return null;
+            });
+        }
+        isins.forEach(isin -> histories.putIfAbsent(isin, List.of()));
+        return histories;
+    }
+
+    private Map<Long, List<AggregatedQuote>> aggregateInMemory(List<JPAQuoteIdentifier> identifiers, LocalDate from, LocalDate to,
+                    Granularity granularity) {
+        Map<Long, QuoteSeries.Builder> seriesByIdentifierId = new HashMap<>();
+        for (JPAQuote quote : quoteRepository.findAllByIdentifierInAndQuoteDateBetween(identifiers, from, to)) {
+            seriesByIdentifierId.computeIfAbsent(quote.getIdentifier().getId(), id -> QuoteSeries.builder()).add(quote.toQuote());
+        }
+        Map<Long, List<AggregatedQuote>> aggregatedQuotes = new HashMap<>();
+        seriesByIdentifierId.forEach((identifierId, series) -> aggregatedQuotes.put(identifierId, QuoteAggregator.aggregate(series.build(), granularity)));
+        return aggregatedQuotes;
+    }
+
+    private Map<Long, List<AggregatedQuote>> aggregateInDatabase(List<JPAQuoteIdentifier> identifiers, LocalDate from, LocalDate to,
+                    Granularity granularity) {
+        if (identifiers.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> identifierIds = new ArrayList<>(identifiers.size());
+        identifiers.forEach(identifier -> identifierIds.add(identifier.getId()));
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(String.format(AGGREGATION_QUERY, periodStartSql(granularity)))
+                        .setParameter("identifierIds", identifierIds)
+                        .setParameter("from", from)
+                        .setParameter("to", to)
+                        .getResultList();
+        Map<Long, List<AggregatedQuote>> aggregatedQuotes = new HashMap<>();
+        for (Object[] row : rows) {
+            aggregatedQuotes.computeIfAbsent(((Number) row[0]).longValue(), id -> new ArrayList<>())
+                            .add(AggregatedQuote.builder()
+                                            .periodStart(toLocalDate(row[1]))
+                                            .lastDate(toLocalDate(row[2]))
+                                            .open(((Number) row[3]).doubleValue())
+                                            .high(((Number) row[4]).doubleValue())
+                                            .low(((Number) row[5]).doubleValue())
+                                            .last(((Number) row[6]).doubleValue())
+                                            .average(((Number) row[7]).doubleValue())
+                                            .count(((Number) row[8]).intValue())
+                                            .currency((String) row[9])
+                                            .build());
+        }
+        return aggregatedQuotes;
+    }
+
+    // the same periods as Granularity.periodStart, weeks by day arithmetic as date_trunc('week') starts on sunday in H2
+    private static String periodStartSql(Granularity granularity) {
+        switch (granularity) {
+            case WEEK:
+                return "(q.quote_date - cast(extract(isodow from q.quote_date) as integer) + 1)";
+            case MONTH:
+                return "cast(date_trunc('month', cast(q.quote_date as timestamp)) as date)";
+            case QUARTER:
+                return "cast(date_trunc('quarter', cast(q.quote_date as timestamp)) as date)";
+            case YEAR:
+                return "cast(date_trunc('year', cast(q.quote_date as timestamp)) as date)";
+            default:
+                throw new IllegalArgumentException("Unsupported granularity " + granularity);
+        }
+    }
+
+    private static LocalDate toLocalDate(Object date) {
+        return date instanceof LocalDate ? (LocalDate) date : ((java.sql.Date) date).toLocalDate();
+    }
+}
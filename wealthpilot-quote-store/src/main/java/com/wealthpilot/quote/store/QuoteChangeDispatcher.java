@@ -0,0 +1,277 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import com.wealthpilot.quote.store.util.BackPressurePolicy;
+import com.wealthpilot.quote.store.util.QuoteChangeEvent;
+import com.wealthpilot.quote.store.util.QuoteChangeListener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Delivers the {@link QuoteChangeEvent}s published by the quote store to the {@link QuoteChangeListener} beans after the publishing transaction
+ * committed, or at once outside of a transaction. Dispatching only puts the event into a bounded queue per listener, which is drained in batches
+ * of up to {@code batch-size} events by a thread per listener. A full queue is handled by the {@link BackPressurePolicy} of the listener.
+ */
+@Component
+@Log4j2
+public class QuoteChangeDispatcher implements DisposableBean {
+
+    static final String PUBLISHED_COUNTER = "quote_store.events.published";
+    static final String DROPPED_COUNTER = "quote_store.events.dropped";
+    static final String COALESCED_COUNTER = "quote_store.events.coalesced";
+    static final String FAILED_COUNTER = "quote_store.events.failed";
+    static final String LAG_TIMER = "quote_store.events.lag";
+    static final String QUEUED_GAUGE = "quote_store.events.queued";
+
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final Counter published;
+
+    public QuoteChangeDispatcher(ObjectProvider<QuoteChangeListener> listeners, MeterRegistry meterRegistry,
+                    @Value("${quote-store.events.capacity:10000}") int capacity, @Value("${quote-store.events.batch-size:500}") int batchSize,
+                    @Value("${quote-store.events.block-timeout:PT10S}") Duration blockTimeout) {
+        this.published = meterRegistry.counter(PUBLISHED_COUNTER);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("quote-store-events-");
+        threadFactory.setDaemon(true);
+        listeners.orderedStream().forEach(listener -> {
+            Subscription subscription = new Subscription(listener, meterRegistry, capacity, batchSize, blockTimeout);
+            subscriptions.add(subscription);
+            threadFactory.newThread(subscription).start();
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void dispatch(QuoteChangeEvent event) {
+        published.increment();
+        long now = System.nanoTime();
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event, now);
+        }
+    }
+
+    /**
+     * Stops the threads of the listeners after they delivered the queued events.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        subscriptions.forEach(Subscription::stop);
+        for (Subscription subscription : subscriptions) {
+            subscription.awaitStopped();
+        }
+    }
+
+    private static final class Subscription implements Runnable {
+        private static final long STOP_TIMEOUT_SECONDS = 10;
+
+        private final QuoteChangeListener listener;
+        private final BackPressurePolicy policy;
+        private final int capacity;
+        private final int batchSize;
+        private final long blockTimeoutNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private final Condition stopped = lock.newCondition();
+        private final ArrayDeque<Queued> queue = new ArrayDeque<>();
+        // the queue of COALESCE_BY_ISIN, in order of the first queued event of every ISIN
+        private final LinkedHashMap<String, Queued> queueByIsin = new LinkedHashMap<>();
+        private final Counter dropped;
+        private final Counter coalesced;
+        private final Counter failed;
+        private final Timer lag;
+        private boolean running = true;
+        private boolean done;
+
+        Subscription(QuoteChangeListener listener, MeterRegistry meterRegistry, int capacity, int batchSize, Duration blockTimeout) {
+            this.listener = listener;
+            this.policy = listener.getBackPressurePolicy();
+            this.capacity = capacity;
+            this.batchSize = batchSize;
+            this.blockTimeoutNanos = blockTimeout.toNanos();
+            String name = listener.getName();
+            this.dropped = meterRegistry.counter(DROPPED_COUNTER, "listener", name);
+            this.coalesced = meterRegistry.counter(COALESCED_COUNTER, "listener", name);
+            this.failed = meterRegistry.counter(FAILED_COUNTER, "listener", name);
+            // time from the dispatch of an event to its delivery to the listener
+            this.lag = meterRegistry.timer(LAG_TIMER, "listener", name);
+            Gauge.builder(QUEUED_GAUGE, this, Subscription::size).tag("listener", name).register(meterRegistry);
+        }
+
+        void offer(QuoteChangeEvent event, long dispatchNanos) {
+            lock.lock();
+            try {
+                if (policy == BackPressurePolicy.COALESCE_BY_ISIN) {
+                    offerCoalescing(event, dispatchNanos);
+                } else if (policy == BackPressurePolicy.BLOCK) {
+                    offerBlocking(event, dispatchNanos);
+                } else {
+                    if (queue.size() >= capacity) {
+                        queue.poll();
+                        dropped.increment();
+                    }
+                    queue.add(new Queued(event, dispatchNanos));
+                }
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void offerCoalescing(QuoteChangeEvent event, long dispatchNanos) {
+            Queued previous = queueByIsin.get(event.getIsin());
+            if (previous != null) {
+                // keeps the position and dispatch time of the first event, so the lag is the one of the oldest undelivered change
+                queueByIsin.put(event.getIsin(), new Queued(event, previous.dispatchNanos));
+                coalesced.increment();
+                return;
+            }
+            if (queueByIsin.size() >= capacity) {
+                Iterator<Queued> oldest = queueByIsin.values().iterator();
+                oldest.next();
+                oldest.remove();
+                dropped.increment();
+            }
+            queueByIsin.put(event.getIsin(), new Queued(event, dispatchNanos));
+        }
+
+        private void offerBlocking(QuoteChangeEvent event, long dispatchNanos) {
+            long remainingNanos = blockTimeoutNanos;
+            try {
+                while (queue.size() >= capacity && running) {
+                    if (remainingNanos <= 0) {
+                        log.warn("Dropped {} after waiting {} ms for {}", event, TimeUnit.NANOSECONDS.toMillis(blockTimeoutNanos), listener.getName());
+                        dropped.increment();
+                        return;
+                    }
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.increment();
+                return;
+            }
+            queue.add(new Queued(event, dispatchNanos));
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return queue.size() + queueByIsin.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<Queued> batch = take();
+                while (!batch.isEmpty()) {
+                    deliver(batch);
+                    batch = take();
+                }
+            } finally {
+                lock.lock();
+                try {
+                    done = true;
+                    stopped.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        // the next batch, empty if stopped and all events are delivered
+        private List<Queued> take() {
+            lock.lock();
+            try {
+                while (queue.isEmpty() && queueByIsin.isEmpty() && running) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                List<Queued> batch = new ArrayList<>(Math.min(batchSize, size()));
+                while (batch.size() < batchSize && !queue.isEmpty()) {
+                    batch.add(queue.poll());
+                }
+                Iterator<Map.Entry<String, Queued>> entries = queueByIsin.entrySet().iterator();
+                while (batch.size() < batchSize && entries.hasNext()) {
+                    batch.add(entries.next().getValue());
+                    entries.remove();
+                }
+                notFull.signalAll();
+                return batch;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void deliver(List<Queued> batch) {
+            List<QuoteChangeEvent> events = new ArrayList<>(batch.size());
+            long now = System.nanoTime();
+            for (Queued queued : batch) {
+                events.add(queued.event);
+                lag.record(now - queued.dispatchNanos, TimeUnit.NANOSECONDS);
+            }
+            try {
+                listener.onQuoteChanges(events);
+            } catch (RuntimeException e) {
+                log.error("{} failed on {} quote change events", listener.getName(), events.size(), e);
+                failed.increment(events.size());
+            }
+        }
+
+        void stop() {
+            lock.lock();
+            try {
+                running = false;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void awaitStopped() throws InterruptedException {
+            lock.lock();
+            try {
+                long remainingNanos = TimeUnit.SECONDS.toNanos(STOP_TIMEOUT_SECONDS);
+                while (!done && remainingNanos > 0) {
+                    remainingNanos = stopped.awaitNanos(remainingNanos);
+                }
+                if (!done) {
+                    log.warn("{} did not deliver the queued quote change events within {} seconds", listener.getName(), STOP_TIMEOUT_SECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Queued {
+        private final QuoteChangeEvent event;
+        private final long dispatchNanos;
+
+        Queued(QuoteChangeEvent event, long dispatchNanos) {
+            this.event = event;
+            this.dispatchNanos = dispatchNanos;
+        }
+    }
+}
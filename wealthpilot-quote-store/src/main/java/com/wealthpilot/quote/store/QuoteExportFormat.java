@@ -0,0 +1,42 @@
+package com.wealthpilot.quote.store;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * File formats of {@link QuoteStoreExport}.
+ */
+public enum QuoteExportFormat {
+    /**
+     * Length-prefixed binary records, every identifier followed by its quotes with delta encoded dates, see {@link BinaryQuoteExport}.
+     */
+    BINARY {
+        @Override
+        QuoteExportWriter newWriter(OutputStream out) {
+            return new BinaryQuoteExport.Writer(out);
+        }
+
+        @Override
+        QuoteExportReader newReader(InputStream in) {
+            return new BinaryQuoteExport.Reader(in);
+        }
+    },
+    /**
+     * One line per quote with the fields of its identifier repeated, for analytics tools.
+     */
+    CSV {
+        @Override
+        QuoteExportWriter newWriter(OutputStream out) {
+            return new CsvQuoteExport.Writer(out);
+        }
+
+        @Override
+        QuoteExportReader newReader(InputStream in) {
+            return new CsvQuoteExport.Reader(in);
+        }
+    };
+
+    abstract QuoteExportWriter newWriter(OutputStream out);
+
+    abstract QuoteExportReader newReader(InputStream in);
+}
@@ -0,0 +1,18 @@
+package com.wealthpilot.quote.store;
+
+import java.io.IOException;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Reads the rows of an export written by the {@link QuoteExportWriter} of the same {@link QuoteExportFormat}, one at a time.
+ */
+interface QuoteExportReader {
+
+    /**
+     * @return the next row, {@code null} at the end of the export.
+     * @throws IOException if the stream cannot be read or is not a valid export.
+     */
+    @Nullable
+    QuoteExportRow read() throws IOException;
+}
@@ -0,0 +1,35 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+
+import org.springframework.lang.Nullable;
+import com.wealthpilot.quote.store.util.QuoteSource;
+import com.wealthpilot.quote.store.util.QuoteType;
+
+import lombok.Data;
+
+/**
+ * One quote joined to its identifier, as read by the export and written to the export files. The quote fields are {@code null} for an
+ * identifier without quotes.
+ */
+@Data
+public class QuoteExportRow {
+
+    private final String isin;
+    private final ZonedDateTime fetchDate;
+    private final String marketPlace;
+    private final QuoteSource quoteSource;
+    @Nullable
+    private final LocalDate quoteDate;
+    @Nullable
+    private final Double quoteAmount;
+    @Nullable
+    private final String quoteCurrency;
+    @Nullable
+    private final QuoteType quoteType;
+
+    boolean hasQuote() {
+        return quoteDate != null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.wealthpilot.quote.store;
+
+import java.io.IOException;
+
+/**
+ * Writes the rows of an export, sorted by ISIN and quote date, to a stream in one of the {@link QuoteExportFormat}s.
+ */
+interface QuoteExportWriter {
+
+    void write(QuoteExportRow row) throws IOException;
+
+    /**
+     * Writes the end of the export and flushes, but does not close the stream.
+     *
+     * @throws IOException if the stream cannot be written.
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,127 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Bounded read-through cache of immutable {@link IsinQuoteHistory} snapshots by ISIN.
+ * Entries are evicted by the total number of cached quotes and by age, the age limit also bounds staleness between multiple application nodes.
+ */
+@Component
+public class QuoteHistoryCache {
+
+    static final String CACHE_NAME = "quoteHistory";
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Cache<String, IsinQuoteHistory> cache;
+    // incremented by every eviction of an ISIN of the stripe, a bulk load only caches a history if its stripe was not evicted meanwhile
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public QuoteHistoryCache(@Value("${quote-store.history-cache.max-quotes:500000}") long maxQuotes,
+                    @Value("${quote-store.history-cache.expire-after-write:PT1H}") Duration expireAfterWrite, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                        .maximumWeight(maxQuotes)
+                        .weigher((String isin, IsinQuoteHistory history) -> history.getSeries().size() + 1)
+                        .expireAfterWrite(expireAfterWrite)
+                        .recordStats()
+                        .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * The loader is executed atomically for the ISIN, so an {@link #evict(String)} during loading waits for it and removes the loaded value.
+     *
+     * @param isin the ISIN of the history.
+     * @param loader loads the history if it is not cached.
+     * @return the cached, unmodifiable history.
+     */
+    IsinQuoteHistory get(String isin, Function<String, IsinQuoteHistory> loader) {
+        return cache.get(isin, key -> loader.apply(key).toUnmodifiable());
+    }
+
+    @Nullable
+    IsinQuoteHistory getIfPresent(String isin) {
+        return cache.getIfPresent(isin);
+    }
+
+    /**
+     * Loads the missing histories in bulk, which is not atomic per ISIN like {@link #get(String, Function)}: a loaded history is only cached if
+     * its ISIN was not evicted during loading, so histories read before the commit of a write are returned but not cached.
+     *
+     * @param isins the ISINs of the histories.
+     * @param loader loads the histories of the ISINs that are not cached.
+     * @return the cached and loaded, unmodifiable histories by ISIN.
+     */
+    Map<String, IsinQuoteHistory> getAll(Collection<String> isins, Function<Collection<String>, Map<String, IsinQuoteHistory>> loader) {
+        Map<String, IsinQuoteHistory> cached = cache.getAllPresent(isins);
+        Map<String, Long> missingGenerations = new LinkedHashMap<>();
+        for (String isin : isins) {
+            if (!cached.containsKey(isin)) {
+                missingGenerations.putIfAbsent(isin, generations.get(stripe(isin)));
+            }
+        }
+        Map<String, IsinQuoteHistory> loaded = new HashMap<>();
+        if (!missingGenerations.isEmpty()) {
+            loader.apply(new ArrayList<>(missingGenerations.keySet())).forEach((isin, history) -> {
+                IsinQuoteHistory unmodifiable = history.toUnmodifiable();
+                loaded.put(isin, unmodifiable);
+                long generation = missingGenerations.getOrDefault(isin, -1L);
+                // atomic with the invalidation of the ISIN, which follows the increment of its generation
+                cache.asMap().compute(isin, (key, present) -> present == null && generations.get(stripe(key)) == generation ? unmodifiable : present);
+            });
+        }
+        Map<String, IsinQuoteHistory> histories = new LinkedHashMap<>();
+        for (String isin : isins) {
+            IsinQuoteHistory history = cached.containsKey(isin) ? cached.get(isin) : loaded.get(isin);
+            if (history != null) {
+                histories.put(isin, history);
+            }
+        }
+        return histories;
+    }
+
+    /**
+     * Evicts the history of the ISIN now and again after the current transaction (if any) completed,
+     * so that concurrent readers can not cache data that was read before the commit.
+     *
+     * @param isin the ISIN of the history to evict.
+     */
+    void evict(String isin) {
+        invalidate(isin);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(isin);
+                }
+            });
+        }
+    }
+
+    private void invalidate(String isin) {
+        generations.incrementAndGet(stripe(isin));
+        cache.invalidate(isin);
+    }
+
+    private static int stripe(String isin) {
+        return Math.floorMod(isin.hashCode(), GENERATION_STRIPES);
+    }
+}
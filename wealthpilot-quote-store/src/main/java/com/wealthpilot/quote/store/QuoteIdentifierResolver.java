@@ -0,0 +1,381 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.wealthpilot.quote.store.util.QuoteChangeEvent;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Resolves ISINs to their {@link JPAQuoteIdentifier}, creating missing identifiers. The ids of resolved identifiers are cached by ISIN, so reads
+ * load an identifier and writes lock it by primary key instead of by ISIN. A cached id is only used if the row loaded by it still has the ISIN,
+ * otherwise it is evicted and the ISIN is looked up again. Other application nodes cannot evict the ids, so where the row is not loaded at all
+ * a changed identifier is noticed after {@code expire-after-write} at the latest.
+ * <p>
+ * The quote store resolves identifiers in transactions opened by {@link #inTransaction} and {@link #inReadOnlyTransaction}, which create the
+ * missing identifiers before the transaction begins: a read-only transaction, which may run on a read replica (see
+ * {@link ReadReplicaRoutingDataSource}), cannot create them, and a new transaction creating them would take a second connection while the
+ * outer one holds its own. Identifiers missing within a transaction of the caller are created in it, or in a new read-write transaction on the
+ * primary if it is read-only. Created identifiers are published as {@link QuoteChangeEvent.IdentifierCreated}.
+ */
+@Component
+@Log4j2
+public class QuoteIdentifierResolver implements ApplicationEventPublisherAware {
+
+    static final String CACHE_NAME = "quoteIdentifierId";
+    static final String LOCK_TIMER = "quote_store.identifier.lock";
+    static final String INSERT_CONFLICT_COUNTER = "quote_store.identifier.insert_conflicts";
+    /**
+     * Number of locks serializing the creation of quote identifiers of the same ISIN within this JVM.
+     */
+    static final int LOCK_STRIPES = 64;
+
+    private final JPAQuoteIdentifierRepository quoteIdentifierRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final Cache<String, Long> ids;
+    private final boolean identifierUpsert;
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+    // time to load and lock a single identifier, under contention mostly the wait for the lock
+    private final Timer lockTimer;
+    private final Counter insertConflicts;
+    private ApplicationEventPublisher eventPublisher = event -> { };
+
+    public QuoteIdentifierResolver(JPAQuoteIdentifierRepository quoteIdentifierRepository, TransactionTemplate transactionTemplate,
+                    MeterRegistry meterRegistry, @Value("${quote-store.identifier-cache.max-size:1000000}") long maxSize,
+                    @Value("${quote-store.identifier-cache.expire-after-write:PT1H}") Duration expireAfterWrite,
+                    @Value("${quote-store.identifier-upsert:false}") boolean identifierUpsert) {
+        this.quoteIdentifierRepository = quoteIdentifierRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.newTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.ids = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(expireAfterWrite).recordStats().build();
+        this.identifierUpsert = identifierUpsert;
+        this.lockTimer = meterRegistry.timer(LOCK_TIMER);
+        this.insertConflicts = meterRegistry.counter(INSERT_CONFLICT_COUNTER);
+        CaffeineCacheMetrics.monitor(meterRegistry, ids, CACHE_NAME);
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Runs the action in a transaction, joining the current transaction if there is one. Without one, the missing identifiers of the ISINs are
+     * created before the transaction begins, so resolving them within it does not create them in a new transaction, which needs a second
+     * connection while the transaction holds its own.
+     *
+     * @param isins the ISINs whose identifiers the action resolves.
+     * @param action the action run in the transaction.
+     * @param <T> the type of the result.
+     * @return the result of the action.
+     */
+    @Nullable
+    <T> T inTransaction(Collection<String> isins, TransactionCallback<T> action) {
+        createMissingBeforeTransaction(isins);
+        return transactionTemplate.execute(action);
+    }
+
+    /**
+     * Read-only variant of {@link #inTransaction(Collection, TransactionCallback)}: the missing identifiers are created in a read-write
+     * transaction before the read-only one begins.
+     *
+     * @param isins the ISINs whose identifiers the action resolves.
+     * @param action the action run in the read-only transaction.
+     * @param <T> the type of the result.
+     * @return the result of the action.
+     */
+    @Nullable
+    <T> T inReadOnlyTransaction(Collection<String> isins, TransactionCallback<T> action) {
+        createMissingBeforeTransaction(isins);
+        return readOnlyTransactionTemplate.execute(action);
+    }
+
+    /**
+     * @param isin the ISIN of the identifier.
+     * @return the identifier of the ISIN, created if it did not exist.
+     */
+    JPAQuoteIdentifier get(String isin) {
+        return getCachedId(isin).flatMap(id -> verify(isin, quoteIdentifierRepository.findById(id))).orElseGet(() -> {
+            JPAQuoteIdentifier identifier = quoteIdentifierRepository.findOneByIsin(isin).orElseGet(() -> onPrimary(() -> createIdentifierAndFetch(isin)));
+            cache(identifier);
+            return identifier;
+        });
+    }
+
+    /**
+     * Returns the id without loading the identifier if it is cached, so the id may be outdated for up to {@code expire-after-write} if the
+     * identifier was replaced on another node.
+     *
+     * @param isin the ISIN of the identifier.
+     * @return the id of the identifier of the ISIN, created if it did not exist.
+     */
+    Long getId(String isin) {
+        return getCachedId(isin).orElseGet(() -> get(isin).getId());
+    }
+
+    /**
+     * @param isin the ISIN of the identifier.
+     * @return the identifier of the ISIN locked by primary key if its id is cached, created if it did not exist.
+     */
+    JPAQuoteIdentifier getAndLock(String isin) {
+        return findAndLock(isin).orElseGet(() -> {
+            createIdentifierIfAbsent(isin);
+            JPAQuoteIdentifier identifier = lock(() -> quoteIdentifierRepository.findAndLockOneByIsin(isin)).orElseThrow();
+            cache(identifier);
+            return identifier;
+        });
+    }
+
+    /**
+     * @param isin the ISIN of the identifier.
+     * @return the identifier of the ISIN locked by primary key if its id is cached, empty if it does not exist.
+     */
+    Optional<JPAQuoteIdentifier> findAndLock(String isin) {
+        return getCachedId(isin).flatMap(id -> verify(isin, lock(() -> quoteIdentifierRepository.findAndLockById(id)))).or(() -> {
+            Optional<JPAQuoteIdentifier> identifier = lock(() -> quoteIdentifierRepository.findAndLockOneByIsin(isin));
+            identifier.ifPresent(this::cache);
+            return identifier;
+        });
+    }
+
+    /**
+     * Locks the existing identifiers of the ISINs by primary key in the order of their ids, so concurrent batches always lock in the same order.
+     * Ids that are not cached are looked up with one query.
+     *
+     * @param isins the ISINs of the identifiers.
+     * @return the locked identifiers ordered by id, missing identifiers are not created.
+     */
+    List<JPAQuoteIdentifier> findAndLockAll(Collection<String> isins) {
+        Map<Long, String> isinsById = new HashMap<>();
+        List<String> uncachedIsins = new ArrayList<>();
+        for (String isin : isins) {
+            getCachedId(isin).ifPresentOrElse(id -> isinsById.put(id, isin), () -> uncachedIsins.add(isin));
+        }
+        if (!uncachedIsins.isEmpty()) {
+            findIds(uncachedIsins).forEach((isin, id) -> isinsById.put(id, isin));
+        }
+        if (isinsById.isEmpty()) {
+            return List.of();
+        }
+        List<JPAQuoteIdentifier> identifiers = new ArrayList<>();
+        for (JPAQuoteIdentifier identifier : quoteIdentifierRepository.findAndLockAllByIdInOrderById(
+                        isinsById.keySet().stream().sorted().collect(Collectors.toList()))) {
+            if (identifier.getIsin().equals(isinsById.get(identifier.getId()))) {
+                isinsById.remove(identifier.getId());
+                identifiers.add(identifier);
+            }
+        }
+        if (!isinsById.isEmpty()) {
+            // ids of removed identifiers, rare enough to lock the identifiers of these ISINs by ISIN afterwards
+            List<String> outdatedIsins = new ArrayList<>(isinsById.values());
+            log.info("Outdated identifier ids of {} ISINs", outdatedIsins.size());
+            outdatedIsins.forEach(ids::invalidate);
+            quoteIdentifierRepository.findAndLockAllByIsinInOrderByIsin(outdatedIsins).forEach(identifier -> {
+                cache(identifier);
+                identifiers.add(identifier);
+            });
+        }
+        return identifiers;
+    }
+
+    /**
+     * Reads the identifiers of the ISINs with one query and creates the missing ones.
+     *
+     * @param isins the ISINs of the identifiers.
+     * @return the identifiers of all ISINs.
+     */
+    List<JPAQuoteIdentifier> getAll(Collection<String> isins) {
+        List<JPAQuoteIdentifier> identifiers = quoteIdentifierRepository.findAllByIsinIn(isins);
+        if (identifiers.size() < isins.size()) {
+            List<String> existingIsins = identifiers.stream().map(JPAQuoteIdentifier::getIsin).collect(Collectors.toList());
+            identifiers = onPrimary(() -> {
+                createMissingIdentifiers(isins, () -> existingIsins);
+                return quoteIdentifierRepository.findAllByIsinIn(isins);
+            });
+        }
+        identifiers.forEach(this::cache);
+        return identifiers;
+    }
+
+    /**
+     * Creates the missing identifiers of the ISINs. The existing ids are read from the database, not from the cache, and cached. They are read in
+     * the transaction creating the missing identifiers: read outside of a transaction, the entity manager bound until the caller's scope ends
+     * would keep its connection while the creation takes another one.
+     *
+     * @param isins the ISINs of the identifiers.
+     */
+    void createMissing(Collection<String> isins) {
+        createMissingIdentifiers(isins, () -> findIds(isins).keySet());
+    }
+
+    // creates the missing identifiers of the uncached ISINs unless a transaction is active, within which they are created on resolving them
+    private void createMissingBeforeTransaction(final Collection<String> isins) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        List<String> uncachedIsins = isins.stream().filter(isin -> getCachedId(isin).isEmpty()).distinct().collect(Collectors.toList());
+        for (List<String> chunk : JPAQuoteService.chunks(uncachedIsins)) {
+            createMissing(chunk);
+        }
+    }
+
+    private Map<String, Long> findIds(final Collection<String> isins) {
+        Map<String, Long> idsByIsin = new HashMap<>();
+        for (JPAIsinIdentifierId isinId : quoteIdentifierRepository.findIdsByIsinIn(isins)) {
+            ids.put(isinId.getIsin(), isinId.getIdentifierId());
+            idsByIsin.put(isinId.getIsin(), isinId.getIdentifierId());
+        }
+        return idsByIsin;
+    }
+
+    // runs the creation of identifiers in a new read-write transaction if the current one is read-only, so it is not routed to a read replica
+    // and not rejected by a read-only connection. Only reached within a read-only transaction of the caller, it takes a second connection.
+    private <T> T onPrimary(final Supplier<T> creation) {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return Objects.requireNonNull(newTransactionTemplate.execute(status -> creation.get()));
+        }
+        return creation.get();
+    }
+
+    private Optional<Long> getCachedId(final String isin) {
+        return Optional.ofNullable(ids.getIfPresent(isin));
+    }
+
+    private Optional<JPAQuoteIdentifier> verify(final String isin, final Optional<JPAQuoteIdentifier> identifier) {
+        if (identifier.filter(found -> found.getIsin().equals(isin)).isPresent()) {
+            return identifier;
+        }
+        log.info("Outdated identifier id of {}", isin);
+        ids.invalidate(isin);
+        return Optional.empty();
+    }
+
+    private void cache(final JPAQuoteIdentifier identifier) {
+        ids.put(identifier.getIsin(), Objects.requireNonNull(identifier.getId()));
+    }
+
+    private JPAQuoteIdentifier createIdentifierAndFetch(final String isin) {
+        return createIdentifierIfAbsent(isin).or(() -> quoteIdentifierRepository.findOneByIsin(isin)).orElseThrow();
+    }
+
+    // reads the existing ISINs within the transaction creating the missing identifiers
+    private void createMissingIdentifiers(final Collection<String> isins, final Supplier<Collection<String>> existingIsins) {
+        List<String> missingIsins = new ArrayList<>();
+        if (identifierUpsert) {
+            transactionTemplate.execute(status -> {
+                missingIdentifiers(isins, existingIsins.get(), missingIsins).forEach(this::insertIfAbsent);
+                return null;
+            });
+            return;
+        }
+        try {
+            List<JPAQuoteIdentifier> createdIdentifiers = newTransactionTemplate.execute(status -> {
+                List<JPAQuoteIdentifier> missingIdentifiers = missingIdentifiers(isins, existingIsins.get(), missingIsins);
+                if (missingIdentifiers.isEmpty()) {
+                    return missingIdentifiers;
+                }
+                List<JPAQuoteIdentifier> savedIdentifiers = quoteIdentifierRepository.saveAll(missingIdentifiers);
+                savedIdentifiers.forEach(identifier -> eventPublisher.publishEvent(new QuoteChangeEvent.IdentifierCreated(identifier.getIsin())));
+                return savedIdentifiers;
+            });
+            if (createdIdentifiers != null) {
+                createdIdentifiers.forEach(this::cache);
+            }
+        } catch (DataIntegrityViolationException e) {
+            insertConflicts.increment();
+            log.info("Conflict on concurrent insert of {} quote-identifiers, creating them one by one", missingIsins.size());
+            missingIsins.forEach(this::createIdentifierIfAbsent);
+        }
+    }
+
+    private List<JPAQuoteIdentifier> missingIdentifiers(final Collection<String> isins, final Collection<String> existingIsins,
+                    final List<String> missingIsins) {
+        isins.stream().filter(isin -> !existingIsins.contains(isin)).forEach(missingIsins::add);
+        return missingIsins.stream().map(this::newIdentifier).collect(Collectors.toList());
+    }
+
+    /**
+     * Creates the identifier of the ISIN unless it exists. With the identifier upsert in one statement within the current transaction,
+     * otherwise in a new transaction while holding the lock of the ISIN, so the identifier is committed before other threads look for it again.
+     * Within an active transaction the new transaction needs a second connection, see {@link #inTransaction(Collection, TransactionCallback)}.
+     *
+     * @param isin the ISIN of the identifier.
+     * @return the detached identifier read or created in the new transaction, empty with the upsert.
+     */
+    private Optional<JPAQuoteIdentifier> createIdentifierIfAbsent(final String isin) {
+        if (identifierUpsert) {
+            transactionTemplate.execute(status -> insertIfAbsent(newIdentifier(isin)));
+            return Optional.empty();
+        }
+        return locks.get(isin, () -> {
+            try {
+                return Optional.ofNullable(newTransactionTemplate.execute(
+                                status -> quoteIdentifierRepository.findOneByIsin(isin).orElseGet(() -> createIdentifier(isin))));
+            } catch (DataIntegrityViolationException e) {
+                insertConflicts.increment();
+                log.info("Conflict on concurrent insert of quote-identifier: {}", isin);
+                return Optional.ofNullable(newTransactionTemplate.execute(status -> quoteIdentifierRepository.findOneByIsin(isin).orElse(null)));
+            }
+        });
+    }
+
+    private int insertIfAbsent(final JPAQuoteIdentifier identifier) {
+        int inserted = quoteIdentifierRepository.insertIfAbsent(identifier.getIsin(), identifier.getFetchDate(), identifier.getMarketPlace(),
+                        identifier.getQuoteSource().name());
+        if (inserted > 0) {
+            eventPublisher.publishEvent(new QuoteChangeEvent.IdentifierCreated(identifier.getIsin()));
+        }
+        return inserted;
+    }
+
+    private Optional<JPAQuoteIdentifier> lock(final Supplier<Optional<JPAQuoteIdentifier>> lockQuery) {
+        return Objects.requireNonNull(lockTimer.record(lockQuery));
+    }
+
+    JPAQuoteIdentifier createIdentifier(String isin) {
+        JPAQuoteIdentifier identifier = quoteIdentifierRepository.save(newIdentifier(isin));
+        eventPublisher.publishEvent(new QuoteChangeEvent.IdentifierCreated(isin));
+        return identifier;
+    }
+
+    private JPAQuoteIdentifier newIdentifier(String isin) {
+        JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
+        identifier.setIsin(isin);
+        identifier.setFetchDate(ZonedDateTime.now().minusYears(1));
+        identifier.setMarketPlace("n/a");
+        identifier.setQuoteSource(QuoteSource.MANUAL);
+        return identifier;
+    }
+}
@@ -0,0 +1,152 @@
+package com.wealthpilot.quote.store;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Creates the partitions of the quote table ahead of time, if the table is partitioned by quote_date, which it is on PostgreSQL only. New
+ * partitions continue at the upper bound of the latest partition, each spanning {@code quote-store.partitions.interval}, until the day
+ * {@code quote-store.partitions.ahead} from today is covered. Quotes outside all partitions end up in the default partition, those of a new
+ * partition, e.g. future or mis-dated quotes, are moved into it when it is created.
+ */
+@Component
+@Log4j2
+public class QuotePartitionMaintainer {
+
+    static final String TABLE = "quote";
+
+    // the bound of the last range partition, from "FOR VALUES FROM ('2026-01-01') TO ('2027-01-01')", the default partition has none
+    private static final String UPPER_BOUND_QUERY = "select max(substring(pg_get_expr(c.relpartbound, c.oid) from 'TO \\(''([0-9-]+)''\\)'))"
+                    + " from pg_inherits i join pg_class c on c.oid = i.inhrelid where i.inhparent = to_regclass(:table)";
+    private static final String DEFAULT_PARTITION_QUERY = "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid"
+                    + " where i.inhparent = to_regclass(:table) and pg_get_expr(c.relpartbound, c.oid) = 'DEFAULT'";
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Period interval;
+    private final Period ahead;
+
+    public QuotePartitionMaintainer(EntityManager entityManager, TransactionTemplate transactionTemplate,
+                    @Value("${quote-store.partitions.interval:P1Y}") Period interval, @Value("${quote-store.partitions.ahead:P2Y}") Period ahead) {
+        if (interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("Quote partition interval must be positive: " + interval);
+        }
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.interval = interval;
+        this.ahead = ahead;
+    }
+
+    /**
+     * Creates the missing partitions, each in its own transaction. If the default partition holds quotes of the range of a new partition, it
+     * is detached while the partition is created and the quotes are moved, as PostgreSQL does not create a partition for rows of the default
+     * partition. Stops at the first partition that cannot be created, so no gaps are left between partitions.
+     *
+     * @return the names of the partitions created.
+     */
+    @Timed
+    @Scheduled(cron = "${quote-store.partitions.cron:-}")
+    public List<String> createPartitions() {
+        Optional<LocalDate> upperBound = transactionTemplate.execute(status -> isPartitioned() ? Optional.of(findUpperBound()) : Optional.empty());
+        if (upperBound == null || upperBound.isEmpty()) {
+            log.debug("Table {} is not partitioned, no partitions to create", TABLE);
+            return List.of();
+        }
+        List<String> created = new ArrayList<>();
+        for (LocalDate start : partitionStarts(upperBound.get(), interval, LocalDate.now().plus(ahead))) {
+            String partition = TABLE + "_p" + DateTimeFormatter.BASIC_ISO_DATE.format(start);
+            try {
+                Integer moved = transactionTemplate.execute(status -> createPartition(partition, start, start.plus(interval)));
+                if (moved != null && moved > 0) {
+                    log.warn("Moved {} quotes from the default partition of {} into the new partition {}", moved, TABLE, partition);
+                }
+            } catch (PersistenceException e) {
+                log.error("Could not create partition {} of {}", partition, TABLE, e);
+                break;
+            }
+            created.add(partition);
+        }
+        log.info("Created {} partitions of {}: {}", created.size(), TABLE, created);
+        return created;
+    }
+
+    /**
+     * @param from the start of the first partition.
+     * @param interval the range of each partition.
+     * @param until the last day to be covered by a partition.
+     * @return the starts of the partitions to create, empty if <code>from</code> is after <code>until</code>.
+     */
+    static List<LocalDate> partitionStarts(LocalDate from, Period interval, LocalDate until) {
+        List<LocalDate> starts = new ArrayList<>();
+        for (LocalDate start = from; !start.isAfter(until); start = start.plus(interval)) {
+            starts.add(start);
+        }
+        return starts;
+    }
+
+    // the number of quotes moved from the default partition
+    private int createPartition(String partition, LocalDate start, LocalDate end) {
+        String create = String.format("create table %s partition of %s for values from ('%s') to ('%s')", partition, TABLE, start, end);
+        Optional<String> defaultPartition = findDefaultPartition();
+        if (defaultPartition.isEmpty() || !holdsQuotes(defaultPartition.get(), start, end)) {
+            executeUpdate(create);
+            return 0;
+        }
+        // the detached default partition takes no quotes, the lock on the table makes writers wait for the commit
+        String range = String.format("quote_date >= '%s' and quote_date < '%s'", start, end);
+        executeUpdate(String.format("alter table %s detach partition %s", TABLE, defaultPartition.get()));
+        executeUpdate(create);
+        int moved = executeUpdate(String.format("insert into %s select * from %s where %s", partition, defaultPartition.get(), range));
+        executeUpdate(String.format("delete from %s where %s", defaultPartition.get(), range));
+        executeUpdate(String.format("alter table %s attach partition %s default", TABLE, defaultPartition.get()));
+        return moved;
+    }
+
+    private int executeUpdate(String sql) {
+        return entityManager.createNativeQuery(sql).executeUpdate();
+    }
+
+    private Optional<String> findDefaultPartition() {
+        List<?> partitions = entityManager.createNativeQuery(DEFAULT_PARTITION_QUERY).setParameter("table", TABLE).getResultList();
+        return partitions.stream().findFirst().map(Object::toString);
+    }
+
+    private boolean holdsQuotes(String partition, LocalDate start, LocalDate end) {
+        String query = String.format("select count(*) from (select 1 from %s where quote_date >= :start and quote_date < :end limit 1) q", partition);
+        Number quotes = (Number) entityManager.createNativeQuery(query).setParameter("start", start).setParameter("end", end).getSingleResult();
+        return quotes.intValue() > 0;
+    }
+
+    private boolean isPartitioned() {
+        String database = entityManager.unwrap(Session.class).doReturningWork(connection -> connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            return false;
+        }
+        Number partitionedTables = (Number) entityManager.createNativeQuery("select count(*) from pg_partitioned_table where partrelid = to_regclass(:table)")
+                        .setParameter("table", TABLE)
+                        .getSingleResult();
+        return partitionedTables.intValue() > 0;
+    }
+
+    private LocalDate findUpperBound() {
+        Object upperBound = entityManager.createNativeQuery(UPPER_BOUND_QUERY).setParameter("table", TABLE).getSingleResult();
+        // only the default partition, start with the current month
+        return upperBound == null ? LocalDate.now().withDayOfMonth(1) : LocalDate.parse(upperBound.toString());
+    }
+}
@@ -0,0 +1,186 @@
+package com.wealthpilot.quote.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Dumps all quotes with their identifiers to a stream and restores them from it, e.g. for backups and analytics. Both directions use
+ * constant memory: the export reads through a forward-only cursor into unmanaged {@link QuoteExportRow}s, the import commits and clears the
+ * persistence context every {@code import-batch-size} quotes.
+ */
+@Component
+@Log4j2
+public class QuoteStoreExport {
+
+    // an entity join, so identifiers without quotes are exported too
+    static final String EXPORT_QUERY = "select new com.wealthpilot.quote.store.QuoteExportRow(i.isin, i.fetchDate, i.marketPlace, i.quoteSource, "
+                    + "q.quoteDate, q.quoteAmount, q.quoteCurrency, q.quoteType) from JPAQuoteIdentifier i left join Quote q on q.identifier = i "
+                    + "order by i.isin, q.quoteDate";
+
+    private final EntityManager entityManager;
+    private final JPAQuoteRepository quoteRepository;
+    private final QuoteIdentifierResolver identifierResolver;
+    private final TransactionTemplate transactionTemplate;
+    private final QuoteHistoryCache historyCache;
+    private final int fetchSize;
+    private final int importBatchSize;
+
+    public QuoteStoreExport(EntityManager entityManager, JPAQuoteRepository quoteRepository, QuoteIdentifierResolver identifierResolver,
+                    TransactionTemplate transactionTemplate, QuoteHistoryCache historyCache, @Value("${quote-store.export.fetch-size:1000}") int fetchSize,
+                    @Value("${quote-store.export.import-batch-size:5000}") int importBatchSize) {
+        this.entityManager = entityManager;
+        this.quoteRepository = quoteRepository;
+        this.identifierResolver = identifierResolver;
+        this.transactionTemplate = transactionTemplate;
+        this.historyCache = historyCache;
+        this.fetchSize = fetchSize;
+        this.importBatchSize = importBatchSize;
+    }
+
+    /**
+     * Writes all identifiers and their quotes, sorted by ISIN and quote date. The stream is flushed but not closed.
+     *
+     * @param out the stream to write to.
+     * @param format the format to write.
+     * @return the number of rows written, one per quote and identifier without quotes.
+     * @throws IOException if the stream cannot be written.
+     */
+    @Transactional(readOnly = true) // PostgreSQL only uses a cursor within a transaction
+    public long exportQuotes(OutputStream out, QuoteExportFormat format) throws IOException {
+        QuoteExportWriter writer = format.newWriter(out);
+        long rows = 0;
+        try (Stream<QuoteExportRow> stream = entityManager.createQuery(EXPORT_QUERY, QuoteExportRow.class)
+                        .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                        .setHint(QueryHints.HINT_READONLY, true)
+                        .getResultStream()) {
+            for (Iterator<QuoteExportRow> iterator = stream.iterator(); iterator.hasNext(); rows++) {
+                writer.write(iterator.next());
+            }
+        }
+        writer.finish();
+        log.info("Exported {} quote rows as {}", rows, format);
+        return rows;
+    }
+
+    /**
+     * Restores identifiers and quotes written by {@link #exportQuotes(OutputStream, QuoteExportFormat)}. The stored quotes of an ISIN
+     * contained in the export are replaced by the exported ones, other ISINs are not touched. Every {@code import-batch-size} quotes are
+     * committed, so a failed import leaves the ISINs before the failure restored.
+     *
+     * @param in the stream to read, which is not closed.
+     * @param format the format of the stream.
+     * @return the number of quotes restored.
+     * @throws IOException if the stream cannot be read or is not a valid export.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long importQuotes(InputStream in, QuoteExportFormat format) throws IOException {
+        Import state = new Import(format.newReader(in));
+        long quotes = 0;
+        try {
+            state.row = state.reader.read();
+            while (state.row != null) {
+                quotes += Objects.requireNonNull(transactionTemplate.execute(status -> importBatch(state)));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        log.info("Imported {} quotes as {}", quotes, format);
+        return quotes;
+    }
+
+    private int importBatch(final Import state) {
+        int quotes = 0;
+        JPAQuoteIdentifier identifier = state.identifierId == null ? null : entityManager.getReference(JPAQuoteIdentifier.class, state.identifierId);
+        JPALatestQuote latestQuote = state.identifierId == null ? null : entityManager.find(JPALatestQuote.class, state.identifierId);
+        try {
+            for (QuoteExportRow row = state.row; row != null && quotes < importBatchSize; row = state.row) {
+                if (identifier == null || !row.getIsin().equals(identifier.getIsin())) {
+                    identifier = restoreIdentifier(row);
+                    state.identifierId = identifier.getId();
+                    latestQuote = null;
+                }
+                if (row.hasQuote()) {
+                    JPAQuote quote = toQuote(identifier, row);
+                    entityManager.persist(quote);
+                    // the quotes of an identifier are sorted by date, the last one is the latest
+                    if (latestQuote == null) {
+                        latestQuote = JPALatestQuote.of(identifier, quote);
+                        entityManager.persist(latestQuote);
+                    } else {
+                        latestQuote.update(quote);
+                    }
+                    quotes++;
+                }
+                state.row = state.reader.read();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return quotes;
+    }
+
+    private JPAQuoteIdentifier restoreIdentifier(final QuoteExportRow row) {
+        JPAQuoteIdentifier identifier = identifierResolver.findAndLock(row.getIsin()).orElseGet(JPAQuoteIdentifier::new);
+        if (identifier.getId() != null) {
+            quoteRepository.deleteByIdentifier(identifier);
+            // a bulk delete, as removing and persisting the snapshot of the same id in one flush would insert before deleting
+            entityManager.createQuery("delete from LatestQuote where id = :id").setParameter("id", identifier.getId()).executeUpdate();
+            identifier.setLatestQuoteDate(null);
+        }
+        identifier.setIsin(row.getIsin());
+        identifier.setFetchDate(row.getFetchDate());
+        identifier.setHistoryFetchDate(row.getFetchDate());
+        identifier.setMarketPlace(row.getMarketPlace());
+        identifier.setQuoteSource(row.getQuoteSource());
+        historyCache.evict(row.getIsin());
+        if (identifier.getId() == null) {
+            entityManager.persist(identifier);
+        }
+        return identifier;
+    }
+
+    private static JPAQuote toQuote(final JPAQuoteIdentifier identifier, final QuoteExportRow row) {
+        JPAQuote quote = new JPAQuote();
+        quote.setIdentifier(identifier);
+        quote.setQuoteDate(row.getQuoteDate());
+        quote.setQuoteAmount(row.getQuoteAmount());
+        quote.setQuoteCurrency(row.getQuoteCurrency());
+        quote.setQuoteType(row.getQuoteType());
+        return quote;
+    }
+
+    /**
+     * The progress of an import across its transactions.
+     */
+    private static final class Import {
+
+        private final QuoteExportReader reader;
+        @Nullable
+        private QuoteExportRow row;
+        @Nullable
+        private Long identifierId;
+
+        Import(QuoteExportReader reader) {
+            this.reader = reader;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+
+import org.ff4j.FF4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.QuoteHistoryProvider;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Refreshes the stored quote histories from the {@link QuoteHistoryProvider}s: takes the {@code max-per-source} most stale identifiers of every
+ * source with a provider from the staleness queue ({@link JPAQuoteIdentifierRepository#findMostStale}), identifiers without quotes and with the
+ * oldest latest quote first, and fetches their histories on a bounded worker pool, alternating between the sources. The taken identifiers are
+ * left out of the queue for {@code attempt-cooldown} before their histories are fetched, so identifiers failing or staying without quotes do
+ * not take the whole queue in every run.
+ */
+@Component
+@Log4j2
+public class QuoteStoreUpdater {
+
+    static final String FETCH_TIMER = "quote_store.update.fetch";
+    static final String ISIN_COUNTER = "quote_store.update.isins";
+    static final String FEATURE = "BATCH_UPDATE_QUOTE_STORE";
+
+    private final JPAQuoteIdentifierRepository quoteIdentifierRepository;
+    private final Map<QuoteSource, QuoteHistoryProvider> providers = new EnumMap<>(QuoteSource.class);
+    private final MeterRegistry meterRegistry;
+    private final FF4j ff4j;
+    private final int threads;
+    private final int maxPerSource;
+    private final Duration attemptCooldown;
+
+    public QuoteStoreUpdater(JPAQuoteIdentifierRepository quoteIdentifierRepository, ObjectProvider<QuoteHistoryProvider> providers, MeterRegistry meterRegistry,
+                    FF4j ff4j, @Value("${quote-store.update.threads:4}") int threads, @Value("${quote-store.update.max-per-source:10000}") int maxPerSource,
+                    @Value("${quote-store.update.attempt-cooldown:PT23H}") Duration attemptCooldown) {
+        this.quoteIdentifierRepository = quoteIdentifierRepository;
+        this.meterRegistry = meterRegistry;
+        this.ff4j = ff4j;
+        this.threads = threads;
+        this.maxPerSource = maxPerSource;
+        this.attemptCooldown = attemptCooldown;
+        providers.orderedStream().forEach(provider -> {
+            QuoteHistoryProvider existing = this.providers.put(provider.getQuoteSource(), provider);
+            if (existing != null) {
+                throw new IllegalStateException("Multiple quote history providers for " + provider.getQuoteSource() + ": " + existing + ", " + provider);
+            }
+        });
+    }
+
+    /**
+     * Fetches the histories of the most stale identifiers not fetched since the start of this run, unless the {@value #FEATURE} feature is
+     * disabled.
+     *
+     * @param storeHistory stores the fetched history of the identifier, returns whether the stored quotes were replaced.
+     */
+    public void updateAll(BiPredicate<JPAQuoteIdentifier, IsinQuoteHistory> storeHistory) {
+        if (!ff4j.check(FEATURE)) {
+            return;
+        }
+        if (providers.isEmpty()) {
+            log.info("No quote history providers available, skipping update");
+            return;
+        }
+        ZonedDateTime runStart = ZonedDateTime.now();
+        AtomicInteger processed = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 2),
+                        new CustomizableThreadFactory("quote-store-update-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            List<Iterator<JPAQuoteIdentifier>> queues = new ArrayList<>();
+            for (QuoteSource quoteSource : providers.keySet()) {
+                List<JPAQuoteIdentifier> identifiers = quoteIdentifierRepository.findMostStale(quoteSource, runStart, runStart.minus(attemptCooldown),
+                                PageRequest.ofSize(maxPerSource));
+                if (!identifiers.isEmpty()) {
+                    recordUpdateAttempt(identifiers, runStart);
+                    log.info("Updating {} quote histories of {}, the most stale with latest quote of {}", identifiers.size(), quoteSource,
+                                    identifiers.get(0).getLatestQuoteDate());
+                    queues.add(identifiers.iterator());
+                }
+            }
+            // round robin, so a slow source does not delay the updates of the others
+            while (!queues.isEmpty()) {
+                for (Iterator<Iterator<JPAQuoteIdentifier>> queue = queues.iterator(); queue.hasNext();) {
+                    Iterator<JPAQuoteIdentifier> identifiers = queue.next();
+                    JPAQuoteIdentifier identifier = identifiers.next();
+                    executor.execute(() -> {
+                        update(identifier, storeHistory);
+                        processed.incrementAndGet();
+                    });
+                    if (!identifiers.hasNext()) {
+                        queue.remove();
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+        Duration duration = Duration.between(runStart, ZonedDateTime.now());
+        log.info("Updated {} quote histories in {} with {} threads ({} per second)", processed.get(), duration, threads,
+                        processed.get() * 1000 / Math.max(duration.toMillis(), 1));
+    }
+
+    private void recordUpdateAttempt(List<JPAQuoteIdentifier> identifiers, ZonedDateTime runStart) {
+        List<Long> identifierIds = identifiers.stream().map(JPAQuoteIdentifier::getId).collect(Collectors.toList());
+        for (List<Long> chunk : JPAQuoteService.chunks(identifierIds)) {
+            quoteIdentifierRepository.recordUpdateAttempt(chunk, runStart);
+        }
+    }
+
+    private void update(JPAQuoteIdentifier identifier, BiPredicate<JPAQuoteIdentifier, IsinQuoteHistory> storeHistory) {
+        QuoteSource quoteSource = identifier.getQuoteSource();
+        try {
+            QuoteHistoryProvider provider = providers.get(quoteSource);
+            IsinQuoteHistory history = Timer.builder(FETCH_TIMER)
+                            .tag("source", quoteSource.name())
+                            .register(meterRegistry)
+                            .recordCallable(() -> provider.fetchQuoteHistory(identifier.getIsin(), identifier.getMarketPlace()));
+            boolean replaced = storeHistory.test(identifier, Objects.requireNonNull(history));
+            countIsin(quoteSource, replaced ? "replaced" : "unchanged");
+        } catch (Exception e) {
+            log.warn("Could not update quote history of {}", identifier, e);
+            countIsin(quoteSource, "failed");
+        }
+    }
+
+    private void countIsin(QuoteSource quoteSource, String result) {
+        Counter.builder(ISIN_COUNTER).tag("source", quoteSource.name()).tag("result", result).register(meterRegistry).increment();
+    }
+
+    private static void awaitTermination(ThreadPoolExecutor executor) {
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+                log.error("Quote store update did not terminate, cancelling {} pending updates", executor.getQueue().size());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
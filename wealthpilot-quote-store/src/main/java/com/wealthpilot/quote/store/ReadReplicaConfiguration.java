@@ -0,0 +1,57 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Replaces the data source of {@code spring.datasource} by a {@link ReadReplicaRoutingDataSource} if {@code quote-store.read-replica.url} is set.
+ * The primary pool is configured by {@code spring.datasource.hikari}, the replica pool by {@code quote-store.read-replica.hikari}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "quote-store.read-replica", name = "url")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    public ReadReplicaRoutingDataSource readReplicaRoutingDataSource(DataSourceProperties properties, Environment environment, MeterRegistry meterRegistry,
+                    @Value("${quote-store.read-replica.max-lag:PT5S}") Duration maxLag,
+                    @Value("${quote-store.read-replica.lag-query:" + ReadReplicaRoutingDataSource.POSTGRESQL_LAG_QUERY + "}") String lagQuery) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        HikariDataSource replica = DataSourceBuilder.create()
+                        .type(HikariDataSource.class)
+                        .driverClassName(properties.determineDriverClassName())
+                        .url(binder.bind("quote-store.read-replica.url", String.class).get())
+                        .username(binder.bind("quote-store.read-replica.username", String.class).orElse(properties.determineUsername()))
+                        .password(binder.bind("quote-store.read-replica.password", String.class).orElse(properties.determinePassword()))
+                        .build();
+        binder.bind("quote-store.read-replica.hikari", Bindable.ofInstance(replica));
+        // the pools are no beans, so they are not instrumented by spring boot
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return new ReadReplicaRoutingDataSource(primary, replica, meterRegistry, maxLag, lagQuery);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRoutingDataSource readReplicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readReplicaRoutingDataSource);
+    }
+}
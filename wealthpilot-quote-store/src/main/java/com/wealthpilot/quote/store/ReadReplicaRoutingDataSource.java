@@ -0,0 +1,145 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Routes the connections of read-only transactions to a read replica and all other connections to the primary. Read-only transactions stay on
+ * the primary while the lag of the replica is unknown or exceeds {@code max-lag}, and for {@code max-lag} after a read-write transaction of this
+ * node completed, so the caches evicted by a write are not reloaded from a replica that does not see the write yet.
+ * <p>
+ * The target is chosen when the connection is fetched, so this data source must be wrapped in a {@link LazyConnectionDataSourceProxy}, which
+ * fetches the connection on the first statement, after the transaction was marked read-only.
+ */
+@Log4j2
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    static final String ROUTED_COUNTER = "quote_store.datasource.routed";
+    static final String REPLICA_LAG_GAUGE = "quote_store.datasource.replica_lag";
+
+    /**
+     * Lag of a PostgreSQL streaming replica in seconds, 0 if it replayed all received WAL, so an idle primary does not look like lag.
+     */
+    static final String POSTGRESQL_LAG_QUERY = "select case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0"
+                    + " else extract(epoch from now() - pg_last_xact_replay_timestamp()) end";
+
+    enum Target {
+        PRIMARY,
+        REPLICA
+    }
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final String lagQuery;
+    private final long maxLagNanos;
+    private final Counter readWrite;
+    private final Counter readOnly;
+    private final Counter replicaLagging;
+    private final Counter recentWrite;
+    private volatile double replicaLagSeconds = Double.NaN;
+    private volatile long lastWriteNanos;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, DataSource replica, MeterRegistry meterRegistry, Duration maxLag, String lagQuery) {
+        this.primary = primary;
+        this.replica = replica;
+        this.replicaJdbcTemplate = new JdbcTemplate(replica);
+        this.lagQuery = lagQuery;
+        this.maxLagNanos = maxLag.toNanos();
+        this.lastWriteNanos = System.nanoTime() - maxLagNanos - 1;
+        this.readWrite = routedCounter(meterRegistry, Target.PRIMARY, "read-write");
+        this.readOnly = routedCounter(meterRegistry, Target.REPLICA, "read-only");
+        this.replicaLagging = routedCounter(meterRegistry, Target.PRIMARY, "replica-lagging");
+        this.recentWrite = routedCounter(meterRegistry, Target.PRIMARY, "recent-write");
+        Gauge.builder(REPLICA_LAG_GAUGE, this, routing -> routing.replicaLagSeconds)
+                        .description("Lag of the read replica behind the primary, NaN if unknown")
+                        .baseUnit("seconds")
+                        .register(meterRegistry);
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    private static Counter routedCounter(MeterRegistry meterRegistry, Target target, String reason) {
+        return Counter.builder(ROUTED_COUNTER)
+                        .description("Connections fetched by target data source and reason")
+                        .tag("target", target.name().toLowerCase())
+                        .tag("reason", reason)
+                        .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        checkReplicaLag();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        lastWriteNanos = System.nanoTime();
+                    }
+                });
+            }
+            readWrite.increment();
+            return Target.PRIMARY;
+        }
+        double lag = replicaLagSeconds;
+        if (!(lag * 1e9 <= maxLagNanos)) {
+            replicaLagging.increment();
+            return Target.PRIMARY;
+        }
+        if (System.nanoTime() - lastWriteNanos <= maxLagNanos) {
+            recentWrite.increment();
+            return Target.PRIMARY;
+        }
+        readOnly.increment();
+        return Target.REPLICA;
+    }
+
+    /**
+     * Measures the lag of the replica with the {@code lag-query}, the lag is unknown while the query fails.
+     */
+    @Scheduled(fixedDelayString = "${quote-store.read-replica.lag-check-interval:PT10S}")
+    public void checkReplicaLag() {
+        try {
+            Double lag = replicaJdbcTemplate.queryForObject(lagQuery, Double.class);
+            replicaLagSeconds = lag != null ? lag : Double.NaN;
+        } catch (DataAccessException e) {
+            log.warn("Could not check the lag of the read replica: {}", e.getMessage());
+            replicaLagSeconds = Double.NaN;
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        close(replica);
+        close(primary);
+    }
+
+    private static void close(@Nullable DataSource dataSource) throws Exception {
+        if (dataSource instanceof AutoCloseable) {
+            ((AutoCloseable) dataSource).close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.QuoteSource;
+import com.wealthpilot.quote.store.util.SplitAdjustment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Split adjusted views of the quote histories, computed on demand from the stored quotes and the {@link JPASplitFactor}s of the identifier, so
+ * the stored quotes are never rewritten for a split. Sources correcting splits backwards ({@link QuoteSource#isBackwardsCorrectingSplits()})
+ * deliver histories adjusted for all splits until they were fetched, so only factors with an ex-date after the fetch date of the stored history
+ * ({@link JPAQuoteIdentifier#getHistoryFetchDate()}) apply to their histories. All factors apply to the histories of other sources.
+ * <p>
+ * The views are cached by ISIN together with the history they were computed from. If the history or the factors changed, the cached view is
+ * updated by {@link SplitAdjustment#update}, which only recomputes the quotes affected by the change. Outside of a transaction, the identifier of
+ * an unknown ISIN is created before the transaction reading or storing its factors.
+ */
+@Service
+@Transactional(propagation = Propagation.SUPPORTS)
+@Log4j2
+public class SplitAdjustmentService {
+
+    static final String CACHE_NAME = "splitAdjustedHistory";
+    static final String RECOMPUTED_COUNTER = "quote_store.split_adjustment.recomputed";
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final JPAQuoteService quoteService;
+    private final QuoteIdentifierResolver identifierResolver;
+    private final JPASplitFactorRepository splitFactorRepository;
+    private final Cache<String, AdjustedHistory> cache;
+    private final Counter recomputed;
+    // incremented whenever the factors of an ISIN of the stripe are outdated, a view is only cached if its stripe was not outdated meanwhile
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public SplitAdjustmentService(JPAQuoteService quoteService, QuoteIdentifierResolver identifierResolver, JPASplitFactorRepository splitFactorRepository,
+                    MeterRegistry meterRegistry, @Value("${quote-store.split-adjustment-cache.max-quotes:500000}") long maxQuotes,
+                    @Value("${quote-store.split-adjustment-cache.expire-after-write:PT1H}") Duration expireAfterWrite) {
+        this.quoteService = quoteService;
+        this.identifierResolver = identifierResolver;
+        this.splitFactorRepository = splitFactorRepository;
+        this.cache = Caffeine.newBuilder()
+                        .maximumWeight(maxQuotes)
+                        .weigher((String isin, AdjustedHistory adjusted) -> adjusted.adjustment.getAdjusted().size() + 1)
+                        .expireAfterWrite(expireAfterWrite)
+                        .recordStats()
+                        .build();
+        this.recomputed = meterRegistry.counter(RECOMPUTED_COUNTER);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * The factors are read and the view is computed outside of the cache, which only takes the view if the cached view it was computed from is
+     * still cached and the factors of the ISIN were not outdated meanwhile.
+     *
+     * @param isin the ISIN of the history.
+     * @return an immutable snapshot of the history with the amounts adjusted for the applicable split factors.
+     */
+    public IsinQuoteHistory getAdjustedQuoteHistory(String isin) {
+        IsinQuoteHistory history = quoteService.getQuoteHistory(isin);
+        AdjustedHistory cached = cache.getIfPresent(isin);
+        if (cached != null && cached.history == history && cached.factorsCurrent) {
+            return cached.view;
+        }
+        long generation = generations.get(stripe(isin));
+        NavigableMap<LocalDate, Double> factors = Objects.requireNonNull(
+                        identifierResolver.inReadOnlyTransaction(List.of(isin), status -> applicableFactors(identifierResolver.get(isin))));
+        SplitAdjustment adjustment = cached == null ? SplitAdjustment.of(history.getSeries(), factors) : cached.adjustment.update(history.getSeries(), factors);
+        recomputed.increment(adjustment.getRecomputed());
+        log.debug("Adjusted {} of {} quotes of {} for {} split factors", adjustment.getRecomputed(), history.getSeries().size(), isin, factors.size());
+        AdjustedHistory adjusted = new AdjustedHistory(history, adjustment, true);
+        // atomic with outdating the factors of the ISIN, which follows the increment of its generation
+        cache.asMap().compute(isin, (key, current) -> current == cached && generations.get(stripe(key)) == generation ? adjusted : current);
+        return adjusted.view;
+    }
+
+    /**
+     * @param isin the ISIN of the identifier.
+     * @return all stored split factors of the identifier by ex-date, applicable or not.
+     */
+    public NavigableMap<LocalDate, Double> getSplitFactors(String isin) {
+        NavigableMap<LocalDate, Double> factors = new TreeMap<>();
+        identifierResolver.inReadOnlyTransaction(List.of(isin), status -> {
+            splitFactorRepository.findAllByIdentifierIdOrderByExDate(identifierResolver.getId(isin))
+                            .forEach(splitFactor -> factors.put(splitFactor.getExDate(), splitFactor.getFactor()));
+            return null;
+        });
+        return factors;
+    }
+
+    /**
+     * Stores the split factor of the ex-date, replacing an existing factor of the ex-date.
+     *
+     * @param isin the ISIN of the identifier.
+     * @param exDate the first date quoted after the split.
+     * @param factor the factor of the amounts before the ex-date, e.g. 0.5 for a 2:1 split.
+     * @throws IllegalArgumentException if the factor is not positive and finite.
+     */
+    public void storeSplitFactor(String isin, LocalDate exDate, double factor) {
+        if (!(factor > 0) || Double.isInfinite(factor)) {
+            throw new IllegalArgumentException("Invalid split factor " + factor + " for " + isin);
+        }
+        identifierResolver.inTransaction(List.of(isin), status -> {
+            JPAQuoteIdentifier identifier = identifierResolver.getAndLock(isin);
+            JPASplitFactor splitFactor = splitFactorRepository.findByIdentifierIdAndExDate(Objects.requireNonNull(identifier.getId()), exDate)
+                            .orElseGet(() -> {
+                                JPASplitFactor newSplitFactor = new JPASplitFactor();
+                                newSplitFactor.setIdentifier(identifier);
+                                newSplitFactor.setExDate(exDate);
+                                return newSplitFactor;
+                            });
+            splitFactor.setFactor(factor);
+            splitFactorRepository.save(splitFactor);
+            outdateFactors(isin);
+            return null;
+        });
+    }
+
+    /**
+     * @param isin the ISIN of the identifier.
+     * @param exDate the ex-date of the split factor.
+     * @return whether a split factor was deleted.
+     */
+    public boolean deleteSplitFactor(String isin, LocalDate exDate) {
+        return Boolean.TRUE.equals(identifierResolver.inTransaction(List.of(isin), status -> {
+            JPAQuoteIdentifier identifier = identifierResolver.getAndLock(isin);
+            return splitFactorRepository.findByIdentifierIdAndExDate(Objects.requireNonNull(identifier.getId()), exDate).map(splitFactor -> {
+                splitFactorRepository.delete(splitFactor);
+                outdateFactors(isin);
+                return true;
+            }).orElse(false);
+        }));
+    }
+
+    private NavigableMap<LocalDate, Double> applicableFactors(JPAQuoteIdentifier identifier) {
+        LocalDate correctedUntil = null;
+        if (identifier.getQuoteSource() != null && identifier.getQuoteSource().isBackwardsCorrectingSplits() && identifier.getHistoryFetchDate() != null) {
+            correctedUntil = identifier.getHistoryFetchDate().toLocalDate();
+        }
+        NavigableMap<LocalDate, Double> factors = new TreeMap<>();
+        for (JPASplitFactor splitFactor : splitFactorRepository.findAllByIdentifierIdOrderByExDate(identifier.getId())) {
+            if (correctedUntil == null || splitFactor.getExDate().isAfter(correctedUntil)) {
+                factors.put(splitFactor.getExDate(), splitFactor.getFactor());
+            }
+        }
+        return factors;
+    }
+
+    // makes the next read reload the factors of the ISIN, now and again after the current transaction (if any) completed, so that concurrent
+    // readers can not keep factors that were read before the commit. The cached view is kept to be updated.
+    private void outdateFactors(String isin) {
+        markFactorsOutdated(isin);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    markFactorsOutdated(isin);
+                }
+            });
+        }
+    }
+
+    private void markFactorsOutdated(String isin) {
+        generations.incrementAndGet(stripe(isin));
+        cache.asMap().computeIfPresent(isin, (key, cached) -> cached.withOutdatedFactors());
+    }
+
+    private static int stripe(String isin) {
+        return Math.floorMod(isin.hashCode(), GENERATION_STRIPES);
+    }
+
+    private static final class AdjustedHistory {
+        private final IsinQuoteHistory history;
+        private final SplitAdjustment adjustment;
+        private final boolean factorsCurrent;
+        private final IsinQuoteHistory view;
+
+        AdjustedHistory(IsinQuoteHistory history, SplitAdjustment adjustment, boolean factorsCurrent) {
+            this(history, adjustment, factorsCurrent, null);
+        }
+
+        private AdjustedHistory(IsinQuoteHistory history, SplitAdjustment adjustment, boolean factorsCurrent, @Nullable IsinQuoteHistory view) {
+            this.history = history;
+            this.adjustment = adjustment;
+            this.factorsCurrent = factorsCurrent;
+            this.view = view != null ? view
+                            : new IsinQuoteHistory(history.getIsin(), history.getMarketPlace(), history.getQuoteSource(), adjustment.getAdjusted()).toUnmodifiable();
+        }
+
+        AdjustedHistory withOutdatedFactors() {
+            return new AdjustedHistory(history, adjustment, false, view);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.wealthpilot.quote.store;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of locks, every key is mapped to one of them by its hash. Unlike one global lock, threads working on different keys
+ * rarely wait for each other, while unlike one lock per key the memory used stays bounded.
+ */
+final class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    /**
+     * @param stripes the number of locks, rounded up to a power of two.
+     */
+    StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(stripes, 1) * 2 - 1);
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs the supplier while holding the lock of the key.
+     *
+     * @param key the key to lock.
+     * @param supplier the code to run.
+     * @param <T> the result type.
+     * @return the result of the supplier.
+     */
+    <T> T get(String key, Supplier<T> supplier) {
+        ReentrantLock lock = getLock(key);
+        lock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    ReentrantLock getLock(String key) {
+        int hash = key.hashCode();
+        // spread the higher bits, as only the lower bits select the lock
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+}
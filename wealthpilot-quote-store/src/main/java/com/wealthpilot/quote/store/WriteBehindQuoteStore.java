@@ -0,0 +1,274 @@
+package com.wealthpilot.quote.store;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import com.wealthpilot.quote.store.util.FillPolicy;
+import com.wealthpilot.quote.store.util.IsinQuote;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.PriceMatrix;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Data;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Write-behind mode of the {@link JPAQuoteService}, enabled by {@code quote-store.write-behind.enabled}: {@link #storeQuote(IsinQuote)} only
+ * puts the quote into a buffer keyed by ISIN and quote date, where the latest quote of a key replaces earlier ones. The buffer is stored with
+ * {@link QuoteStore#storeQuotes(Collection)} in batches every {@code flush-interval}, as soon as it holds {@code batch-size} quotes, and by the
+ * calling thread itself if it holds {@code max-entries} quotes. Buffered quotes are not visible to reads until flushed, all other operations
+ * are delegated unchanged.
+ * <p>
+ * Quotes of a batch that cannot be stored go back into the buffer unless a newer quote of their key arrived meanwhile, and are retried
+ * after {@code retry-backoff}, doubled with every consecutive failed flush. Quotes failing {@code max-attempts} flushes are logged and dropped.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "quote-store.write-behind.enabled", havingValue = "true")
+@Log4j2
+public class WriteBehindQuoteStore implements QuoteStore, DisposableBean {
+
+    static final String RECEIVED_COUNTER = "quote_store.write_behind.received";
+    static final String STORED_COUNTER = "quote_store.write_behind.stored";
+    static final String FAILED_COUNTER = "quote_store.write_behind.failed";
+    static final String COALESCING_GAUGE = "quote_store.write_behind.coalescing_ratio";
+    static final String FLUSH_TIMER = "quote_store.write_behind.flush";
+
+    private final QuoteStore delegate;
+    private final int maxEntries;
+    private final int batchSize;
+    private final Object bufferLock = new Object();
+    private final Map<Key, Buffered> buffer = new LinkedHashMap<>();
+    // serializes the flushes, so a later quote of a key is never stored before an earlier one
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    // guarded by the flush lock
+    private int consecutiveFailures;
+    // System.nanoTime before which the buffer is not flushed again after a failed flush
+    private volatile long retryAt = System.nanoTime();
+    private final ScheduledExecutorService flusher;
+    private final Counter received;
+    private final Counter stored;
+    private final Counter failed;
+    private final Timer flushTimer;
+
+    public WriteBehindQuoteStore(JPAQuoteService delegate, MeterRegistry meterRegistry, @Value("${quote-store.write-behind.max-entries:10000}") int maxEntries,
+                    @Value("${quote-store.write-behind.batch-size:1000}") int batchSize,
+                    @Value("${quote-store.write-behind.flush-interval:PT0.5S}") Duration flushInterval,
+                    @Value("${quote-store.write-behind.max-attempts:5}") int maxAttempts,
+                    @Value("${quote-store.write-behind.retry-backoff:PT1S}") Duration retryBackoff) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.received = meterRegistry.counter(RECEIVED_COUNTER);
+        this.stored = meterRegistry.counter(STORED_COUNTER);
+        this.failed = meterRegistry.counter(FAILED_COUNTER);
+        this.flushTimer = meterRegistry.timer(FLUSH_TIMER);
+        // quotes received per quote handed to the quote store, e.g. 3 if every key was pushed three times before its flush
+        Gauge.builder(COALESCING_GAUGE, this, WriteBehindQuoteStore::coalescingRatio).register(meterRegistry);
+        meterRegistry.gaugeMapSize("quote_store.write_behind.buffered", List.of(), buffer);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("quote-store-write-behind-"));
+        this.flusher.scheduleWithFixedDelay(this::scheduledFlush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void storeQuote(IsinQuote quote) {
+        received.increment();
+        Key key = new Key(quote.getIsin(), quote.getQuote().getDate());
+        int size;
+        synchronized (bufferLock) {
+            buffer.put(key, new Buffered(quote, 0));
+            size = buffer.size();
+        }
+        if (size >= maxEntries) {
+            // backpressure: the caller waits for the buffer to be stored, like a CallerRunsPolicy
+            flush();
+        } else if (size >= batchSize && flushPending.compareAndSet(false, true)) {
+            flusher.execute(this::scheduledFlush);
+        }
+    }
+
+    /**
+     * Stores all buffered quotes, blocking until they are stored, after waiting for the backoff of a previous failed flush. Batches that
+     * cannot be stored are put back into the buffer for a later flush.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            long backoff = retryAt - System.nanoTime();
+            if (backoff > 0) {
+                TimeUnit.NANOSECONDS.sleep(backoff);
+            }
+            List<Buffered> quotes;
+            synchronized (bufferLock) {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                quotes = new ArrayList<>(buffer.values());
+                buffer.clear();
+            }
+            flushTimer.record(() -> store(quotes));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void scheduledFlush() {
+        flushPending.set(false);
+        if (System.nanoTime() - retryAt >= 0) {
+            flush();
+        }
+    }
+
+    private void store(final List<Buffered> quotes) {
+        for (int from = 0; from < quotes.size(); from += batchSize) {
+            List<Buffered> batch = quotes.subList(from, Math.min(from + batchSize, quotes.size()));
+            try {
+                delegate.storeQuotes(batch.stream().map(Buffered::getQuote).collect(Collectors.toList()));
+                stored.increment(batch.size());
+            } catch (RuntimeException e) {
+                // the following batches would most likely fail as well, they are retried with the failed one without counting an attempt
+                retry(batch, quotes.subList(from + batch.size(), quotes.size()), e);
+                return;
+            }
+        }
+        consecutiveFailures = 0;
+    }
+
+    private void retry(List<Buffered> failedBatch, List<Buffered> notAttempted, RuntimeException e) {
+        consecutiveFailures++;
+        retryAt = System.nanoTime() + retryBackoff.multipliedBy(1L << Math.min(consecutiveFailures - 1, 10)).toNanos();
+        int dropped = 0;
+        synchronized (bufferLock) {
+            for (Buffered quote : failedBatch) {
+                if (quote.getAttempts() + 1 >= maxAttempts) {
+                    dropped++;
+                } else {
+                    requeue(new Buffered(quote.getQuote(), quote.getAttempts() + 1));
+                }
+            }
+            notAttempted.forEach(this::requeue);
+        }
+        if (dropped > 0) {
+            failed.increment(dropped);
+            log.error("Could not store {} buffered quotes after {} attempts, dropping them", dropped, maxAttempts, e);
+        } else {
+            log.warn("Could not store {} buffered quotes, retrying them", failedBatch.size() + notAttempted.size(), e);
+        }
+    }
+
+    // a newer quote of the key buffered meanwhile wins over the failed one
+    private void requeue(Buffered quote) {
+        buffer.putIfAbsent(new Key(quote.getQuote().getIsin(), quote.getQuote().getQuote().getDate()), quote);
+    }
+
+    // 1 before the first flush, as no quote was coalesced yet
+    private double coalescingRatio() {
+        double handedOver = stored.count() + failed.count();
+        return handedOver == 0 ? 1.0 : received.count() / handedOver;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        flusher.shutdown();
+        if (!flusher.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Write-behind flusher did not terminate");
+        }
+        flush();
+        synchronized (bufferLock) {
+            if (!buffer.isEmpty()) {
+                log.error("Could not store {} buffered quotes before shutdown, dropping them", buffer.size());
+            }
+        }
+    }
+
+    /**
+     * Flushes the buffer first, so the quotes are stored in the order they were passed.
+     */
+    @Override
+    public void storeQuotes(Collection<IsinQuote> quotes) {
+        flush();
+        delegate.storeQuotes(quotes);
+    }
+
+    /**
+     * Flushes the buffer first, so buffered quotes of the ISIN do not end up in the replaced history.
+     */
+    @Override
+    public int replaceQuoteHistory(String isin, IsinQuoteHistory history) {
+        flush();
+        return delegate.replaceQuoteHistory(isin, history);
+    }
+
+    @Override
+    public IsinQuoteHistory getQuoteHistory(String isin) {
+        return delegate.getQuoteHistory(isin);
+    }
+
+    @Override
+    public IsinQuoteHistory getQuoteHistory(String isin, LocalDate from, LocalDate to) {
+        return delegate.getQuoteHistory(isin, from, to);
+    }
+
+    @Override
+    public Optional<Quote> getQuoteAsOf(String isin, LocalDate date) {
+        return delegate.getQuoteAsOf(isin, date);
+    }
+
+    @Override
+    public Map<String, IsinQuoteHistory> getQuoteHistories(Collection<String> isins) {
+        return delegate.getQuoteHistories(isins);
+    }
+
+    @Override
+    public Map<String, Quote> getLatestQuotes(Collection<String> isins) {
+        return delegate.getLatestQuotes(isins);
+    }
+
+    @Override
+    public PriceMatrix getPriceMatrix(Collection<String> isins, LocalDate from, LocalDate to, FillPolicy fillPolicy) {
+        return delegate.getPriceMatrix(isins, from, to, fillPolicy);
+    }
+
+    @Data
+    private static final class Buffered {
+        private final IsinQuote quote;
+        // the failed flushes of the quote
+        private final int attempts;
+    }
+
+    @Data
+    private static final class Key {
+        private final String isin;
+        private final LocalDate date;
+    }
+}
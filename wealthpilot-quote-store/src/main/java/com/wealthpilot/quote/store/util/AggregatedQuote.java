@@ -0,0 +1,32 @@
+package com.wealthpilot.quote.store.util;
+
+import java.time.LocalDate;
+
+import org.springframework.lang.Nullable;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The quotes of one period of a history (see {@link Granularity}) aggregated to the first (open), highest, lowest, last and average amount.
+ * The currency is the one of the last quote.
+ */
+@Getter
+@Builder
+@ToString
+@EqualsAndHashCode
+public class AggregatedQuote {
+
+    private final LocalDate periodStart;
+    private final LocalDate lastDate;
+    @Nullable
+    private final String currency;
+    private final double open;
+    private final double high;
+    private final double low;
+    private final double last;
+    private final double average;
+    private final int count;
+}
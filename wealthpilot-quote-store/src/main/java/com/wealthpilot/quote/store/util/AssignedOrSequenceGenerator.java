@@ -1,20 +1,58 @@
 package com.wealthpilot.quote.store.util;
 
 import java.io.Serializable;
+import java.util.Properties;
 
+import org.hibernate.MappingException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
 import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import lombok.extern.log4j.Log4j2;
 
 /**
  * ID-Generator implementation that will use an existing (assigned) id if present, and fall-back to SequenceStyleGenerator
  * (autoincrement) semantics if no id is present for a given entity instance.
+ * <p>
+ * The ids are taken from the sequence {@value #SEQUENCE_NAME} in blocks of {@value #INCREMENT_SIZE_SETTING} ids (default {@value #DEFAULT_INCREMENT_SIZE})
+ * with the {@value #OPTIMIZER_SETTING} optimizer (default pooled), both read from the Hibernate settings. The increment size must equal the increment
+ * of the sequence, which the quote store changelog creates with the liquibase parameter {@code id_increment_size}. A block at least as large as
+ * {@code hibernate.jdbc.batch_size} takes at most one sequence call per insert batch.
  *
  * @author florian.kirchmeir
  */
+@Log4j2
 public class AssignedOrSequenceGenerator extends SequenceStyleGenerator {
 
     public static final String NAME = "assignedOrSequence";
+    public static final String SEQUENCE_NAME = "assigned_or_sequence";
+    public static final String INCREMENT_SIZE_SETTING = "quote_store.id.increment_size";
+    public static final String OPTIMIZER_SETTING = "quote_store.id.optimizer";
+    public static final int DEFAULT_INCREMENT_SIZE = 50;
+
+    // Hibernate settings may be strings or numbers
+    private static final ConfigurationService.Converter<Integer> INTEGER = value -> Integer.valueOf(value.toString().trim());
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        ConfigurationService settings = serviceRegistry.getService(ConfigurationService.class);
+        int incrementSize = settings.getSetting(INCREMENT_SIZE_SETTING, INTEGER, DEFAULT_INCREMENT_SIZE);
+        params.putIfAbsent(SEQUENCE_PARAM, SEQUENCE_NAME);
+        params.putIfAbsent(INCREMENT_PARAM, String.valueOf(incrementSize));
+        params.putIfAbsent(OPT_PARAM, settings.getSetting(OPTIMIZER_SETTING, StandardConverters.STRING, StandardOptimizerDescriptor.POOLED.getExternalName()));
+        int batchSize = settings.getSetting(AvailableSettings.STATEMENT_BATCH_SIZE, INTEGER, 1);
+        if (incrementSize < batchSize) {
+            log.warn("Id increment size {} is smaller than the JDBC batch size {}, inserts take more than one sequence call per batch", incrementSize,
+                            batchSize);
+        }
+        super.configure(type, params, serviceRegistry);
+    }
 
     @Override
     public Serializable generate(SharedSessionContractImplementor sharedSessionContractImplementor, Object object) {
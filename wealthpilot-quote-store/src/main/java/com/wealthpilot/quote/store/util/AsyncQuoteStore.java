@@ -0,0 +1,43 @@
+package com.wealthpilot.quote.store.util;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variants of the {@link QuoteStore} operations, for callers fanning out over many ISINs. The futures complete on threads of the
+ * store, so dependent stages should not block. The number of operations running at once is bounded by the store, further operations wait
+ * in its queue.
+ */
+public interface AsyncQuoteStore {
+
+    /**
+     * @param quote the quote to store.
+     * @return completes when the quote was stored or ignored, see {@link QuoteStore#storeQuote(IsinQuote)}.
+     */
+    CompletableFuture<Void> storeQuote(IsinQuote quote);
+
+    /**
+     * @param quotes the quotes to store.
+     * @return completes when all quotes were stored or ignored, see {@link QuoteStore#storeQuotes(Collection)}.
+     */
+    CompletableFuture<Void> storeQuotes(Collection<IsinQuote> quotes);
+
+    /**
+     * @param isin the ISIN of the history.
+     * @return the history, see {@link QuoteStore#getQuoteHistory(String)}.
+     */
+    CompletableFuture<IsinQuoteHistory> getQuoteHistory(String isin);
+
+    /**
+     * @param isins the ISINs to get the histories for.
+     * @return the histories mapped by ISIN, see {@link QuoteStore#getQuoteHistories(Collection)}.
+     */
+    CompletableFuture<Map<String, IsinQuoteHistory>> getQuoteHistories(Collection<String> isins);
+
+    /**
+     * @param isins the ISINs to get the latest quotes for.
+     * @return the latest quotes mapped by ISIN, see {@link QuoteStore#getLatestQuotes(Collection)}.
+     */
+    CompletableFuture<Map<String, Quote>> getLatestQuotes(Collection<String> isins);
+}
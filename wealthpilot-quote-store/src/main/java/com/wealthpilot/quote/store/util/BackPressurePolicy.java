@@ -0,0 +1,20 @@
+package com.wealthpilot.quote.store.util;
+
+/**
+ * What happens to a {@link QuoteChangeEvent} for a {@link QuoteChangeListener} whose queue is full.
+ */
+public enum BackPressurePolicy {
+    /**
+     * The oldest queued event is dropped.
+     */
+    DROP_OLDEST,
+    /**
+     * The committing thread waits for the listener up to {@code quote-store.events.block-timeout}, after the commit, then the event is dropped.
+     */
+    BLOCK,
+    /**
+     * An event replaces the queued event of the same ISIN, so the listener only learns that the ISIN changed. The queue holds the events of
+     * {@code capacity} ISINs, the oldest one is dropped for another ISIN.
+     */
+    COALESCE_BY_ISIN
+}
@@ -7,6 +7,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.springframework.lang.Nullable;
 
 import lombok.AccessLevel;
@@ -29,6 +30,7 @@ public abstract class BaseEntity {
 
     @Id
     @GeneratedValue(generator = AssignedOrSequenceGenerator.NAME)
+    @GenericGenerator(name = AssignedOrSequenceGenerator.NAME, strategy = "com.wealthpilot.quote.store.util.AssignedOrSequenceGenerator")
     @ToString.Include
     @Column(name = "id")
     @Getter
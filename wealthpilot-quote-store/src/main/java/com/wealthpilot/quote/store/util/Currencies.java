@@ -0,0 +1,57 @@
+package com.wealthpilot.quote.store.util;
+
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Registry of the canonical instances of the quote currencies: the ISO 4217 codes known to the JVM and {@value Constants#PERCENTAGE_CURRENCY}.
+ * Quotes read from the database or added to a history share the canonical instance of their currency instead of holding their own copy.
+ */
+public final class Currencies {
+
+    private static final Map<String, String> CANONICAL;
+
+    static {
+        Map<String, String> canonical = new HashMap<>();
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            canonical.put(currency.getCurrencyCode(), currency.getCurrencyCode());
+        }
+        canonical.put(Constants.PERCENTAGE_CURRENCY, Constants.PERCENTAGE_CURRENCY);
+        CANONICAL = Map.copyOf(canonical);
+    }
+
+    private Currencies() {
+    }
+
+    /**
+     * @param currency a currency code.
+     * @return the canonical instance of a known currency equal to the given one, otherwise the given currency.
+     */
+    @Nullable
+    public static String intern(@Nullable String currency) {
+        return currency == null ? null : CANONICAL.getOrDefault(currency, currency);
+    }
+
+    /**
+     * Like {@link #intern(String)} for the upper case currency, known currencies already in upper case are not copied.
+     *
+     * @param currency a currency code in any case.
+     * @return the canonical instance of a known currency, otherwise the currency in upper case.
+     */
+    @Nullable
+    public static String canonical(@Nullable String currency) {
+        if (currency == null) {
+            return null;
+        }
+        String canonical = CANONICAL.get(currency);
+        if (canonical != null) {
+            return canonical;
+        }
+        String upperCase = currency.toUpperCase(Locale.ROOT);
+        return CANONICAL.getOrDefault(upperCase, upperCase);
+    }
+}
@@ -0,0 +1,18 @@
+package com.wealthpilot.quote.store.util;
+
+import java.time.LocalDate;
+
+/**
+ * How a {@link PriceMatrix} fills the dates of its axis on which an ISIN has no quote.
+ */
+public enum FillPolicy {
+    /**
+     * Only quotes of the date itself, NaN otherwise.
+     */
+    NONE,
+    /**
+     * The latest quote on or before the date if it is still valid for the date (see {@link Quote#isValidForDate(LocalDate, LocalDate)}), NaN
+     * otherwise.
+     */
+    FORWARD_FILL
+}
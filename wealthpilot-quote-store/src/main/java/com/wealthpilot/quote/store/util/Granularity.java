@@ -0,0 +1,44 @@
+package com.wealthpilot.quote.store.util;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Length of the periods quotes are aggregated to, see {@link AggregatedQuote}.
+ */
+public enum Granularity {
+    /**
+     * ISO weeks, starting on monday.
+     */
+    WEEK {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+    },
+    MONTH {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+    },
+    QUARTER {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return LocalDate.of(date.getYear(), date.getMonth().firstMonthOfQuarter(), 1);
+        }
+    },
+    YEAR {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return date.withDayOfYear(1);
+        }
+    };
+
+    /**
+     * @param date a date.
+     * @return the first day of the period containing the date.
+     */
+    public abstract LocalDate periodStart(LocalDate date);
+}
@@ -1,36 +1,48 @@
 package com.wealthpilot.quote.store.util;
 
 import java.time.LocalDate;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 import org.springframework.lang.Nullable;
 
-import lombok.AccessLevel;
-import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
-
 /**
+ * Quote history of one ISIN. The quotes are kept in a compact {@link QuoteSeries}; quotes added by {@link #addQuote(Quote)} are collected
+ * and merged into the series on the next read.
+ *
  * @author christof.dallermassl
  * @since 2.4.0
  */
-@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
-@EqualsAndHashCode
 public class IsinQuoteHistory {
 
-    public static final IsinQuoteHistory EMPTY_QUOTE_HISTORY = new IsinQuoteHistory("n/a", LocalDate.now(), "n/a", QuoteSource.MANUAL, Map.of());
+    public static final IsinQuoteHistory EMPTY_QUOTE_HISTORY = new IsinQuoteHistory("n/a", LocalDate.now(), "n/a", QuoteSource.MANUAL, QuoteSeries.EMPTY, false);
 
     private final String isin;
     private final LocalDate fetchDate;
     @Nullable
     private final String marketPlace;
     private final QuoteSource quoteSource;
-    private final Map<LocalDate, Quote> quotes;
+    private final boolean modifiable;
+    private QuoteSeries series;
+    @Nullable
+    private QuoteSeries.Builder addedQuotes;
 
     public IsinQuoteHistory(String isin, @Nullable String marketPlace, QuoteSource quoteSource) {
-        this(isin, LocalDate.now(), marketPlace, quoteSource, new HashMap<>());
+        this(isin, marketPlace, quoteSource, QuoteSeries.EMPTY);
+    }
+
+    public IsinQuoteHistory(String isin, @Nullable String marketPlace, QuoteSource quoteSource, QuoteSeries series) {
+        this(isin, LocalDate.now(), marketPlace, quoteSource, series, true);
+    }
+
+    IsinQuoteHistory(String isin, LocalDate fetchDate, @Nullable String marketPlace, QuoteSource quoteSource, QuoteSeries series, boolean modifiable) {
+        this.isin = isin;
+        this.fetchDate = fetchDate;
+        this.marketPlace = marketPlace;
+        this.quoteSource = quoteSource;
+        this.series = series;
+        this.modifiable = modifiable;
     }
 
     public String getIsin() {
@@ -50,37 +62,94 @@ public class IsinQuoteHistory {
         return quoteSource;
     }
 
+    /**
+     * @return an unmodifiable, date ordered view of the quotes.
+     */
     public Map<LocalDate, Quote> getQuotes() {
-        return Collections.unmodifiableMap(quotes);
+        return getSeries().asMap();
+    }
+
+    public QuoteSeries getSeries() {
+        if (addedQuotes != null) {
+            series = addedQuotes.build();
+            addedQuotes = null;
+        }
+        return series;
     }
 
     public Optional<Quote> getQuote(LocalDate date) {
-        return Optional.ofNullable(quotes.get(date));
+        return getSeries().getQuote(date);
     }
 
     public void addQuote(Quote quote) {
         addQuote(quote.getDate(), quote);
     }
 
+    /**
+     * Adds the quote for the given date, replacing an existing quote for this date. The quote is stored with the given date.
+     *
+     * @param date the date to store the quote for.
+     * @param quote the quote, its own date is ignored.
+     */
     public void addQuote(LocalDate date, Quote quote) {
-        quotes.put(date, quote);
+        addQuote(date, quote.getCurrency(), quote.getAmount());
+    }
+
+    public void addQuote(LocalDate date, @Nullable String currency, double quote) {
+        if (!modifiable) {
+            throw new UnsupportedOperationException("Quote history of " + isin + " is unmodifiable");
+        }
+        if (addedQuotes == null) {
+            addedQuotes = QuoteSeries.builder().addAll(series);
+        }
+        addedQuotes.add(date, currency, quote);
+    }
+
+    /**
+     * @return an immutable copy of this history, {@link #addQuote(Quote)} on the copy throws an {@link UnsupportedOperationException}.
+     */
+    public IsinQuoteHistory toUnmodifiable() {
+        return modifiable ? new IsinQuoteHistory(isin, fetchDate, marketPlace, quoteSource, getSeries(), false) : this;
     }
 
-    public void addQuote(LocalDate date, String currency, double quote) {
-        addQuote(date, new Quote(currency, quote, date));
+    /**
+     * @param from the first date of the range.
+     * @param to the last date of the range.
+     * @return an immutable view of the quotes from (inclusive) to (inclusive) the given dates.
+     */
+    public IsinQuoteHistory subHistory(LocalDate from, LocalDate to) {
+        return new IsinQuoteHistory(isin, fetchDate, marketPlace, quoteSource, getSeries().subSeries(from, to), false);
     }
 
     public Optional<LocalDate> getLatestDate() {
-        return quotes.keySet().stream().max(LocalDate::compareTo);
+        return getSeries().getLatestDate();
     }
 
     public Optional<LocalDate> getFirstDate() {
-        return quotes.keySet().stream().min(LocalDate::compareTo);
+        return getSeries().getFirstDate();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IsinQuoteHistory)) {
+            return false;
+        }
+        IsinQuoteHistory other = (IsinQuoteHistory) o;
+        return isin.equals(other.isin) && fetchDate.equals(other.fetchDate) && Objects.equals(marketPlace, other.marketPlace) && quoteSource == other.quoteSource
+            && getQuotes().equals(other.getQuotes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(isin, fetchDate, marketPlace, quoteSource, getQuotes());
     }
 
     @Override
     public String toString() {
-        return "IsinQuoteHistory [isin=" + isin + ", marketPlace=" + marketPlace + ", " + quotes.size() + " quotes, firstDate=" + getFirstDate()
+        return "IsinQuoteHistory [isin=" + isin + ", marketPlace=" + marketPlace + ", " + getSeries().size() + " quotes, firstDate=" + getFirstDate()
             + ", latestDate=" + getLatestDate() + "]";
     }
 }
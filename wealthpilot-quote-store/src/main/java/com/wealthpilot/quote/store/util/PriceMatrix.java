@@ -0,0 +1,144 @@
+package com.wealthpilot.quote.store.util;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Dense, immutable matrix of the quote amounts of several ISINs on a common date axis, for portfolio analytics. The rows are the dates on which
+ * at least one of the ISINs has a quote within the range, the columns the ISINs. Missing amounts are NaN, see {@link FillPolicy}.
+ * <p>
+ * The amounts are stored column by column in one flat array: the amount of row <code>r</code> and column <code>c</code> is at index
+ * <code>c * getRows() + r</code> of {@link #getAmounts()}, so every series is contiguous.
+ */
+public final class PriceMatrix {
+
+    private final List<String> isins;
+    private final int[] epochDays;
+    private final double[] amounts;
+
+    private PriceMatrix(List<String> isins, int[] epochDays, double[] amounts) {
+        this.isins = isins;
+        this.epochDays = epochDays;
+        this.amounts = amounts;
+    }
+
+    /**
+     * Builds the columns in parallel, every series is only read by the task of its column.
+     *
+     * @param isins the ISINs of the columns.
+     * @param series the quotes of the ISINs, at the same positions. For {@link FillPolicy#FORWARD_FILL} they should contain the quotes of
+     *            {@link Quote#MAX_DAYS_VALID_QUOTE} days before <code>from</code> as well.
+     * @param from the first date of the axis.
+     * @param to the last date of the axis.
+     * @param fillPolicy how to fill dates without quote.
+     * @return the matrix.
+     */
+    public static PriceMatrix of(List<String> isins, List<QuoteSeries> series, LocalDate from, LocalDate to, FillPolicy fillPolicy) {
+        if (isins.size() != series.size()) {
+            throw new IllegalArgumentException("Got " + series.size() + " series for " + isins.size() + " ISINs");
+        }
+        int[] epochDays = dateAxis(series, from, to);
+        int rows = epochDays.length;
+        double[] amounts = new double[Math.multiplyExact(rows, isins.size())];
+        IntStream.range(0, isins.size()).parallel().forEach(column -> fillColumn(series.get(column), epochDays, fillPolicy, amounts, column * rows));
+        return new PriceMatrix(List.copyOf(isins), epochDays, amounts);
+    }
+
+    public List<String> getIsins() {
+        return isins;
+    }
+
+    public int getRows() {
+        return epochDays.length;
+    }
+
+    public int getColumns() {
+        return isins.size();
+    }
+
+    public LocalDate getDate(int row) {
+        return LocalDate.ofEpochDay(epochDays[row]);
+    }
+
+    /**
+     * @return the ascending dates of the rows.
+     */
+    public List<LocalDate> getDates() {
+        return new AbstractList<>() {
+            @Override
+            public LocalDate get(int index) {
+                return getDate(index);
+            }
+
+            @Override
+            public int size() {
+                return epochDays.length;
+            }
+        };
+    }
+
+    /**
+     * @param row the index of the date.
+     * @param column the index of the ISIN.
+     * @return the amount, NaN if missing.
+     */
+    public double get(int row, int column) {
+        return amounts[Objects.checkIndex(column, isins.size()) * epochDays.length + Objects.checkIndex(row, epochDays.length)];
+    }
+
+    /**
+     * @param column the index of the ISIN.
+     * @return a copy of the amounts of the ISIN by row.
+     */
+    public double[] getColumn(int column) {
+        int from = Objects.checkIndex(column, isins.size()) * epochDays.length;
+        double[] series = new double[epochDays.length];
+        System.arraycopy(amounts, from, series, 0, series.length);
+        return series;
+    }
+
+    /**
+     * @return the flat amounts, column by column. The array is not copied and must not be modified.
+     */
+    public double[] getAmounts() {
+        return amounts;
+    }
+
+    // the union of the quote dates of all series from (inclusive) to (inclusive) the given dates, marked in a bitset relative to from
+    private static int[] dateAxis(List<QuoteSeries> series, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            return new int[0];
+        }
+        int fromEpochDay = Math.toIntExact(from.toEpochDay());
+        BitSet days = new BitSet();
+        for (QuoteSeries quotes : series) {
+            QuoteSeries range = quotes.subSeries(from, to);
+            for (int i = 0; i < range.size(); i++) {
+                days.set(range.getEpochDay(i) - fromEpochDay);
+            }
+        }
+        return days.stream().map(day -> day + fromEpochDay).toArray();
+    }
+
+    private static void fillColumn(QuoteSeries series, int[] epochDays, FillPolicy fillPolicy, double[] amounts, int offset) {
+        int next = 0;
+        for (int row = 0; row < epochDays.length; row++) {
+            int epochDay = epochDays[row];
+            while (next < series.size() && series.getEpochDay(next) <= epochDay) {
+                next++;
+            }
+            double amount = Double.NaN;
+            if (next > 0) {
+                int quoteEpochDay = series.getEpochDay(next - 1);
+                if (quoteEpochDay == epochDay || fillPolicy == FillPolicy.FORWARD_FILL && epochDay - quoteEpochDay <= Quote.MAX_DAYS_VALID_QUOTE) {
+                    amount = series.getAmount(next - 1);
+                }
+            }
+            amounts[offset + row] = amount;
+        }
+    }
+}
@@ -4,7 +4,6 @@ import java.time.LocalDate;
 
 import org.springframework.lang.Nullable;
 
-import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
@@ -16,7 +15,6 @@ import lombok.ToString;
  */
 @Getter
 @Setter
-@AllArgsConstructor
 @ToString
 @EqualsAndHashCode
 public class Quote {
@@ -29,8 +27,22 @@ public class Quote {
     private final double amount;
     private final LocalDate date;
 
+    public Quote(@Nullable String currency, double amount, LocalDate date) {
+        this.currency = Currencies.intern(currency);
+        this.amount = amount;
+        this.date = date;
+    }
+
+    public void setCurrency(@Nullable String currency) {
+        this.currency = Currencies.intern(currency);
+    }
+
     public boolean isValidForDate(LocalDate dateToUseQuoteFor) {
+        return isValidForDate(date, dateToUseQuoteFor);
+    }
+
+    public static boolean isValidForDate(LocalDate quoteDate, LocalDate dateToUseQuoteFor) {
         // quote must be max MAX_DAYS_VALID_QUOTE older than given date:
-        return !date.plusDays(MAX_DAYS_VALID_QUOTE).isBefore(dateToUseQuoteFor);
+        return !quoteDate.plusDays(MAX_DAYS_VALID_QUOTE).isBefore(dateToUseQuoteFor);
     }
 }
@@ -0,0 +1,62 @@
+package com.wealthpilot.quote.store.util;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregates a date sorted {@link QuoteSeries} to {@link AggregatedQuote}s in a single pass.
+ */
+public final class QuoteAggregator {
+
+    private QuoteAggregator() {
+    }
+
+    /**
+     * @param series the quotes to aggregate.
+     * @param granularity the length of the periods.
+     * @return one aggregated quote per period with quotes, ordered by period.
+     */
+    public static List<AggregatedQuote> aggregate(QuoteSeries series, Granularity granularity) {
+        List<AggregatedQuote> aggregatedQuotes = new ArrayList<>();
+        int periodFrom = 0;
+        LocalDate periodStart = null;
+        for (int i = 0; i < series.size(); i++) {
+            LocalDate start = granularity.periodStart(series.getDate(i));
+            if (!start.equals(periodStart)) {
+                if (periodStart != null) {
+                    aggregatedQuotes.add(aggregate(series, periodStart, periodFrom, i));
+                }
+                periodStart = start;
+                periodFrom = i;
+            }
+        }
+        if (periodStart != null) {
+            aggregatedQuotes.add(aggregate(series, periodStart, periodFrom, series.size()));
+        }
+        return aggregatedQuotes;
+    }
+
+    private static AggregatedQuote aggregate(QuoteSeries series, LocalDate periodStart, int from, int to) {
+        double high = Double.NEGATIVE_INFINITY;
+        double low = Double.POSITIVE_INFINITY;
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double amount = series.getAmount(i);
+            high = Math.max(high, amount);
+            low = Math.min(low, amount);
+            sum += amount;
+        }
+        return AggregatedQuote.builder()
+                        .periodStart(periodStart)
+                        .lastDate(series.getDate(to - 1))
+                        .currency(series.getCurrency(to - 1))
+                        .open(series.getAmount(from))
+                        .high(high)
+                        .low(low)
+                        .last(series.getAmount(to - 1))
+                        .average(sum / (to - from))
+                        .count(to - from)
+                        .build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.wealthpilot.quote.store.util;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A committed change of the stored quotes of an ISIN, delivered to the {@link QuoteChangeListener}s.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public abstract class QuoteChangeEvent {
+
+    private final String isin;
+
+    protected QuoteChangeEvent(String isin) {
+        this.isin = isin;
+    }
+
+    /**
+     * A quote of a new date was stored.
+     */
+    @Getter
+    @ToString(callSuper = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static final class NewQuote extends QuoteChangeEvent {
+        private final Quote quote;
+        private final QuoteSource quoteSource;
+
+        public NewQuote(String isin, Quote quote, QuoteSource quoteSource) {
+            super(isin);
+            this.quote = quote;
+            this.quoteSource = quoteSource;
+        }
+    }
+
+    /**
+     * The history was replaced and at least one quote was inserted, updated or deleted.
+     */
+    @Getter
+    @ToString(callSuper = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static final class HistoryReplaced extends QuoteChangeEvent {
+        private final int touchedQuotes;
+
+        public HistoryReplaced(String isin, int touchedQuotes) {
+            super(isin);
+            this.touchedQuotes = touchedQuotes;
+        }
+    }
+
+    /**
+     * The identifier of an ISIN unknown so far was created, it has no quotes yet.
+     */
+    @ToString(callSuper = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static final class IdentifierCreated extends QuoteChangeEvent {
+        public IdentifierCreated(String isin) {
+            super(isin);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.wealthpilot.quote.store.util;
+
+import java.util.List;
+
+/**
+ * Receives the {@link QuoteChangeEvent}s after their transaction committed, instead of polling the histories. Every listener bean is called by
+ * its own thread with batches of events in commit order, so a slow listener never slows the ingest or other listeners, but may miss events
+ * according to its {@link BackPressurePolicy}.
+ */
+public interface QuoteChangeListener {
+
+    /**
+     * @param events the next events, at most {@code quote-store.events.batch-size}. Exceptions are logged and the events are not delivered again.
+     */
+    void onQuoteChanges(List<QuoteChangeEvent> events);
+
+    default BackPressurePolicy getBackPressurePolicy() {
+        return BackPressurePolicy.DROP_OLDEST;
+    }
+
+    /**
+     * @return the name of the listener in logs and metrics.
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+}
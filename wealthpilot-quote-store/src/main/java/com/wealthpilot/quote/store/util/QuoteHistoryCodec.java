@@ -0,0 +1,532 @@
+package com.wealthpilot.quote.store.util;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Compact binary encoding of an {@link IsinQuoteHistory} for shipping and caching, following the time series compression of Facebook's Gorilla.
+ * <p>
+ * The header holds {@link #MAGIC}, {@link #VERSION}, ISIN, market place, quote source, fetch date, the number of quotes, the dictionary of
+ * the currencies and the currency runs (first index and dictionary index of every run of equal currencies). The quotes follow in blocks of
+ * {@value #BLOCK_SIZE}, indexed in the header by their first epoch-day and their length in bytes, so a date range only decodes the blocks
+ * covering it. Within a block:
+ * <ul>
+ * <li>the first amount is stored as its 64 bits, the first epoch-day is the one of the block index.</li>
+ * <li>every further epoch-day as the difference of its delta to the delta of the previous one: <code>0</code> for the same delta, otherwise
+ * <code>10</code>, <code>110</code> or <code>1110</code> followed by the zig-zag encoded difference in 7, 9 or 12 bits, or <code>1111</code>
+ * followed by 64 bits.</li>
+ * <li>every further amount as XOR with the previous amount: <code>0</code> for the same amount, <code>10</code> followed by the meaningful bits
+ * if they fit into the leading and trailing zeros of the previous XOR, otherwise <code>11</code> followed by the number of leading zeros in
+ * 5 bits, the number of meaningful bits minus one in 6 bits and the meaningful bits.</li>
+ * </ul>
+ * Integers in the header are unsigned varints, signed ones zig-zag encoded, strings are UTF-8 prefixed by their length plus one, 0 for
+ * <code>null</code>.
+ */
+public final class QuoteHistoryCodec {
+
+    static final int MAGIC = 0x57505148; // "WPQH"
+    static final byte VERSION = 1;
+    static final int BLOCK_SIZE = 128;
+
+    private QuoteHistoryCodec() {
+    }
+
+    /**
+     * @param history the history to encode.
+     * @return the encoded history.
+     */
+    public static byte[] encode(IsinQuoteHistory history) {
+        QuoteSeries series = history.getSeries();
+        int size = series.size();
+        List<String> dictionary = new ArrayList<>();
+        Map<String, Integer> dictionaryIndexes = new HashMap<>();
+        List<int[]> runs = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String currency = series.getCurrency(i);
+            if (i == 0 || !Objects.equals(currency, series.getCurrency(i - 1))) {
+                Integer index = dictionaryIndexes.get(currency);
+                if (index == null) {
+                    index = dictionary.size();
+                    dictionary.add(currency);
+                    dictionaryIndexes.put(currency, index);
+                }
+                runs.add(new int[] { i, index });
+            }
+        }
+
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ByteArrayOutputStream data = new ByteArrayOutputStream(size * 4 + 16);
+        int[] blockLengths = new int[blocks];
+        BitWriter bits = new BitWriter();
+        for (int block = 0; block < blocks; block++) {
+            int start = block * BLOCK_SIZE;
+            encodeBlock(series, start, Math.min(size, start + BLOCK_SIZE), bits);
+            blockLengths[block] = bits.writeTo(data);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.size() + 64 + blocks * 4);
+        writeInt(out, MAGIC);
+        out.write(VERSION);
+        writeString(out, history.getIsin());
+        writeString(out, history.getMarketPlace());
+        writeString(out, history.getQuoteSource().name());
+        writeVarLong(out, zigZag(history.getFetchDate().toEpochDay()));
+        writeVarLong(out, size);
+        writeVarLong(out, dictionary.size());
+        dictionary.forEach(currency -> writeString(out, currency));
+        writeVarLong(out, runs.size());
+        int previousRunStart = 0;
+        for (int[] run : runs) {
+            writeVarLong(out, run[0] - previousRunStart);
+            writeVarLong(out, run[1]);
+            previousRunStart = run[0];
+        }
+        long previousFirstEpochDay = 0;
+        for (int block = 0; block < blocks; block++) {
+            int firstEpochDay = series.getEpochDay(block * BLOCK_SIZE);
+            writeVarLong(out, zigZag(firstEpochDay - previousFirstEpochDay));
+            writeVarLong(out, blockLengths[block]);
+            previousFirstEpochDay = firstEpochDay;
+        }
+        out.writeBytes(data.toByteArray());
+        return out.toByteArray();
+    }
+
+    /**
+     * @param encoded a history encoded by {@link #encode(IsinQuoteHistory)}.
+     * @return the unmodifiable decoded history.
+     * @throws IllegalArgumentException if the bytes are not an encoded history.
+     */
+    public static IsinQuoteHistory decode(byte[] encoded) {
+        return decodeRange(encoded, null, null);
+    }
+
+    /**
+     * Decodes only the blocks covering the given range.
+     *
+     * @param encoded a history encoded by {@link #encode(IsinQuoteHistory)}.
+     * @param from the first date of the range.
+     * @param to the last date of the range.
+     * @return the unmodifiable decoded history with the quotes from (inclusive) to (inclusive) the given dates.
+     * @throws IllegalArgumentException if the bytes are not an encoded history.
+     */
+    public static IsinQuoteHistory decode(byte[] encoded, LocalDate from, LocalDate to) {
+        return decodeRange(encoded, Objects.requireNonNull(from), Objects.requireNonNull(to));
+    }
+
+    private static IsinQuoteHistory decodeRange(byte[] encoded, @Nullable LocalDate from, @Nullable LocalDate to) {
+        try {
+            return new Decoder(ByteBuffer.wrap(encoded)).decode(from, to);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ArithmeticException | DateTimeException e) {
+            throw new IllegalArgumentException("Corrupt encoded quote history", e);
+        }
+    }
+
+    private static void encodeBlock(QuoteSeries series, int start, int end, BitWriter out) {
+        long previousBits = Double.doubleToRawLongBits(series.getAmount(start));
+        out.write(previousBits, 64);
+        long previousDelta = 0;
+        int leading = -1;
+        int trailing = 0;
+        for (int i = start + 1; i < end; i++) {
+            long delta = (long) series.getEpochDay(i) - series.getEpochDay(i - 1);
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(series.getAmount(i));
+            long xor = bits ^ previousBits;
+            previousBits = bits;
+            if (xor == 0) {
+                out.write(0, 1);
+                continue;
+            }
+            int xorLeading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int xorTrailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && xorLeading >= leading && xorTrailing >= trailing) {
+                out.write(0b10, 2);
+            } else {
+                leading = xorLeading;
+                trailing = xorTrailing;
+                out.write(0b11, 2);
+                out.write(leading, 5);
+                out.write(63 - leading - trailing, 6);
+            }
+            out.write(xor >>> trailing, 64 - leading - trailing);
+        }
+    }
+
+    private static void writeDeltaOfDelta(BitWriter out, long deltaOfDelta) {
+        long zigZag = zigZag(deltaOfDelta);
+        if (zigZag == 0) {
+            out.write(0, 1);
+        } else if (zigZag < 1 << 7) {
+            out.write(0b10, 2);
+            out.write(zigZag, 7);
+        } else if (zigZag < 1 << 9) {
+            out.write(0b110, 3);
+            out.write(zigZag, 9);
+        } else if (zigZag < 1 << 12) {
+            out.write(0b1110, 4);
+            out.write(zigZag, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(zigZag, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+        int bits;
+        if (!in.readBit()) {
+            bits = 7;
+        } else if (!in.readBit()) {
+            bits = 9;
+        } else if (!in.readBit()) {
+            bits = 12;
+        } else {
+            bits = 64;
+        }
+        return unZigZag(in.read(bits));
+    }
+
+    private static final class Decoder {
+        private final ByteBuffer in;
+        private final String isin;
+        @Nullable
+        private final String marketPlace;
+        private final QuoteSource quoteSource;
+        private final LocalDate fetchDate;
+        private final int size;
+        private final String[] dictionary;
+        private final int[] runStarts;
+        private final String[] runCurrencies;
+        private final int[] blockFirstEpochDays;
+        private final int[] blockPositions;
+
+        Decoder(ByteBuffer in) {
+            this.in = in;
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an encoded quote history");
+            }
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported encoded quote history version " + version);
+            }
+            isin = Objects.requireNonNull(readString(in));
+            marketPlace = readString(in);
+            quoteSource = QuoteSource.valueOf(Objects.requireNonNull(readString(in)));
+            fetchDate = LocalDate.ofEpochDay(unZigZag(readVarLong(in)));
+            size = readCount(in, Integer.MAX_VALUE);
+            dictionary = new String[readCount(in, in.remaining())];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = Currencies.intern(readString(in));
+            }
+            int runs = readCount(in, in.remaining());
+            runStarts = new int[runs];
+            runCurrencies = new String[runs];
+            int runStart = 0;
+            for (int run = 0; run < runs; run++) {
+                runStart = Math.addExact(runStart, readCount(in, size));
+                runStarts[run] = runStart;
+                runCurrencies[run] = dictionary[readCount(in, dictionary.length - 1)];
+            }
+            int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            if (blocks > in.remaining()) {
+                throw new IllegalArgumentException("Truncated block index of encoded quote history");
+            }
+            blockFirstEpochDays = new int[blocks];
+            blockPositions = new int[blocks + 1];
+            long firstEpochDay = 0;
+            for (int block = 0; block < blocks; block++) {
+                firstEpochDay += unZigZag(readVarLong(in));
+                blockFirstEpochDays[block] = Math.toIntExact(firstEpochDay);
+                blockPositions[block + 1] = Math.addExact(blockPositions[block], readCount(in, Integer.MAX_VALUE));
+            }
+            int dataPosition = in.position();
+            for (int block = 0; block <= blocks; block++) {
+                blockPositions[block] += dataPosition;
+            }
+            if (blockPositions[blocks] != in.limit()) {
+                throw new IllegalArgumentException("Length of encoded quote history does not match its block index");
+            }
+        }
+
+        IsinQuoteHistory decode(@Nullable LocalDate from, @Nullable LocalDate to) {
+            int firstBlock = 0;
+            int lastBlock = blockFirstEpochDays.length - 1;
+            if (from != null && to != null) {
+                if (to.isBefore(from)) {
+                    lastBlock = -1;
+                } else {
+                    firstBlock = Math.max(0, blockOf(from));
+                    lastBlock = blockOf(to);
+                }
+            }
+            QuoteSeries series = QuoteSeries.EMPTY;
+            if (firstBlock <= lastBlock) {
+                int start = firstBlock * BLOCK_SIZE;
+                int end = Math.min(size, (lastBlock + 1) * BLOCK_SIZE);
+                int[] epochDays = new int[end - start];
+                double[] amounts = new double[end - start];
+                for (int block = firstBlock; block <= lastBlock; block++) {
+                    int blockStart = block * BLOCK_SIZE;
+                    decodeBlock(block, Math.min(BLOCK_SIZE, size - blockStart), epochDays, amounts, blockStart - start);
+                }
+                series = QuoteSeries.of(epochDays, amounts, runStarts(start, end), runCurrencies(start, end));
+                if (from != null && to != null) {
+                    series = series.subSeries(from, to);
+                }
+            }
+            return new IsinQuoteHistory(isin, fetchDate, marketPlace, quoteSource, series, false);
+        }
+
+        // the last block starting on or before the given date, -1 if there is none
+        private int blockOf(LocalDate date) {
+            long epochDay = date.toEpochDay();
+            int index = Arrays.binarySearch(blockFirstEpochDays, (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, epochDay)));
+            return index >= 0 ? index : -index - 2;
+        }
+
+        private void decodeBlock(int block, int count, int[] epochDays, double[] amounts, int offset) {
+            BitReader bits = new BitReader(in.array(), blockPositions[block], blockPositions[block + 1]);
+            long epochDay = blockFirstEpochDays[block];
+            long previousBits = bits.read(64);
+            epochDays[offset] = (int) epochDay;
+            amounts[offset] = Double.longBitsToDouble(previousBits);
+            long delta = 0;
+            int leading = -1;
+            int trailing = 0;
+            for (int i = 1; i < count; i++) {
+                delta += readDeltaOfDelta(bits);
+                if (delta <= 0) {
+                    throw new IllegalArgumentException("Dates of encoded quote history are not ascending");
+                }
+                epochDay += delta;
+                epochDays[offset + i] = Math.toIntExact(epochDay);
+
+                if (bits.readBit()) {
+                    if (bits.readBit()) {
+                        leading = (int) bits.read(5);
+                        trailing = 63 - leading - (int) bits.read(6);
+                        if (trailing < 0) {
+                            throw new IllegalArgumentException("Invalid amount of encoded quote history");
+                        }
+                    } else if (leading < 0) {
+                        throw new IllegalArgumentException("Invalid amount of encoded quote history");
+                    }
+                    previousBits ^= bits.read(64 - leading - trailing) << trailing;
+                }
+                amounts[offset + i] = Double.longBitsToDouble(previousBits);
+            }
+            if (block + 1 < blockFirstEpochDays.length && epochDay >= blockFirstEpochDays[block + 1]) {
+                throw new IllegalArgumentException("Dates of encoded quote history are not ascending");
+            }
+        }
+
+        private int[] runStarts(int start, int end) {
+            int first = runOf(start);
+            int last = runOf(end - 1);
+            int[] runs = new int[last - first + 1];
+            for (int run = first; run <= last; run++) {
+                runs[run - first] = Math.max(0, runStarts[run] - start);
+            }
+            return runs;
+        }
+
+        private String[] runCurrencies(int start, int end) {
+            return Arrays.copyOfRange(runCurrencies, runOf(start), runOf(end - 1) + 1);
+        }
+
+        private int runOf(int index) {
+            int run = Arrays.binarySearch(runStarts, index);
+            if (run == -1) {
+                throw new IllegalArgumentException("Currency runs of encoded quote history do not start with the first quote");
+            }
+            return run >= 0 ? run : -run - 2;
+        }
+    }
+
+    /**
+     * Collects bits in a long, most significant first, and spills them to a byte array.
+     */
+    private static final class BitWriter {
+        private byte[] bytes = new byte[256];
+        private int byteCount;
+        private long buffer;
+        private int buffered;
+
+        void write(long value, int bits) {
+            long masked = value & mask(bits);
+            int free = 64 - buffered;
+            if (bits < free) {
+                buffer = (buffer << bits) | masked;
+                buffered += bits;
+                return;
+            }
+            int overflow = bits - free;
+            buffer = (free == 64 ? 0 : buffer << free) | (masked >>> overflow);
+            spill(buffer, 8);
+            buffer = masked & mask(overflow);
+            buffered = overflow;
+        }
+
+        // writes the bits written since the last call, padded to full bytes, and returns the number of bytes written
+        int writeTo(ByteArrayOutputStream out) {
+            if (buffered > 0) {
+                spill(buffer << (64 - buffered), (buffered + 7) / 8);
+            }
+            out.write(bytes, 0, byteCount);
+            int written = byteCount;
+            byteCount = 0;
+            buffer = 0;
+            buffered = 0;
+            return written;
+        }
+
+        private void spill(long value, int count) {
+            if (byteCount + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            for (int i = 0; i < count; i++) {
+                bytes[byteCount++] = (byte) (value >>> (56 - i * 8));
+            }
+        }
+
+        private static long mask(int bits) {
+            return bits == 0 ? 0 : -1L >>> (64 - bits);
+        }
+    }
+
+    private static final class BitReader {
+        private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+        private final byte[] bytes;
+        private final long endBit;
+        private long bit;
+
+        BitReader(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.bit = (long) start * 8;
+            this.endBit = (long) end * 8;
+        }
+
+        boolean readBit() {
+            checkAvailable(1);
+            boolean set = (bytes[(int) (bit >>> 3)] & (0x80 >>> (bit & 7))) != 0;
+            bit++;
+            return set;
+        }
+
+        long read(int bits) {
+            checkAvailable(bits);
+            int index = (int) (bit >>> 3);
+            int offset = (int) (bit & 7);
+            long value = (window(index) << offset) >>> (64 - bits);
+            if (offset + bits > 64) {
+                value |= (bytes[index + 8] & 0xFF) >>> (72 - offset - bits);
+            }
+            bit += bits;
+            return value;
+        }
+
+        // the 8 bytes from the given index, zero-padded at the end of the array
+        private long window(int index) {
+            if (index + 8 <= bytes.length) {
+                return (long) LONG_VIEW.get(bytes, index);
+            }
+            long window = 0;
+            for (int i = 0; i < 8; i++) {
+                window = (window << 8) | (index + i < bytes.length ? bytes[index + i] & 0xFF : 0);
+            }
+            return window;
+        }
+
+        private void checkAvailable(int bits) {
+            if (bit + bits > endBit) {
+                throw new IllegalArgumentException("Truncated block of encoded quote history");
+            }
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in encoded quote history");
+    }
+
+    private static int readCount(ByteBuffer in, int max) {
+        long count = readVarLong(in);
+        if (count < 0 || count > max) {
+            throw new IllegalArgumentException("Invalid count " + count + " in encoded quote history");
+        }
+        return (int) count;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, @Nullable String value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer in) {
+        int length = readCount(in, in.remaining() + 1);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
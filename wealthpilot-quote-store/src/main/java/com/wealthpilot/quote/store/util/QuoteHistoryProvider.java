@@ -0,0 +1,18 @@
+package com.wealthpilot.quote.store.util;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Fetches quote histories from an external source, e.g. the API of a data provider. At most one provider is used per {@link QuoteSource}.
+ */
+public interface QuoteHistoryProvider {
+
+    QuoteSource getQuoteSource();
+
+    /**
+     * @param isin the ISIN to fetch the history for.
+     * @param marketPlace the market place of the quotes, <code>null</code> for the default market place of the source.
+     * @return the full history of the ISIN as currently delivered by the source, an empty history if the source does not know the ISIN.
+     */
+    IsinQuoteHistory fetchQuoteHistory(String isin, @Nullable String marketPlace);
+}
@@ -0,0 +1,334 @@
+package com.wealthpilot.quote.store.util;
+
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Immutable, date sorted series of quotes stored in primitive parallel arrays: the epoch-day and the amount of every entry,
+ * and the currencies run-length encoded, as they rarely change within the history of one ISIN.
+ * Range views created by {@link #subSeries(LocalDate, LocalDate)} share the arrays of the original series.
+ */
+public final class QuoteSeries {
+
+    public static final QuoteSeries EMPTY = new QuoteSeries(new int[0], new double[0], new int[0], new String[0], 0, 0);
+
+    private final int[] epochDays;
+    private final double[] amounts;
+    // absolute index of the first entry of every run of equal currencies, and the currency of the run
+    private final int[] currencyRunStarts;
+    private final String[] currencyRuns;
+    private final int offset;
+    private final int length;
+
+    private QuoteSeries(int[] epochDays, double[] amounts, int[] currencyRunStarts, String[] currencyRuns, int offset, int length) {
+        this.epochDays = epochDays;
+        this.amounts = amounts;
+        this.currencyRunStarts = currencyRunStarts;
+        this.currencyRuns = currencyRuns;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a series of the given arrays without copying or checking them.
+     *
+     * @param epochDays the strictly ascending epoch-days.
+     * @param amounts the amounts of the epoch-days.
+     * @param currencyRunStarts the index of the first entry of every run of equal currencies, the first one is 0.
+     * @param currencyRuns the currency of every run.
+     * @return the series.
+     */
+    static QuoteSeries of(int[] epochDays, double[] amounts, int[] currencyRunStarts, String[] currencyRuns) {
+        return epochDays.length == 0 ? EMPTY : new QuoteSeries(epochDays, amounts, currencyRunStarts, currencyRuns, 0, epochDays.length);
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public int getEpochDay(int index) {
+        return epochDays[offset + checkIndex(index)];
+    }
+
+    public LocalDate getDate(int index) {
+        return LocalDate.ofEpochDay(getEpochDay(index));
+    }
+
+    public double getAmount(int index) {
+        return amounts[offset + checkIndex(index)];
+    }
+
+    @Nullable
+    public String getCurrency(int index) {
+        int absoluteIndex = offset + checkIndex(index);
+        if (currencyRuns.length == 1) {
+            return currencyRuns[0];
+        }
+        int run = Arrays.binarySearch(currencyRunStarts, absoluteIndex);
+        return currencyRuns[run >= 0 ? run : -run - 2];
+    }
+
+    public Quote getQuote(int index) {
+        return new Quote(getCurrency(index), getAmount(index), getDate(index));
+    }
+
+    public Optional<LocalDate> getFirstDate() {
+        return isEmpty() ? Optional.empty() : Optional.of(getDate(0));
+    }
+
+    public Optional<LocalDate> getLatestDate() {
+        return isEmpty() ? Optional.empty() : Optional.of(getDate(length - 1));
+    }
+
+    /**
+     * @param newAmounts the amount of every entry of this series, the array is not copied.
+     * @return a series with the dates and currencies of this series and the given amounts.
+     */
+    QuoteSeries withAmounts(double[] newAmounts) {
+        if (newAmounts.length != length) {
+            throw new IllegalArgumentException("Expected " + length + " amounts, got " + newAmounts.length);
+        }
+        if (offset == 0 && length == amounts.length) {
+            return new QuoteSeries(epochDays, newAmounts, currencyRunStarts, currencyRuns, 0, length);
+        }
+        double[] alignedAmounts = new double[amounts.length];
+        System.arraycopy(newAmounts, 0, alignedAmounts, offset, length);
+        return new QuoteSeries(epochDays, alignedAmounts, currencyRunStarts, currencyRuns, offset, length);
+    }
+
+    /**
+     * @param date the date to search for.
+     * @return the index of the entry for the date if present, otherwise <code>(-(insertion point) - 1)</code>
+     *         as defined by {@link Arrays#binarySearch(int[], int)}.
+     */
+    public int indexOf(LocalDate date) {
+        // dates beyond the int epoch days, e.g. LocalDate.MIN and MAX as open range bounds, sort before or after all entries
+        return indexOf((int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay())));
+    }
+
+    private int indexOf(int epochDay) {
+        int index = Arrays.binarySearch(epochDays, offset, offset + length, epochDay);
+        return index >= 0 ? index - offset : index + offset;
+    }
+
+    public Optional<Quote> getQuote(LocalDate date) {
+        int index = indexOf(date);
+        return index >= 0 ? Optional.of(getQuote(index)) : Optional.empty();
+    }
+
+    /**
+     * @param date the date to get the quote for.
+     * @return the latest quote on or before the given date.
+     */
+    public Optional<Quote> getLatestQuoteAsOf(LocalDate date) {
+        int index = indexOf(date);
+        if (index < 0) {
+            index = insertionIndex(index) - 1;
+        }
+        return index >= 0 ? Optional.of(getQuote(index)) : Optional.empty();
+    }
+
+    /**
+     * @param from the first date of the range.
+     * @param to the last date of the range.
+     * @return a view of all entries from (inclusive) to (inclusive) the given dates.
+     */
+    public QuoteSeries subSeries(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            return EMPTY;
+        }
+        int fromIndex = insertionIndex(indexOf(from));
+        int toIndex = indexOf(to);
+        toIndex = toIndex >= 0 ? toIndex + 1 : insertionIndex(toIndex);
+        return new QuoteSeries(epochDays, amounts, currencyRunStarts, currencyRuns, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    private static int insertionIndex(int index) {
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, length);
+    }
+
+    /**
+     * @return an unmodifiable, date ordered map view of this series, {@link Map#get(Object)} is a binary search.
+     */
+    public Map<LocalDate, Quote> asMap() {
+        return new QuoteSeriesMap();
+    }
+
+    private final class QuoteSeriesMap extends AbstractMap<LocalDate, Quote> {
+
+        @Override
+        public int size() {
+            return length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof LocalDate && indexOf((LocalDate) key) >= 0;
+        }
+
+        @Override
+        @Nullable
+        public Quote get(Object key) {
+            return key instanceof LocalDate ? getQuote((LocalDate) key).orElse(null) : null;
+        }
+
+        @Override
+        public Set<Entry<LocalDate, Quote>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<LocalDate, Quote>> iterator() {
+                    return new Iterator<>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < length;
+                        }
+
+                        @Override
+                        public Entry<LocalDate, Quote> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Quote quote = getQuote(index++);
+                            return new SimpleImmutableEntry<>(quote.getDate(), quote);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return length;
+                }
+            };
+        }
+    }
+
+    /**
+     * Collects quotes in any order. If a date is added more than once, the last added quote wins.
+     */
+    public static final class Builder {
+        private int[] epochDays = new int[16];
+        private double[] amounts = new double[16];
+        private String[] currencies = new String[16];
+        private int size;
+
+        private Builder() {
+        }
+
+        public Builder add(LocalDate date, @Nullable String currency, double amount) {
+            return add(Math.toIntExact(date.toEpochDay()), currency, amount);
+        }
+
+        public Builder add(Quote quote) {
+            return add(quote.getDate(), quote.getCurrency(), quote.getAmount());
+        }
+
+        public Builder addAll(QuoteSeries series) {
+            for (int i = 0; i < series.size(); i++) {
+                add(series.getEpochDay(i), series.getCurrency(i), series.getAmount(i));
+            }
+            return this;
+        }
+
+        private Builder add(int epochDay, @Nullable String currency, double amount) {
+            if (size == epochDays.length) {
+                int capacity = size * 2;
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                currencies = Arrays.copyOf(currencies, capacity);
+            }
+            epochDays[size] = epochDay;
+            amounts[size] = amount;
+            currencies[size] = Currencies.intern(currency);
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public QuoteSeries build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return isStrictlyAscending() ? toSeries(identityOrder(), size) : sortAndDeduplicate();
+        }
+
+        private boolean isStrictlyAscending() {
+            for (int i = 1; i < size; i++) {
+                if (epochDays[i] <= epochDays[i - 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int[] identityOrder() {
+            int[] order = new int[size];
+            Arrays.setAll(order, i -> i);
+            return order;
+        }
+
+        private QuoteSeries sortAndDeduplicate() {
+            // sort by epoch-day, then by insertion index, so the last added entry of a date can be kept
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) epochDays[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            int[] order = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int index = (int) keys[i];
+                if (i + 1 < size && (int) (keys[i + 1] >> 32) == epochDays[index]) {
+                    continue;
+                }
+                order[count++] = index;
+            }
+            return toSeries(order, count);
+        }
+
+        private QuoteSeries toSeries(int[] order, int count) {
+            int[] sortedEpochDays = new int[count];
+            double[] sortedAmounts = new double[count];
+            int runs = 0;
+            int[] runStarts = new int[count];
+            String[] runCurrencies = new String[count];
+            for (int i = 0; i < count; i++) {
+                int index = order[i];
+                sortedEpochDays[i] = epochDays[index];
+                sortedAmounts[i] = amounts[index];
+                if (runs == 0 || !Objects.equals(runCurrencies[runs - 1], currencies[index])) {
+                    runStarts[runs] = i;
+                    runCurrencies[runs] = currencies[index];
+                    runs++;
+                }
+            }
+            return new QuoteSeries(sortedEpochDays, sortedAmounts, Arrays.copyOf(runStarts, runs), Arrays.copyOf(runCurrencies, runs), 0, count);
+        }
+    }
+}
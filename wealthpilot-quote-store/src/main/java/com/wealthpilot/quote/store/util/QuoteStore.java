@@ -1,10 +1,75 @@
 package com.wealthpilot.quote.store.util;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
 /**
  * Defines a (persistent) store for quotes.
  * This is a write-only interface. The store will typically provide other interface like {@link QuoteService} for read-access to the stored data.
  */
 public interface QuoteStore {
     void storeQuote(IsinQuote quote);
+
+    /**
+     * Stores many quotes at once with the same accept/ignore semantics as calling {@link #storeQuote(IsinQuote)} for each of them in iteration order.
+     *
+     * @param quotes the quotes to store, may contain several quotes of the same ISIN.
+     */
+    void storeQuotes(Collection<IsinQuote> quotes);
+
+    /**
+     * Replaces all stored quotes of the ISIN by the quotes of the history. Only the difference is written: quotes of dates missing in the history
+     * are deleted, changed quotes updated and quotes of new dates inserted.
+     *
+     * @param isin the ISIN of the history.
+     * @param history the complete new history of the ISIN, e.g. after a quote source corrected it backwards for a split.
+     * @return the number of inserted, updated and deleted quotes, 0 if the stored quotes equal the history.
+     */
+    int replaceQuoteHistory(String isin, IsinQuoteHistory history);
+
     IsinQuoteHistory getQuoteHistory(String isin);
+
+    /**
+     * @param isin the ISIN of the history.
+     * @param from the first date of the range.
+     * @param to the last date of the range.
+     * @return the history of the ISIN restricted to the quotes from (inclusive) to (inclusive) the given dates.
+     */
+    IsinQuoteHistory getQuoteHistory(String isin, LocalDate from, LocalDate to);
+
+    /**
+     * @param isin the ISIN of the quote.
+     * @param date the date to get the quote for.
+     * @return the latest quote on or before the given date, if it is still valid for this date (see {@link Quote#isValidForDate(LocalDate)}).
+     */
+    Optional<Quote> getQuoteAsOf(String isin, LocalDate date);
+
+    /**
+     * Bulk variant of {@link #getQuoteHistory(String)} that loads the histories of all given ISINs with a few set-based queries.
+     *
+     * @param isins the ISINs to get the histories for.
+     * @return the histories mapped by ISIN, containing an entry for every given ISIN.
+     */
+    Map<String, IsinQuoteHistory> getQuoteHistories(Collection<String> isins);
+
+    /**
+     * The current quotes of a whole portfolio, without loading the histories.
+     *
+     * @param isins the ISINs to get the latest quotes for.
+     * @return the latest stored quote of each ISIN, regardless of its age, mapped by ISIN. ISINs without quotes are missing.
+     */
+    Map<String, Quote> getLatestQuotes(Collection<String> isins);
+
+    /**
+     * Aligned amounts of a whole portfolio for analytics, without building the histories.
+     *
+     * @param isins the ISINs of the columns, in iteration order without duplicates. ISINs without quotes get a column of NaNs.
+     * @param from the first date of the range.
+     * @param to the last date of the range.
+     * @param fillPolicy how to fill dates on which an ISIN has no quote.
+     * @return the amounts of the ISINs on every date from (inclusive) to (inclusive) the given dates with a quote of at least one of them.
+     */
+    PriceMatrix getPriceMatrix(Collection<String> isins, LocalDate from, LocalDate to, FillPolicy fillPolicy);
 }
@@ -0,0 +1,177 @@
+package com.wealthpilot.quote.store.util;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Split adjusted view of a quote series: the amount of every quote dated before the ex-date of a split factor is multiplied by the factor,
+ * e.g. 0.5 for a 2:1 split, so the series is continuous across the split. Percentage quotes are not adjusted.
+ * <p>
+ * {@link #update(QuoteSeries, NavigableMap)} recomputes only the quotes affected by the changes: a changed factor affects the quotes before its
+ * ex-date, a changed quote itself and all quotes after it. The other amounts are copied from the previous adjustment.
+ */
+public final class SplitAdjustment {
+
+    private final QuoteSeries raw;
+    private final NavigableMap<LocalDate, Double> factors;
+    private final QuoteSeries adjusted;
+    private final int recomputed;
+
+    private SplitAdjustment(QuoteSeries raw, NavigableMap<LocalDate, Double> factors, QuoteSeries adjusted, int recomputed) {
+        this.raw = raw;
+        this.factors = factors;
+        this.adjusted = adjusted;
+        this.recomputed = recomputed;
+    }
+
+    /**
+     * @param raw the series as stored.
+     * @param factors the split factors by ex-date.
+     * @return the adjustment of the series.
+     * @throws IllegalArgumentException if a factor is not positive and finite.
+     */
+    public static SplitAdjustment of(QuoteSeries raw, NavigableMap<LocalDate, Double> factors) {
+        NavigableMap<LocalDate, Double> copy = copy(factors);
+        double[] amounts = new double[raw.size()];
+        new CumulativeFactors(copy).adjust(raw, amounts, 0, raw.size());
+        return new SplitAdjustment(raw, copy, raw.withAmounts(amounts), raw.size());
+    }
+
+    /**
+     * @param newRaw the series as stored now.
+     * @param newFactors the split factors by ex-date now.
+     * @return the adjustment of the new series with the new factors, sharing the unaffected amounts with this adjustment.
+     * @throws IllegalArgumentException if a factor is not positive and finite.
+     */
+    public SplitAdjustment update(QuoteSeries newRaw, NavigableMap<LocalDate, Double> newFactors) {
+        if (newRaw == raw && newFactors.equals(factors)) {
+            return this;
+        }
+        NavigableMap<LocalDate, Double> copy = copy(newFactors);
+        int size = newRaw.size();
+        int unchangedQuotes = newRaw == raw ? size : commonPrefix(raw, newRaw);
+        LocalDate latestChangedExDate = latestChangedExDate(factors, copy);
+        int head = 0;
+        if (latestChangedExDate != null) {
+            int index = newRaw.indexOf(latestChangedExDate);
+            head = index >= 0 ? index : -index - 1;
+        }
+        int tail = Math.max(head, unchangedQuotes);
+
+        double[] amounts = new double[size];
+        CumulativeFactors cumulativeFactors = new CumulativeFactors(copy);
+        cumulativeFactors.adjust(newRaw, amounts, 0, head);
+        for (int i = head; i < tail; i++) {
+            amounts[i] = adjusted.getAmount(i);
+        }
+        cumulativeFactors.adjust(newRaw, amounts, tail, size);
+        return new SplitAdjustment(newRaw, copy, newRaw.withAmounts(amounts), head + size - tail);
+    }
+
+    public QuoteSeries getRaw() {
+        return raw;
+    }
+
+    /**
+     * @return the unmodifiable split factors by ex-date.
+     */
+    public NavigableMap<LocalDate, Double> getFactors() {
+        return factors;
+    }
+
+    public QuoteSeries getAdjusted() {
+        return adjusted;
+    }
+
+    /**
+     * @return the number of amounts computed by the creation of this adjustment, the others were copied.
+     */
+    public int getRecomputed() {
+        return recomputed;
+    }
+
+    private static NavigableMap<LocalDate, Double> copy(NavigableMap<LocalDate, Double> factors) {
+        factors.forEach((exDate, factor) -> {
+            if (!(factor > 0) || Double.isInfinite(factor)) {
+                throw new IllegalArgumentException("Invalid split factor " + factor + " for " + exDate);
+            }
+        });
+        return Collections.unmodifiableNavigableMap(new TreeMap<>(factors));
+    }
+
+    private static int commonPrefix(QuoteSeries series, QuoteSeries other) {
+        int size = Math.min(series.size(), other.size());
+        for (int i = 0; i < size; i++) {
+            if (series.getEpochDay(i) != other.getEpochDay(i)
+                            || Double.doubleToRawLongBits(series.getAmount(i)) != Double.doubleToRawLongBits(other.getAmount(i))
+                            || !Objects.equals(series.getCurrency(i), other.getCurrency(i))) {
+                return i;
+            }
+        }
+        return size;
+    }
+
+    @Nullable
+    private static LocalDate latestChangedExDate(NavigableMap<LocalDate, Double> factors, NavigableMap<LocalDate, Double> newFactors) {
+        NavigableSet<LocalDate> exDates = new TreeSet<>(factors.keySet());
+        exDates.addAll(newFactors.keySet());
+        for (LocalDate exDate : exDates.descendingSet()) {
+            if (!Objects.equals(factors.get(exDate), newFactors.get(exDate))) {
+                return exDate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The product of all factors with an ex-date after a date, as step function over the ex-dates.
+     */
+    private static final class CumulativeFactors {
+        private final int[] exEpochDays;
+        // products[k] is the product of the factors k and later, products[exEpochDays.length] is 1
+        private final double[] products;
+
+        CumulativeFactors(NavigableMap<LocalDate, Double> factors) {
+            exEpochDays = new int[factors.size()];
+            products = new double[factors.size() + 1];
+            int k = 0;
+            for (LocalDate exDate : factors.keySet()) {
+                exEpochDays[k++] = Math.toIntExact(exDate.toEpochDay());
+            }
+            products[k] = 1;
+            for (double factor : factors.descendingMap().values()) {
+                products[k - 1] = products[k] * factor;
+                k--;
+            }
+        }
+
+        void adjust(QuoteSeries raw, double[] amounts, int from, int to) {
+            if (from >= to) {
+                return;
+            }
+            int next = firstAfter(raw.getEpochDay(from));
+            for (int i = from; i < to; i++) {
+                int epochDay = raw.getEpochDay(i);
+                while (next < exEpochDays.length && exEpochDays[next] <= epochDay) {
+                    next++;
+                }
+                double amount = raw.getAmount(i);
+                amounts[i] = Constants.PERCENTAGE_CURRENCY.equals(raw.getCurrency(i)) ? amount : amount * products[next];
+            }
+        }
+
+        // the index of the first ex-date after the given day
+        private int firstAfter(int epochDay) {
+            int index = Arrays.binarySearch(exEpochDays, epochDay);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+    }
+}
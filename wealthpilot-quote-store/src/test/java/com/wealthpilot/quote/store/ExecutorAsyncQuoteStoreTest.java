@@ -0,0 +1,127 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import com.wealthpilot.quote.store.util.IsinQuote;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteSource;
+import com.wealthpilot.quote.store.util.QuoteStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class ExecutorAsyncQuoteStoreTest {
+
+    private static final String ISIN = "DE000A1EWWW0";
+
+    @Mock
+    private QuoteStore quoteStore;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ExecutorAsyncQuoteStore asyncQuoteStore;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        asyncQuoteStore.destroy();
+    }
+
+    @Test
+    void completesWithResultAndRecordsQueueTime() throws Exception {
+        asyncQuoteStore = new ExecutorAsyncQuoteStore(quoteStore, meterRegistry, true, 2, 10);
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.NDGIT);
+        when(quoteStore.getQuoteHistory(ISIN)).thenReturn(history);
+
+        assertThat(asyncQuoteStore.getQuoteHistory(ISIN).get(10, TimeUnit.SECONDS)).isSameAs(history);
+
+        assertThat(meterRegistry.get(ExecutorAsyncQuoteStore.QUEUE_TIMER).tag("operation", "getQuoteHistory").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void runsAtMostMaxConcurrencyOperationsAtOnce() throws Exception {
+        asyncQuoteStore = new ExecutorAsyncQuoteStore(quoteStore, meterRegistry, true, 2, 10);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        when(quoteStore.getQuoteHistory(anyString())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            release.await(10, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            return new IsinQuoteHistory(invocation.getArgument(0), "GER", QuoteSource.NDGIT);
+        });
+
+        List<CompletableFuture<IsinQuoteHistory>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(asyncQuoteStore.getQuoteHistory(ISIN));
+        }
+        Thread.sleep(100);
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    void completesExceptionallyIfOperationFails() {
+        asyncQuoteStore = new ExecutorAsyncQuoteStore(quoteStore, meterRegistry, true, 2, 10);
+        IsinQuote quote = new IsinQuote("GER", ISIN, LocalDate.now(), new Quote("EUR", 1.0, LocalDate.now()), QuoteSource.BANK_API, false);
+        doThrow(new IllegalStateException("broken")).when(quoteStore).storeQuote(quote);
+
+        assertThatThrownBy(() -> asyncQuoteStore.storeQuote(quote).get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void completesExceptionallyAndReleasesPermitsIfOperationThrowsError() throws Exception {
+        asyncQuoteStore = new ExecutorAsyncQuoteStore(quoteStore, meterRegistry, false, 1, 1);
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.NDGIT);
+        when(quoteStore.getQuoteHistory(ISIN)).thenThrow(new AssertionError("broken")).thenThrow(new StackOverflowError()).thenReturn(history);
+
+        assertThatThrownBy(() -> asyncQuoteStore.getQuoteHistory(ISIN).get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(AssertionError.class);
+        assertThatThrownBy(() -> asyncQuoteStore.getQuoteHistory(ISIN).get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+        assertThat(asyncQuoteStore.getQuoteHistory(ISIN).get(10, TimeUnit.SECONDS)).isSameAs(history);
+    }
+
+    @ParameterizedTest(name = "virtualThreads={0}")
+    @ValueSource(booleans = { true, false })
+    void completesExceptionallyIfQueueIsFull(boolean virtualThreads) throws Exception {
+        asyncQuoteStore = new ExecutorAsyncQuoteStore(quoteStore, meterRegistry, virtualThreads, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(quoteStore.getLatestQuotes(List.of(ISIN))).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return Map.of();
+        });
+
+        CompletableFuture<?> running = asyncQuoteStore.getLatestQuotes(List.of(ISIN));
+        Thread.sleep(100);
+        CompletableFuture<?> queued = asyncQuoteStore.getLatestQuotes(List.of(ISIN));
+        CompletableFuture<?> rejected = asyncQuoteStore.getLatestQuotes(List.of(ISIN));
+        release.countDown();
+
+        assertThatThrownBy(() -> rejected.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(running.get(10, TimeUnit.SECONDS)).isNotNull();
+        assertThat(queued.get(10, TimeUnit.SECONDS)).isNotNull();
+    }
+}
@@ -1,22 +1,41 @@
 package com.wealthpilot.quote.store;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.assertj.core.data.Offset;
-import org.ff4j.FF4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -24,25 +43,33 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
+import com.wealthpilot.quote.store.util.FillPolicy;
 import com.wealthpilot.quote.store.util.IsinQuote;
 import com.wealthpilot.quote.store.util.IsinQuoteHistory;
 import com.wealthpilot.quote.store.util.LoggingInterceptor;
 import com.wealthpilot.quote.store.util.LoggingInterceptorExtension;
+import com.wealthpilot.quote.store.util.PriceMatrix;
 import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteChangeEvent;
 import com.wealthpilot.quote.store.util.QuoteSource;
 import com.wealthpilot.quote.store.util.QuoteType;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 
 @ExtendWith({ MockitoExtension.class, LoggingInterceptorExtension.class })
 @RequiredArgsConstructor
 class JPAQuoteServiceTest {
     private static final String VALID_ISIN = "DE000A1EWWW0";
+    private static final String OTHER_VALID_ISIN = "US0378331005";
     private static final String INVALID_ISIN = "FOO";
 
     private final LoggingInterceptor loggingInterceptor;
@@ -53,30 +80,60 @@ class JPAQuoteServiceTest {
     @Mock
     private JPAQuoteIdentifierRepository quoteIdentifierRepository;
 
+    @Mock
+    private JPALatestQuoteRepository latestQuoteRepository;
+
     @Mock
     private TransactionTemplate transactionTemplate;
 
     @Mock
-    private FF4j ff4j;
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private QuoteStoreUpdater quoteStoreUpdater;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private QuoteIdentifierResolver identifierResolver;
     private JPAQuoteService jpaQuoteService;
+    private final AtomicLong nextIdentifierId = new AtomicLong(100);
     @SuppressWarnings("unchecked")
     private final ArgumentCaptor<List<JPAQuote>> quotesCaptor = ArgumentCaptor.forClass(List.class);
     private final ArgumentCaptor<JPAQuote> quoteCaptor = ArgumentCaptor.forClass(JPAQuote.class);
+    @SuppressWarnings("unchecked")
+    private final ArgumentCaptor<List<JPALatestQuote>> latestQuotesCaptor = ArgumentCaptor.forClass(List.class);
+    private final ArgumentCaptor<JPALatestQuote> latestQuoteCaptor = ArgumentCaptor.forClass(JPALatestQuote.class);
 
     @BeforeEach
     void setUp() {
-        jpaQuoteService = new JPAQuoteService(quoteRepository, quoteIdentifierRepository, transactionTemplate, ff4j);
-        doAnswer(invocation -> invocation.getArgument(0, JPAQuoteIdentifier.class)).when(quoteIdentifierRepository).save(any());
+        when(transactionTemplate.getTransactionManager()).thenReturn(transactionManager);
+        createQuoteService(false);
+        doAnswer(invocation -> {
+            JPAQuoteIdentifier identifier = invocation.getArgument(0, JPAQuoteIdentifier.class);
+            if (identifier.getId() == null) {
+                identifier.setId(nextIdentifierId.incrementAndGet());
+            }
+            return identifier;
+        }).when(quoteIdentifierRepository).save(any());
+    }
+
+    private void createQuoteService(boolean identifierUpsert) {
+        identifierResolver = new QuoteIdentifierResolver(quoteIdentifierRepository, transactionTemplate, meterRegistry, 1000, Duration.ofHours(1),
+                        identifierUpsert);
+        jpaQuoteService = new JPAQuoteService(quoteRepository, quoteIdentifierRepository, latestQuoteRepository, transactionTemplate,
+                        new QuoteHistoryCache(1000, Duration.ofHours(1), meterRegistry), quoteStoreUpdater, identifierResolver);
     }
 
     @Test
     void getEmptyQuoteHistoryForExistingIsin() {
         // Given:
-        JPAQuoteIdentifier quoteIdentifier = jpaQuoteService.createIdentifier(VALID_ISIN);
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
         quoteIdentifier.setQuoteSource(QuoteSource.BANK_API);
         quoteIdentifier.setFetchDate(ZonedDateTime.now());
-        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteIdentifierRepository.findIdsByIsinIn(List.of(VALID_ISIN))).thenReturn(List.of(isinId(VALID_ISIN, quoteIdentifier.getId())));
+        when(quoteIdentifierRepository.findById(quoteIdentifier.getId())).thenReturn(Optional.of(quoteIdentifier));
         when(quoteRepository.findAllByIdentifier(quoteIdentifier)).thenReturn(List.of());
 
         // When:
@@ -89,14 +146,89 @@ class JPAQuoteServiceTest {
         verifyNoMoreInteractions(quoteRepository, quoteIdentifierRepository);
     }
 
+    @Test
+    void getQuoteHistoryIsCachedUntilQuoteIsStored() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteRepository.findAllByIdentifier(quoteIdentifier)).thenReturn(List.of()).thenReturn(List.of(createQuote(quoteIdentifier)));
+        IsinQuote quoteFromBank = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 1.1, LocalDate.now()), QuoteSource.BANK_API, false);
+        // the id of the identifier is cached by the first read
+        when(quoteIdentifierRepository.findAndLockById(quoteIdentifier.getId())).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteIdentifierRepository.findById(quoteIdentifier.getId())).thenReturn(Optional.of(quoteIdentifier));
+        mockTransactionTemplate();
+
+        IsinQuoteHistory firstHistory = jpaQuoteService.getQuoteHistory(VALID_ISIN);
+        IsinQuoteHistory cachedHistory = jpaQuoteService.getQuoteHistory(VALID_ISIN);
+        jpaQuoteService.storeQuote(quoteFromBank);
+        IsinQuoteHistory updatedHistory = jpaQuoteService.getQuoteHistory(VALID_ISIN);
+
+        assertThat(cachedHistory).isSameAs(firstHistory);
+        assertThat(firstHistory.getQuotes()).isEmpty();
+        assertThat(updatedHistory.getQuotes()).containsOnlyKeys(LocalDate.now());
+        assertThatThrownBy(() -> updatedHistory.addQuote(LocalDate.now(), "EUR", 1.2)).isInstanceOf(UnsupportedOperationException.class);
+        verify(quoteRepository, times(2)).findAllByIdentifier(quoteIdentifier);
+        verify(quoteIdentifierRepository).findOneByIsin(VALID_ISIN);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", QuoteHistoryCache.CACHE_NAME).tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void getQuoteHistoryForDateRangeQueriesOnlyRangeIfNotCached() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        LocalDate from = LocalDate.now().minusDays(30);
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteRepository.findAllByIdentifierAndQuoteDateBetweenOrderByQuoteDate(quoteIdentifier, from, LocalDate.now())).thenReturn(
+                        List.of(createQuote(quoteIdentifier)));
+
+        IsinQuoteHistory quoteHistory = jpaQuoteService.getQuoteHistory(VALID_ISIN, from, LocalDate.now());
+
+        assertThat(quoteHistory.getQuotes()).containsOnlyKeys(LocalDate.now());
+        verifyNoMoreInteractions(quoteRepository);
+    }
+
+    @Test
+    void getQuoteHistoryForDateRangeUsesCachedHistory() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        JPAQuote oldQuote = createQuote(quoteIdentifier);
+        oldQuote.setQuoteDate(LocalDate.now().minusDays(40));
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteRepository.findAllByIdentifier(quoteIdentifier)).thenReturn(List.of(oldQuote, createQuote(quoteIdentifier)));
+        jpaQuoteService.getQuoteHistory(VALID_ISIN);
+
+        IsinQuoteHistory quoteHistory = jpaQuoteService.getQuoteHistory(VALID_ISIN, LocalDate.now().minusDays(30), LocalDate.now());
+        Optional<Quote> quoteAsOf = jpaQuoteService.getQuoteAsOf(VALID_ISIN, LocalDate.now().minusDays(1));
+        IsinQuoteHistory openRangeHistory = jpaQuoteService.getQuoteHistory(VALID_ISIN, LocalDate.MIN, LocalDate.MAX);
+
+        assertThat(quoteHistory.getQuotes()).containsOnlyKeys(LocalDate.now());
+        assertThat(openRangeHistory.getQuotes()).containsOnlyKeys(LocalDate.now().minusDays(40), LocalDate.now());
+        assertThat(quoteAsOf).isEmpty();
+        verify(quoteRepository).findAllByIdentifier(quoteIdentifier);
+        verifyNoMoreInteractions(quoteRepository);
+    }
+
+    @Test
+    void getQuoteAsOfReturnsLatestValidQuoteBeforeDate() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        JPAQuote quote = createQuote(quoteIdentifier);
+        quote.setQuoteDate(LocalDate.now().minusDays(Quote.MAX_DAYS_VALID_QUOTE));
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteRepository.findFirstByIdentifierIdAndQuoteDateLessThanEqualOrderByQuoteDateDesc(quoteIdentifier.getId(), LocalDate.now())).thenReturn(
+                        Optional.of(quote));
+        when(quoteRepository.findFirstByIdentifierIdAndQuoteDateLessThanEqualOrderByQuoteDateDesc(quoteIdentifier.getId(), LocalDate.now().plusDays(1)))
+                        .thenReturn(Optional.of(quote));
+
+        assertThat(jpaQuoteService.getQuoteAsOf(VALID_ISIN, LocalDate.now())).contains(quote.toQuote());
+        assertThat(jpaQuoteService.getQuoteAsOf(VALID_ISIN, LocalDate.now().plusDays(1))).isEmpty();
+        // the second lookup uses the cached id without loading the identifier
+        verify(quoteIdentifierRepository).findOneByIsin(VALID_ISIN);
+    }
+
     @Test
     void doNotFetchForInvalidIsin() {
         // Given:
-        JPAQuoteIdentifier quoteIdentifier = jpaQuoteService.createIdentifier(INVALID_ISIN);
-        when(quoteIdentifierRepository.findOneByIsin(INVALID_ISIN)).thenReturn(Optional.empty());
-        when(quoteIdentifierRepository.findAndLockOneByIsin(INVALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
-        when(quoteRepository.findAllByIdentifier(quoteIdentifier)).thenReturn(List.of());
-        mockTransactionTemplate();
+        when(quoteIdentifierRepository.findIdsByIsinIn(List.of(INVALID_ISIN))).thenReturn(List.of());
+        mockSaveAllIdentifiers();
+        when(quoteIdentifierRepository.findById(any())).thenAnswer(invocation -> Optional.of(identifierWithId(INVALID_ISIN, invocation.getArgument(0))));
+        when(quoteRepository.findAllByIdentifier(any())).thenReturn(List.of());
 
         // When:
         IsinQuoteHistory quoteHistory = jpaQuoteService.getQuoteHistory(INVALID_ISIN);
@@ -108,41 +240,148 @@ class JPAQuoteServiceTest {
         verifyNoMoreInteractions(quoteRepository, quoteIdentifierRepository);
     }
 
+    @Test
+    void createIdentifiersOfDifferentIsinsConcurrently() throws Exception {
+        StripedLocks locks = new StripedLocks(QuoteIdentifierResolver.LOCK_STRIPES);
+        assertThat(locks.getLock(VALID_ISIN)).isNotSameAs(locks.getLock(OTHER_VALID_ISIN));
+        CountDownLatch creatingIdentifier = new CountDownLatch(1);
+        CountDownLatch releaseIdentifier = new CountDownLatch(1);
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.empty()).thenAnswer(invocation -> {
+            creatingIdentifier.countDown();
+            releaseIdentifier.await();
+            return Optional.empty();
+        });
+        when(quoteIdentifierRepository.findOneByIsin(OTHER_VALID_ISIN)).thenReturn(Optional.empty());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Optional<Quote>> slowLookup = executor.submit(() -> jpaQuoteService.getQuoteAsOf(VALID_ISIN, LocalDate.now()));
+            assertThat(creatingIdentifier.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // must not wait for the creation of the identifier of the other ISIN
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> jpaQuoteService.getQuoteAsOf(OTHER_VALID_ISIN, LocalDate.now()));
+
+            releaseIdentifier.countDown();
+            assertThat(slowLookup.get(5, TimeUnit.SECONDS)).isEmpty();
+        } finally {
+            releaseIdentifier.countDown();
+            executor.shutdownNow();
+        }
+        verify(quoteIdentifierRepository, times(2)).save(any());
+    }
+
+    @Test
+    void createIdentifierWithUpsert() {
+        createQuoteService(true);
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        clearInvocations(quoteIdentifierRepository);
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteRepository.findAllByIdentifier(quoteIdentifier)).thenReturn(List.of());
+        mockTransactionTemplate();
+
+        IsinQuoteHistory quoteHistory = jpaQuoteService.getQuoteHistory(VALID_ISIN);
+
+        assertThat(quoteHistory.getIsin()).isEqualTo(VALID_ISIN);
+        verify(quoteIdentifierRepository).insertIfAbsent(eq(VALID_ISIN), any(), eq("n/a"), eq(QuoteSource.MANUAL.name()));
+        verify(quoteIdentifierRepository, never()).save(any());
+        loggingInterceptor.assertNoInfos();
+    }
+
+    @Test
+    void getQuoteHistoriesLoadsAllIsinsAtOnceAndCreatesUnknownIsins() {
+        JPAQuoteIdentifier existingIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        existingIdentifier.setId(1L);
+        JPAQuoteIdentifier newIdentifier = identifierResolver.createIdentifier(OTHER_VALID_ISIN);
+        newIdentifier.setId(2L);
+        JPAQuote quote = createQuote(existingIdentifier);
+        List<String> isins = List.of(VALID_ISIN, OTHER_VALID_ISIN);
+        when(quoteIdentifierRepository.findAllByIsinIn(isins)).thenReturn(List.of(existingIdentifier))
+                        .thenReturn(List.of(existingIdentifier, newIdentifier));
+        when(quoteRepository.findAllByIdentifierIn(List.of(existingIdentifier, newIdentifier))).thenReturn(List.of(quote));
+
+        Map<String, IsinQuoteHistory> histories = jpaQuoteService.getQuoteHistories(List.of(OTHER_VALID_ISIN, VALID_ISIN, VALID_ISIN));
+
+        assertThat(histories).containsOnlyKeys(VALID_ISIN, OTHER_VALID_ISIN);
+        assertThat(histories.get(VALID_ISIN).getQuotes()).containsOnlyKeys(LocalDate.now());
+        assertThat(histories.get(OTHER_VALID_ISIN).getQuotes()).isEmpty();
+        verify(quoteIdentifierRepository).saveAll(argThat(identifiers -> List.of(OTHER_VALID_ISIN).equals(
+                        StreamSupport.stream(identifiers.spliterator(), false).map(JPAQuoteIdentifier::getIsin).collect(Collectors.toList()))));
+        loggingInterceptor.assertNoWarnings();
+    }
+
+    @Test
+    void getLatestQuotesReadsSnapshots() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        JPAQuote quote = createQuote(quoteIdentifier);
+        when(latestQuoteRepository.findAllByIsinIn(List.of(VALID_ISIN, OTHER_VALID_ISIN))).thenReturn(List.of(JPALatestQuote.of(quoteIdentifier, quote)));
+
+        Map<String, Quote> latestQuotes = jpaQuoteService.getLatestQuotes(List.of(OTHER_VALID_ISIN, VALID_ISIN));
+
+        assertThat(latestQuotes).containsExactly(Map.entry(VALID_ISIN, quote.toQuote()));
+        verifyNoInteractions(quoteRepository);
+    }
+
+    @Test
+    void getPriceMatrixLoadsRangeOfAllIsinsAtOnceAndForwardFillsValidQuotes() {
+        LocalDate from = LocalDate.now().minusDays(10);
+        JPAQuoteIdentifier identifier = identifierResolver.createIdentifier(VALID_ISIN);
+        identifier.setId(1L);
+        JPAQuoteIdentifier otherIdentifier = identifierResolver.createIdentifier(OTHER_VALID_ISIN);
+        otherIdentifier.setId(2L);
+        when(quoteIdentifierRepository.findAllByIsinIn(List.of(VALID_ISIN, OTHER_VALID_ISIN))).thenReturn(List.of(identifier, otherIdentifier));
+        when(quoteRepository.findAllByIdentifierInAndQuoteDateBetween(List.of(identifier, otherIdentifier), from.minusDays(Quote.MAX_DAYS_VALID_QUOTE),
+                        LocalDate.now())).thenReturn(List.of(createQuote(identifier, from.minusDays(2), 1), createQuote(otherIdentifier, from, 3),
+                                        createQuote(identifier, from.plusDays(1), 2), createQuote(otherIdentifier, LocalDate.now(), 4)));
+
+        PriceMatrix matrix = jpaQuoteService.getPriceMatrix(List.of(OTHER_VALID_ISIN, VALID_ISIN), from, LocalDate.now(), FillPolicy.FORWARD_FILL);
+
+        assertThat(matrix.getIsins()).containsExactly(OTHER_VALID_ISIN, VALID_ISIN);
+        assertThat(matrix.getDates()).containsExactly(from, from.plusDays(1), LocalDate.now());
+        assertThat(matrix.getColumn(0)).containsExactly(3, 3, 4);
+        assertThat(matrix.getColumn(1)).containsExactly(1, 2, Double.NaN);
+        verifyNoMoreInteractions(quoteRepository);
+    }
+
     @Test
     void storeQuoteFromBankIfNoCurrentQuoteAndUpdateIdentifier() {
-        JPAQuoteIdentifier quoteIdentifier = jpaQuoteService.createIdentifier(VALID_ISIN);
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
         assertThat(quoteIdentifier.getQuoteSource()).isEqualTo(QuoteSource.MANUAL);
 
         IsinQuote quoteFromBank = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.3, LocalDate.now()), QuoteSource.BANK_API, false);
 
-        when(quoteIdentifierRepository.findAndLockOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        mockIdentifierLock(quoteIdentifier);
         when(quoteRepository.findByIdentifierAndQuoteDate(quoteIdentifier, quoteFromBank.getQuote().getDate())).thenReturn(Optional.empty());
-        when(quoteRepository.findFirstByIdentifierOrderByQuoteDateDesc(quoteIdentifier)).thenReturn(Optional.empty());
+        when(latestQuoteRepository.findById(quoteIdentifier.getId())).thenReturn(Optional.empty());
+        jpaQuoteService.setApplicationEventPublisher(eventPublisher);
 
         jpaQuoteService.storeQuote(quoteFromBank);
 
         verify(quoteRepository).save(quoteCaptor.capture());
         JPAQuote quote = quoteCaptor.getValue();
+        verify(latestQuoteRepository).save(latestQuoteCaptor.capture());
+        assertThat(latestQuoteCaptor.getValue().toQuote()).isEqualTo(quote.toQuote());
+        assertThat(latestQuoteCaptor.getValue().getId()).isEqualTo(quoteIdentifier.getId());
         assertThat(quote.getQuoteDate()).isEqualTo(LocalDate.now());
         assertThat(quote.getQuoteAmount()).isCloseTo(12.3, Offset.offset(0.001));
         assertThat(quote.getQuoteCurrency()).isEqualTo("EUR");
         assertThat(quoteIdentifier.getQuoteSource()).isEqualTo(QuoteSource.BANK_API);
+        assertThat(quoteIdentifier.getHistoryFetchDate()).isNull();
+        verify(eventPublisher).publishEvent(new QuoteChangeEvent.NewQuote(VALID_ISIN, quote.toQuote(), QuoteSource.BANK_API));
         verify(quoteIdentifierRepository, times(2)).save(any());
         verifyNoMoreInteractions(quoteRepository, quoteIdentifierRepository);
     }
 
     @Test
     void doNotSaveWhenQuoteSourceRefinitiv() {
-        JPAQuoteIdentifier quoteIdentifier = jpaQuoteService.createIdentifier(VALID_ISIN);
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
         quoteIdentifier.setQuoteSource(QuoteSource.REFINITIV_RKD);
         quoteIdentifier.setMarketPlace("n/a");
 
         IsinQuote quoteFromBank = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.3, LocalDate.now()), QuoteSource.BANK_API, false);
 
-        when(quoteIdentifierRepository.findAndLockOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        mockIdentifierLock(quoteIdentifier);
         when(quoteRepository.findByIdentifierAndQuoteDate(quoteIdentifier, quoteFromBank.getQuote().getDate())).thenReturn(Optional.empty());
         final JPAQuote quoteFromDb = createQuote(quoteIdentifier);
-        when(quoteRepository.findFirstByIdentifierOrderByQuoteDateDesc(quoteIdentifier)).thenReturn(Optional.of(quoteFromDb));
+        when(latestQuoteRepository.findById(quoteIdentifier.getId())).thenReturn(Optional.of(JPALatestQuote.of(quoteIdentifier, quoteFromDb)));
 
         jpaQuoteService.storeQuote(quoteFromBank);
 
@@ -152,13 +391,13 @@ class JPAQuoteServiceTest {
 
     @Test
     void saveBankQuoteAndUpdateIdentifierIfMarketPlaceChanged() {
-        JPAQuoteIdentifier quoteIdentifier = jpaQuoteService.createIdentifier(VALID_ISIN);
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
         quoteIdentifier.setQuoteSource(QuoteSource.BANK_API);
 
         assertThat(quoteIdentifier.getMarketPlace()).isNotEqualTo("GER");
         IsinQuote quoteFromBank = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.3, LocalDate.now()), QuoteSource.BANK_API, false);
 
-        when(quoteIdentifierRepository.findAndLockOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        mockIdentifierLock(quoteIdentifier);
         when(quoteRepository.findByIdentifierAndQuoteDate(quoteIdentifier, quoteFromBank.getQuote().getDate())).thenReturn(Optional.empty());
 
         jpaQuoteService.storeQuote(quoteFromBank);
@@ -170,17 +409,17 @@ class JPAQuoteServiceTest {
 
     @Test
     void warnIfNoValidQuote() {
-        JPAQuoteIdentifier quoteIdentifier = jpaQuoteService.createIdentifier(VALID_ISIN);
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
         quoteIdentifier.setQuoteSource(QuoteSource.REFINITIV_RKD);
         quoteIdentifier.setMarketPlace("n/a");
 
         IsinQuote quoteFromBank = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.3, LocalDate.now()), QuoteSource.BANK_API, false);
 
-        when(quoteIdentifierRepository.findAndLockOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        mockIdentifierLock(quoteIdentifier);
         when(quoteRepository.findByIdentifierAndQuoteDate(quoteIdentifier, quoteFromBank.getQuote().getDate())).thenReturn(Optional.empty());
         final JPAQuote quoteFromDb = createQuote(quoteIdentifier);
         quoteFromDb.setQuoteDate(LocalDate.now().minusYears(1));
-        when(quoteRepository.findFirstByIdentifierOrderByQuoteDateDesc(quoteIdentifier)).thenReturn(Optional.of(quoteFromDb));
+        when(latestQuoteRepository.findById(quoteIdentifier.getId())).thenReturn(Optional.of(JPALatestQuote.of(quoteIdentifier, quoteFromDb)));
 
         jpaQuoteService.storeQuote(quoteFromBank);
 
@@ -191,12 +430,12 @@ class JPAQuoteServiceTest {
 
     @Test
     void doNotSaveIfAlreadySaved() {
-        JPAQuoteIdentifier quoteIdentifier = jpaQuoteService.createIdentifier(VALID_ISIN);
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
         quoteIdentifier.setQuoteSource(QuoteSource.BANK_API);
 
         IsinQuote quoteFromBank = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.3, LocalDate.now()), QuoteSource.BANK_API, false);
 
-        when(quoteIdentifierRepository.findAndLockOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        mockIdentifierLock(quoteIdentifier);
         when(quoteRepository.findByIdentifierAndQuoteDate(quoteIdentifier, quoteFromBank.getQuote().getDate())).thenReturn(
                         Optional.of(createQuote(quoteIdentifier)));
 
@@ -207,10 +446,155 @@ class JPAQuoteServiceTest {
         verify(quoteIdentifierRepository, times(1)).save(any());
     }
 
+    @Test
+    void storeQuoteCreatesMissingIdentifierBeforeItsTransaction() {
+        IsinQuote quoteFromBank = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.3, LocalDate.now()), QuoteSource.BANK_API, false);
+        mockSaveAllIdentifiers();
+        when(quoteIdentifierRepository.findAndLockById(any())).thenAnswer(invocation -> Optional.of(identifierWithId(VALID_ISIN, invocation.getArgument(0))));
+        mockTransactionTemplate();
+
+        jpaQuoteService.storeQuote(quoteFromBank);
+
+        InOrder inOrder = inOrder(quoteIdentifierRepository, transactionTemplate);
+        inOrder.verify(quoteIdentifierRepository).saveAll(any());
+        inOrder.verify(transactionTemplate).execute(any());
+        inOrder.verify(quoteIdentifierRepository).findAndLockById(nextIdentifierId.get());
+        verify(quoteIdentifierRepository, never()).findAndLockOneByIsin(any());
+        verify(quoteRepository).save(any());
+    }
+
+    @Test
+    void storeQuotesStoresFirstQuoteOfIsinsWithoutHistory() {
+        JPAQuoteIdentifier existingIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        existingIdentifier.setId(1L);
+        JPAQuoteIdentifier newIdentifier = identifierResolver.createIdentifier(OTHER_VALID_ISIN);
+        newIdentifier.setId(2L);
+        IsinQuote quoteToday = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("eur", 12.3, LocalDate.now()), QuoteSource.BANK_API, false);
+        IsinQuote quoteYesterday = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.1, LocalDate.now().minusDays(1)), QuoteSource.BANK_API,
+                        false);
+        IsinQuote quoteOfNewIsin = new IsinQuote(null, OTHER_VALID_ISIN, LocalDate.now(), new Quote("USD", 7.0, LocalDate.now()), QuoteSource.BANK_API, false);
+
+        when(quoteIdentifierRepository.findIdsByIsinIn(any())).thenReturn(List.of(isinId(VALID_ISIN, 1L)))
+                        .thenReturn(List.of(isinId(OTHER_VALID_ISIN, 2L)));
+        when(quoteIdentifierRepository.findAndLockAllByIdInOrderById(List.of(1L, 2L))).thenReturn(List.of(existingIdentifier, newIdentifier));
+        mockTransactionTemplate();
+
+        jpaQuoteService.storeQuotes(List.of(quoteToday, quoteYesterday, quoteOfNewIsin));
+
+        verify(latestQuoteRepository).saveAll(latestQuotesCaptor.capture());
+        assertThat(latestQuotesCaptor.getValue()).extracting(JPALatestQuote::getId, JPALatestQuote::getQuoteDate)
+                        .containsExactly(tuple(1L, LocalDate.now()), tuple(2L, LocalDate.now()));
+        verify(quoteIdentifierRepository).saveAll(any());
+        verify(quoteRepository).saveAll(quotesCaptor.capture());
+        assertThat(quotesCaptor.getValue()).extracting(JPAQuote::getQuoteDate, JPAQuote::getQuoteCurrency, JPAQuote::getIdentifier)
+                        .containsExactly(tuple(LocalDate.now(), "EUR", existingIdentifier), tuple(LocalDate.now(), "USD", newIdentifier));
+        assertThat(existingIdentifier.getQuoteSource()).isEqualTo(QuoteSource.BANK_API);
+        assertThat(newIdentifier.getMarketPlace()).isEqualTo("n/a");
+        loggingInterceptor.assertNoWarnings();
+    }
+
+    @Test
+    void storeQuotesIgnoresQuotesOfIsinsWithHistory() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        quoteIdentifier.setId(1L);
+        quoteIdentifier.setQuoteSource(QuoteSource.REFINITIV_RKD);
+        IsinQuote savedQuote = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.3, LocalDate.now()), QuoteSource.BANK_API, false);
+        IsinQuote newQuote = new IsinQuote("GER", VALID_ISIN, LocalDate.now(), new Quote("EUR", 12.1, LocalDate.now().minusDays(1)), QuoteSource.BANK_API, false);
+
+        when(quoteIdentifierRepository.findIdsByIsinIn(any())).thenReturn(List.of(isinId(VALID_ISIN, 1L)));
+        when(quoteIdentifierRepository.findAndLockAllByIdInOrderById(List.of(1L))).thenReturn(List.of(quoteIdentifier));
+        JPAQuote latestQuote = createQuote(quoteIdentifier);
+        latestQuote.setQuoteDate(LocalDate.now().minusYears(1));
+        when(latestQuoteRepository.findAllById(List.of(1L))).thenReturn(List.of(JPALatestQuote.of(quoteIdentifier, latestQuote)));
+        when(quoteRepository.findQuoteDates(any(), any())).thenReturn(List.of(quoteDate(1L, LocalDate.now())));
+        mockTransactionTemplate();
+
+        jpaQuoteService.storeQuotes(List.of(savedQuote, newQuote));
+
+        verify(quoteRepository).saveAll(quotesCaptor.capture());
+        assertThat(quotesCaptor.getValue()).isEmpty();
+        loggingInterceptor.assertWarning("No valid quote for.*");
+        assertThat(quoteIdentifier.getQuoteSource()).isEqualTo(QuoteSource.REFINITIV_RKD);
+    }
+
+    @Test
+    void refreshQuoteHistoryReplacesQuotesWithNewerHistory() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        JPAQuote existingQuote = createQuote(quoteIdentifier);
+        existingQuote.setQuoteDate(LocalDate.now().minusDays(1));
+        IsinQuoteHistory fetchedHistory = new IsinQuoteHistory(VALID_ISIN, "GER", QuoteSource.NDGIT);
+        fetchedHistory.addQuote(LocalDate.now().minusDays(1), "EUR", 1.0);
+        fetchedHistory.addQuote(LocalDate.now(), "EUR", 1.1);
+        when(quoteIdentifierRepository.findAndLockOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteRepository.findAllByIdentifier(quoteIdentifier)).thenReturn(List.of(existingQuote));
+        mockTransactionTemplate();
+        ZonedDateTime refreshStart = ZonedDateTime.now();
+
+        boolean replaced = jpaQuoteService.refreshQuoteHistory(quoteIdentifier, fetchedHistory);
+
+        assertThat(replaced).isTrue();
+        verify(quoteRepository).saveAll(quotesCaptor.capture());
+        assertThat(quotesCaptor.getValue()).extracting(JPAQuote::getQuoteDate).containsExactly(LocalDate.now());
+        assertThat(existingQuote.getQuoteAmount()).isEqualTo(1.0);
+        verify(quoteRepository, never()).deleteByIdentifierAndQuoteDateIn(any(), any());
+        assertThat(quoteIdentifier.getQuoteSource()).isEqualTo(QuoteSource.NDGIT);
+        assertThat(quoteIdentifier.getMarketPlace()).isEqualTo("GER");
+        assertThat(quoteIdentifier.getHistoryFetchDate()).isAfterOrEqualTo(refreshStart);
+    }
+
+    @Test
+    void replaceQuoteHistoryWritesOnlyChangedQuotes() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        List<JPAQuote> existingQuotes = new ArrayList<>();
+        for (int daysPast = 3; daysPast > 0; daysPast--) {
+            JPAQuote existingQuote = createQuote(quoteIdentifier);
+            existingQuote.setId((long) daysPast);
+            existingQuote.setQuoteDate(LocalDate.now().minusDays(daysPast));
+            existingQuote.setQuoteAmount(1.4);
+            existingQuotes.add(existingQuote);
+        }
+        IsinQuoteHistory history = createQuoteHistory(VALID_ISIN, 2, 1, 0);
+        history.addQuote(LocalDate.now().minusDays(1), "EUR", 1.5);
+        mockIdentifierLock(quoteIdentifier);
+        when(quoteRepository.findAllByIdentifier(quoteIdentifier)).thenReturn(existingQuotes);
+        jpaQuoteService.setApplicationEventPublisher(eventPublisher);
+
+        int touchedRows = jpaQuoteService.replaceQuoteHistory(VALID_ISIN, history);
+
+        assertThat(touchedRows).isEqualTo(3);
+        verify(quoteRepository).deleteByIdentifierAndQuoteDateIn(quoteIdentifier, List.of(LocalDate.now().minusDays(3)));
+        verify(quoteRepository).saveAll(quotesCaptor.capture());
+        assertThat(quotesCaptor.getValue()).extracting(JPAQuote::getQuoteDate).containsExactly(LocalDate.now());
+        assertThat(existingQuotes).extracting(JPAQuote::getQuoteAmount).containsExactly(1.4, 1.4, 1.5);
+        verify(latestQuoteRepository).save(latestQuoteCaptor.capture());
+        assertThat(latestQuoteCaptor.getValue().getQuoteDate()).isEqualTo(LocalDate.now());
+        assertThat(quoteIdentifier.getLatestQuoteDate()).isEqualTo(LocalDate.now());
+        assertThat(quoteIdentifier.getQuoteSource()).isEqualTo(QuoteSource.REFINITIV_RKD);
+        verify(eventPublisher).publishEvent(new QuoteChangeEvent.HistoryReplaced(VALID_ISIN, 3));
+    }
+
+    @Test
+    void refreshQuoteHistoryKeepsQuotesIfFetchedHistoryIsEmpty() {
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
+        ZonedDateTime previousFetchDate = quoteIdentifier.getFetchDate();
+        when(quoteIdentifierRepository.findAndLockOneByIsin(VALID_ISIN)).thenReturn(Optional.of(quoteIdentifier));
+        when(quoteRepository.findAllByIdentifier(quoteIdentifier)).thenReturn(List.of(createQuote(quoteIdentifier)));
+        mockTransactionTemplate();
+
+        boolean replaced = jpaQuoteService.refreshQuoteHistory(quoteIdentifier, new IsinQuoteHistory(VALID_ISIN, "GER", QuoteSource.NDGIT));
+
+        assertThat(replaced).isFalse();
+        assertThat(quoteIdentifier.getFetchDate()).isAfter(previousFetchDate);
+        assertThat(quoteIdentifier.getHistoryFetchDate()).isNull();
+        assertThat(quoteIdentifier.getQuoteSource()).isEqualTo(QuoteSource.MANUAL);
+        verify(quoteRepository).findAllByIdentifier(quoteIdentifier);
+        verifyNoMoreInteractions(quoteRepository);
+    }
+
     @ParameterizedTest(name = "index => existingQuotes{0}, newQuotes{1}, expectedInfo{2}, expectedWarning{3}, expectedResult{4}")
     @MethodSource("testData")
     void test(List<JPAQuote> existingQuotes, List<JPAQuote> newQuotes, String expectedInfo, String expectedWarning, boolean expectedResult) {
-        JPAQuoteIdentifier quoteIdentifier = jpaQuoteService.createIdentifier(VALID_ISIN);
+        JPAQuoteIdentifier quoteIdentifier = identifierResolver.createIdentifier(VALID_ISIN);
 
         final boolean shouldReplace = jpaQuoteService.shouldReplaceExistingQuotes(quoteIdentifier, existingQuotes, newQuotes);
 
@@ -265,6 +649,41 @@ class JPAQuoteServiceTest {
         return quote;
     }
 
+    private JPAQuote createQuote(JPAQuoteIdentifier quoteIdentifier, LocalDate date, double amount) {
+        JPAQuote quote = createQuote(quoteIdentifier);
+        quote.setQuoteDate(date);
+        quote.setQuoteAmount(amount);
+        return quote;
+    }
+
+    private static JPAIdentifierQuoteDate quoteDate(Long identifierId, LocalDate date) {
+        return new JPAIdentifierQuoteDate() {
+            @Override
+            public Long getIdentifierId() {
+                return identifierId;
+            }
+
+            @Override
+            public LocalDate getQuoteDate() {
+                return date;
+            }
+        };
+    }
+
+    static JPAIsinIdentifierId isinId(String isin, Long identifierId) {
+        return new JPAIsinIdentifierId() {
+            @Override
+            public String getIsin() {
+                return isin;
+            }
+
+            @Override
+            public Long getIdentifierId() {
+                return identifierId;
+            }
+        };
+    }
+
     private IsinQuoteHistory createQuoteHistory(String isin, int... days) {
         IsinQuoteHistory quoteHistory = new IsinQuoteHistory(isin, "n/a", QuoteSource.REFINITIV_RKD);
         for (int daysPast : days) {
@@ -273,6 +692,29 @@ class JPAQuoteServiceTest {
         return quoteHistory;
     }
 
+    // the id of the identifier is looked up before the transaction of the write, which locks the identifier by it
+    private void mockIdentifierLock(JPAQuoteIdentifier identifier) {
+        when(quoteIdentifierRepository.findIdsByIsinIn(List.of(identifier.getIsin()))).thenReturn(List.of(isinId(identifier.getIsin(), identifier.getId())));
+        when(quoteIdentifierRepository.findAndLockById(identifier.getId())).thenReturn(Optional.of(identifier));
+        mockTransactionTemplate();
+    }
+
+    // assigns the ids like the stubbed save
+    private void mockSaveAllIdentifiers() {
+        when(quoteIdentifierRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<JPAQuoteIdentifier> identifiers = new ArrayList<>();
+            invocation.<Iterable<JPAQuoteIdentifier>>getArgument(0).forEach(identifier -> identifiers.add(quoteIdentifierRepository.save(identifier)));
+            return identifiers;
+        });
+    }
+
+    private static JPAQuoteIdentifier identifierWithId(String isin, Long id) {
+        JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
+        identifier.setIsin(isin);
+        identifier.setId(id);
+        return identifier;
+    }
+
     private void mockTransactionTemplate() {
         doAnswer(invocation -> {
             TransactionCallback<?> callback = invocation.getArgument(0, TransactionCallback.class);
@@ -0,0 +1,102 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import com.wealthpilot.quote.store.util.AggregatedQuote;
+import com.wealthpilot.quote.store.util.Granularity;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+@ExtendWith(MockitoExtension.class)
+class QuoteAggregationServiceTest {
+    private static final String CACHED_ISIN = "DE000A1EWWW0";
+    private static final String STORED_ISIN = "US0378331005";
+    private static final LocalDate FROM = LocalDate.of(2022, 1, 1);
+    private static final LocalDate TO = LocalDate.of(2022, 3, 31);
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private JPAQuoteRepository quoteRepository;
+
+    @Mock
+    private QuoteIdentifierResolver identifierResolver;
+
+    @Mock
+    private QuoteHistoryCache historyCache;
+
+    @Test
+    void aggregatesCachedAndStoredHistoriesInMemory() {
+        IsinQuoteHistory history = new IsinQuoteHistory(CACHED_ISIN, "GER", QuoteSource.NDGIT);
+        history.addQuote(FROM.minusDays(1), "EUR", 1);
+        history.addQuote(FROM.plusDays(1), "EUR", 2);
+        history.addQuote(FROM.plusDays(40), "EUR", 3);
+        when(historyCache.getIfPresent(CACHED_ISIN)).thenReturn(history.toUnmodifiable());
+        JPAQuoteIdentifier identifier = identifier();
+        when(identifierResolver.getAll(List.of(STORED_ISIN))).thenReturn(List.of(identifier));
+        mockReadOnlyTransaction();
+        when(quoteRepository.findAllByIdentifierInAndQuoteDateBetween(List.of(identifier), FROM, TO))
+                        .thenReturn(List.of(quote(identifier, FROM.plusDays(2), 10), quote(identifier, FROM.plusDays(3), 20)));
+        QuoteAggregationService service = new QuoteAggregationService(entityManager, quoteRepository, identifierResolver, historyCache, false);
+
+        Map<String, List<AggregatedQuote>> histories = service.getAggregatedHistories(List.of(CACHED_ISIN, STORED_ISIN), FROM, TO, Granularity.MONTH);
+
+        assertThat(histories.get(CACHED_ISIN)).extracting(AggregatedQuote::getLast).containsExactly(2.0, 3.0);
+        assertThat(histories.get(STORED_ISIN)).singleElement().satisfies(month -> {
+            assertThat(month.getPeriodStart()).isEqualTo(FROM);
+            assertThat(month.getAverage()).isEqualTo(15);
+        });
+        verify(identifierResolver).inReadOnlyTransaction(eq(List.of(STORED_ISIN)), any());
+        verify(entityManager, never()).createNativeQuery(any());
+    }
+
+    @Test
+    void returnsEmptyHistoryForUnknownIsin() {
+        when(identifierResolver.getAll(List.of(STORED_ISIN))).thenReturn(List.of());
+        mockReadOnlyTransaction();
+        QuoteAggregationService service = new QuoteAggregationService(entityManager, quoteRepository, identifierResolver, historyCache, true);
+
+        assertThat(service.getAggregatedHistory(STORED_ISIN, FROM, TO, Granularity.WEEK)).isEmpty();
+        verify(entityManager, never()).createNativeQuery(any());
+    }
+
+    private void mockReadOnlyTransaction() {
+        when(identifierResolver.inReadOnlyTransaction(any(), any())).thenAnswer(
+                        invocation -> invocation.<TransactionCallback<?>>getArgument(1).doInTransaction(mock(TransactionStatus.class)));
+    }
+
+    private static JPAQuoteIdentifier identifier() {
+        JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
+        identifier.setId(5L);
+        identifier.setIsin(STORED_ISIN);
+        return identifier;
+    }
+
+    private static JPAQuote quote(JPAQuoteIdentifier identifier, LocalDate date, double amount) {
+        JPAQuote quote = new JPAQuote();
+        quote.setIdentifier(identifier);
+        quote.setQuoteDate(date);
+        quote.setQuoteCurrency("EUR");
+        quote.setQuoteAmount(amount);
+        return quote;
+    }
+}
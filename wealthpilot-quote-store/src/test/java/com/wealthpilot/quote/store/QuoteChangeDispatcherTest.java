@@ -0,0 +1,172 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import com.wealthpilot.quote.store.util.BackPressurePolicy;
+import com.wealthpilot.quote.store.util.QuoteChangeEvent;
+import com.wealthpilot.quote.store.util.QuoteChangeListener;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class QuoteChangeDispatcherTest {
+    private static final String VALID_ISIN = "DE000A1EWWW0";
+    private static final String OTHER_VALID_ISIN = "US0378331005";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private QuoteChangeDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.destroy();
+    }
+
+    @Test
+    void deliversEventsInBatchesInDispatchOrder() {
+        RecordingListener listener = new RecordingListener(BackPressurePolicy.DROP_OLDEST);
+        listener.release.countDown();
+        createDispatcher(listener, 10, Duration.ofSeconds(10));
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(new QuoteChangeEvent.HistoryReplaced(VALID_ISIN, i));
+        }
+
+        assertThat(listener.awaitEvents(5)).extracting(event -> ((QuoteChangeEvent.HistoryReplaced) event).getTouchedQuotes()).containsExactly(0, 1, 2, 3, 4);
+        assertThat(listener.batchSizes).allMatch(size -> size <= 2);
+        assertThat(meterRegistry.get(QuoteChangeDispatcher.LAG_TIMER).timer().count()).isEqualTo(5);
+    }
+
+    @Test
+    void dropsOldestEventsOfFullQueue() {
+        RecordingListener listener = new RecordingListener(BackPressurePolicy.DROP_OLDEST);
+        createDispatcher(listener, 2, Duration.ofSeconds(10));
+        dispatchWhileListenerIsBusy(listener, VALID_ISIN, VALID_ISIN, VALID_ISIN);
+
+        assertThat(listener.awaitEvents(3)).extracting(QuoteChangeDispatcherTest::touchedQuotes).containsExactly(0, 2, 3);
+        assertThat(counter(QuoteChangeDispatcher.DROPPED_COUNTER)).isEqualTo(1);
+    }
+
+    @Test
+    void coalescesQueuedEventsByIsin() {
+        RecordingListener listener = new RecordingListener(BackPressurePolicy.COALESCE_BY_ISIN);
+        createDispatcher(listener, 10, Duration.ofSeconds(10));
+        dispatchWhileListenerIsBusy(listener, VALID_ISIN, OTHER_VALID_ISIN, VALID_ISIN);
+
+        assertThat(listener.awaitEvents(3)).extracting(QuoteChangeEvent::getIsin).containsExactly(VALID_ISIN, VALID_ISIN, OTHER_VALID_ISIN);
+        assertThat(touchedQuotes(listener.events.get(1))).isEqualTo(3);
+        assertThat(counter(QuoteChangeDispatcher.COALESCED_COUNTER)).isEqualTo(1);
+    }
+
+    @Test
+    void blocksDispatchUntilTimeoutIfQueueIsFull() {
+        RecordingListener listener = new RecordingListener(BackPressurePolicy.BLOCK);
+        createDispatcher(listener, 1, Duration.ofMillis(50));
+
+        dispatchWhileListenerIsBusy(listener, VALID_ISIN, VALID_ISIN);
+
+        assertThat(listener.awaitEvents(2)).extracting(QuoteChangeDispatcherTest::touchedQuotes).containsExactly(0, 1);
+        assertThat(counter(QuoteChangeDispatcher.DROPPED_COUNTER)).isEqualTo(1);
+    }
+
+    @Test
+    void continuesAfterFailedListener() {
+        RecordingListener listener = new RecordingListener(BackPressurePolicy.DROP_OLDEST) {
+            @Override
+            public void onQuoteChanges(List<QuoteChangeEvent> events) {
+                super.onQuoteChanges(events);
+                if (touchedQuotes(events.get(0)) == 0) {
+                    throw new IllegalStateException("failed");
+                }
+            }
+        };
+        listener.release.countDown();
+        createDispatcher(listener, 10, Duration.ofSeconds(10));
+
+        dispatcher.dispatch(new QuoteChangeEvent.HistoryReplaced(VALID_ISIN, 0));
+        listener.awaitEvents(1);
+        dispatcher.dispatch(new QuoteChangeEvent.HistoryReplaced(VALID_ISIN, 1));
+
+        assertThat(listener.awaitEvents(2)).hasSize(2);
+        assertThat(counter(QuoteChangeDispatcher.FAILED_COUNTER)).isEqualTo(1);
+    }
+
+    private void createDispatcher(QuoteChangeListener listener, int capacity, Duration blockTimeout) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("listener", listener);
+        dispatcher = new QuoteChangeDispatcher(beanFactory.getBeanProvider(QuoteChangeListener.class), meterRegistry, capacity, 2, blockTimeout);
+    }
+
+    // dispatches a first event that keeps the listener busy until the events of the given ISINs are dispatched, numbered from 1
+    private void dispatchWhileListenerIsBusy(RecordingListener listener, String... isins) {
+        dispatcher.dispatch(new QuoteChangeEvent.HistoryReplaced(VALID_ISIN, 0));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> listener.entered.await());
+        for (int i = 0; i < isins.length; i++) {
+            dispatcher.dispatch(new QuoteChangeEvent.HistoryReplaced(isins[i], i + 1));
+        }
+        listener.release.countDown();
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+
+    private static int touchedQuotes(QuoteChangeEvent event) {
+        return ((QuoteChangeEvent.HistoryReplaced) event).getTouchedQuotes();
+    }
+
+    private static class RecordingListener implements QuoteChangeListener {
+        private final BackPressurePolicy policy;
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<QuoteChangeEvent> events = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        RecordingListener(BackPressurePolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void onQuoteChanges(List<QuoteChangeEvent> batch) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (events) {
+                events.addAll(batch);
+                batchSizes.add(batch.size());
+                events.notifyAll();
+            }
+        }
+
+        @Override
+        public BackPressurePolicy getBackPressurePolicy() {
+            return policy;
+        }
+
+        List<QuoteChangeEvent> awaitEvents(int count) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            synchronized (events) {
+                while (events.size() < count && System.nanoTime() < deadline) {
+                    try {
+                        events.wait(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                return new ArrayList<>(events);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import com.wealthpilot.quote.store.util.QuoteSource;
+import com.wealthpilot.quote.store.util.QuoteType;
+
+class QuoteExportFormatTest {
+
+    private static final ZonedDateTime FETCH_DATE = ZonedDateTime.now(ZoneId.systemDefault()).truncatedTo(ChronoUnit.MILLIS);
+
+    @ParameterizedTest
+    @EnumSource(QuoteExportFormat.class)
+    void readsRowsAsWritten(QuoteExportFormat format) throws IOException {
+        List<QuoteExportRow> rows = List.of(
+                        new QuoteExportRow("DE0007164600", FETCH_DATE, "GER", QuoteSource.NDGIT, LocalDate.of(1999, 12, 31), 123.45, "EUR", QuoteType.PRICE),
+                        new QuoteExportRow("DE0007164600", FETCH_DATE, "GER", QuoteSource.NDGIT, LocalDate.of(2022, 6, 1), 0.1 + 0.2, "EUR", QuoteType.PRICE),
+                        new QuoteExportRow("DE000A1EWWW0", FETCH_DATE, "n/a", QuoteSource.MANUAL, null, null, null, null),
+                        new QuoteExportRow("US0378331005", FETCH_DATE.minusYears(1), "a \"quoted\", multi\nline place", QuoteSource.REFINITIV_RDP,
+                                        LocalDate.of(1960, 1, 1), -1.0, "%", QuoteType.PERCENTAGE));
+
+        assertThat(readAll(format, write(format, rows))).isEqualTo(rows);
+    }
+
+    @ParameterizedTest
+    @EnumSource(QuoteExportFormat.class)
+    void readsEmptyExport(QuoteExportFormat format) throws IOException {
+        assertThat(readAll(format, write(format, List.of()))).isEmpty();
+    }
+
+    @ParameterizedTest
+    @EnumSource(QuoteExportFormat.class)
+    void rejectsOtherFiles(QuoteExportFormat format) {
+        assertThatThrownBy(() -> readAll(format, "no quotes in here".getBytes())).isInstanceOf(StreamCorruptedException.class);
+        if (format == QuoteExportFormat.BINARY) {
+            for (long length : new long[] { -1, BinaryQuoteExport.MAX_RECORD_LENGTH + 1L, 1L << 32 }) {
+                assertThatThrownBy(() -> readAll(format, binaryExportWithRecordLength(length))).isInstanceOf(StreamCorruptedException.class);
+            }
+        }
+    }
+
+    private static byte[] binaryExportWithRecordLength(long length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(BinaryQuoteExport.MAGIC);
+        out.writeByte(BinaryQuoteExport.VERSION);
+        BinaryQuoteExport.writeVarLong(out, length);
+        out.write(new byte[16]);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] write(QuoteExportFormat format, List<QuoteExportRow> rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        QuoteExportWriter writer = format.newWriter(out);
+        for (QuoteExportRow row : rows) {
+            writer.write(row);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    private static List<QuoteExportRow> readAll(QuoteExportFormat format, byte[] bytes) throws IOException {
+        QuoteExportReader reader = format.newReader(new ByteArrayInputStream(bytes));
+        List<QuoteExportRow> rows = new ArrayList<>();
+        for (QuoteExportRow row = reader.read(); row != null; row = reader.read()) {
+            rows.add(row);
+        }
+        return rows;
+    }
+}
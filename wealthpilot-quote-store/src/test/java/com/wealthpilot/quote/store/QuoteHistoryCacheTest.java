@@ -0,0 +1,53 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class QuoteHistoryCacheTest {
+
+    private static final String ISIN = "DE000A1EWWW0";
+    private static final String OTHER_ISIN = "US0378331005";
+
+    private final QuoteHistoryCache cache = new QuoteHistoryCache(1000, Duration.ofHours(1), new SimpleMeterRegistry());
+
+    @Test
+    void bulkLoadCachesMissingHistories() {
+        IsinQuoteHistory cached = cache.get(ISIN, QuoteHistoryCacheTest::history);
+
+        Map<String, IsinQuoteHistory> histories = cache.getAll(List.of(ISIN, OTHER_ISIN), isins -> {
+            assertThat(isins).containsExactly(OTHER_ISIN);
+            return Map.of(OTHER_ISIN, history(OTHER_ISIN));
+        });
+
+        assertThat(histories).containsOnlyKeys(ISIN, OTHER_ISIN);
+        assertThat(histories.get(ISIN)).isSameAs(cached);
+        assertThat(cache.getIfPresent(OTHER_ISIN)).isSameAs(histories.get(OTHER_ISIN));
+    }
+
+    @Test
+    void bulkLoadDoesNotCacheHistoryEvictedDuringLoading() {
+        Map<String, IsinQuoteHistory> histories = cache.getAll(List.of(ISIN, OTHER_ISIN), isins -> {
+            Map<String, IsinQuoteHistory> loaded = Map.of(ISIN, history(ISIN), OTHER_ISIN, history(OTHER_ISIN));
+            // a write of the ISIN commits after the histories were read
+            cache.evict(ISIN);
+            return loaded;
+        });
+
+        assertThat(histories).containsOnlyKeys(ISIN, OTHER_ISIN);
+        assertThat(cache.getIfPresent(ISIN)).isNull();
+        assertThat(cache.getIfPresent(OTHER_ISIN)).isNotNull();
+    }
+
+    private static IsinQuoteHistory history(String isin) {
+        return new IsinQuoteHistory(isin, "GER", QuoteSource.NDGIT);
+    }
+}
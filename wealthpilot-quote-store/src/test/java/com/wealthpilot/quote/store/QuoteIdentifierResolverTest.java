@@ -0,0 +1,154 @@
+package com.wealthpilot.quote.store;
+
+import static com.wealthpilot.quote.store.JPAQuoteServiceTest.isinId;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class QuoteIdentifierResolverTest {
+    private static final String VALID_ISIN = "DE000A1EWWW0";
+    private static final String OTHER_VALID_ISIN = "US0378331005";
+
+    @Mock
+    private JPAQuoteIdentifierRepository quoteIdentifierRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private QuoteIdentifierResolver identifierResolver;
+
+    @BeforeEach
+    void setUp() {
+        identifierResolver = new QuoteIdentifierResolver(quoteIdentifierRepository, transactionTemplate, meterRegistry, 1000, Duration.ofHours(1), false);
+    }
+
+    @Test
+    void getLoadsCachedIdByPrimaryKey() {
+        JPAQuoteIdentifier identifier = identifier(VALID_ISIN, 5L);
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(identifier));
+        when(quoteIdentifierRepository.findById(5L)).thenReturn(Optional.of(identifier));
+
+        assertThat(identifierResolver.get(VALID_ISIN)).isSameAs(identifier);
+        assertThat(identifierResolver.get(VALID_ISIN)).isSameAs(identifier);
+        assertThat(identifierResolver.getId(VALID_ISIN)).isEqualTo(5L);
+
+        verify(quoteIdentifierRepository).findOneByIsin(VALID_ISIN);
+        verify(quoteIdentifierRepository).findById(5L);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", QuoteIdentifierResolver.CACHE_NAME).tag("result", "hit").functionCounter().count())
+                        .isEqualTo(2);
+    }
+
+    @Test
+    void getResolvesIsinAgainIfCachedIdIsOutdated() {
+        JPAQuoteIdentifier replacedIdentifier = identifier(VALID_ISIN, 5L);
+        JPAQuoteIdentifier identifier = identifier(VALID_ISIN, 6L);
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(replacedIdentifier)).thenReturn(Optional.of(identifier));
+        when(quoteIdentifierRepository.findById(5L)).thenReturn(Optional.empty());
+        when(quoteIdentifierRepository.findAndLockById(6L)).thenReturn(Optional.of(identifier));
+        identifierResolver.get(VALID_ISIN);
+
+        assertThat(identifierResolver.get(VALID_ISIN)).isSameAs(identifier);
+        assertThat(identifierResolver.getAndLock(VALID_ISIN)).isSameAs(identifier);
+
+        verify(quoteIdentifierRepository, never()).findAndLockOneByIsin(any());
+    }
+
+    @Test
+    void findAndLockAllLocksByIdInOrderOfIds() {
+        JPAQuoteIdentifier identifier = identifier(VALID_ISIN, 5L);
+        JPAQuoteIdentifier otherIdentifier = identifier(OTHER_VALID_ISIN, 3L);
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.of(identifier));
+        when(quoteIdentifierRepository.findIdsByIsinIn(List.of(OTHER_VALID_ISIN))).thenReturn(List.of(isinId(OTHER_VALID_ISIN, 3L)));
+        when(quoteIdentifierRepository.findAndLockAllByIdInOrderById(List.of(3L, 5L))).thenReturn(List.of(otherIdentifier, identifier));
+        identifierResolver.get(VALID_ISIN);
+
+        assertThat(identifierResolver.findAndLockAll(List.of(VALID_ISIN, OTHER_VALID_ISIN))).containsExactly(otherIdentifier, identifier);
+        assertThat(identifierResolver.findAndLockAll(List.of(VALID_ISIN, OTHER_VALID_ISIN))).containsExactly(otherIdentifier, identifier);
+
+        verify(quoteIdentifierRepository).findIdsByIsinIn(any());
+        verify(quoteIdentifierRepository, never()).findAndLockAllByIsinInOrderByIsin(any());
+    }
+
+    @Test
+    void findAndLockAllLocksIdentifiersOfOutdatedIdsByIsin() {
+        JPAQuoteIdentifier identifier = identifier(VALID_ISIN, 6L);
+        when(quoteIdentifierRepository.findIdsByIsinIn(List.of(VALID_ISIN))).thenReturn(List.of(isinId(VALID_ISIN, 5L)));
+        when(quoteIdentifierRepository.findAndLockAllByIdInOrderById(List.of(5L))).thenReturn(List.of());
+        when(quoteIdentifierRepository.findAndLockAllByIsinInOrderByIsin(List.of(VALID_ISIN))).thenReturn(List.of(identifier));
+        when(quoteIdentifierRepository.findAndLockAllByIdInOrderById(List.of(6L))).thenReturn(List.of(identifier));
+
+        assertThat(identifierResolver.findAndLockAll(List.of(VALID_ISIN))).containsExactly(identifier);
+        assertThat(identifierResolver.findAndLockAll(List.of(VALID_ISIN))).containsExactly(identifier);
+
+        verify(quoteIdentifierRepository, times(1)).findAndLockAllByIsinInOrderByIsin(any());
+    }
+
+    @Test
+    void getCreatesMissingIdentifierInNewTransactionIfReadOnly() {
+        when(transactionTemplate.getTransactionManager()).thenReturn(transactionManager);
+        identifierResolver = new QuoteIdentifierResolver(quoteIdentifierRepository, transactionTemplate, meterRegistry, 1000, Duration.ofHours(1), true);
+        JPAQuoteIdentifier identifier = identifier(VALID_ISIN, 5L);
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.empty()).thenReturn(Optional.of(identifier));
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            assertThat(identifierResolver.get(VALID_ISIN)).isSameAs(identifier);
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+
+        verify(transactionManager).getTransaction(argThat(definition -> definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(quoteIdentifierRepository).insertIfAbsent(eq(VALID_ISIN), any(), any(), any());
+    }
+
+    @Test
+    void getAndLockCountsConflictOnConcurrentInsertOfMissingIdentifier() {
+        when(transactionTemplate.getTransactionManager()).thenReturn(transactionManager);
+        identifierResolver = new QuoteIdentifierResolver(quoteIdentifierRepository, transactionTemplate, meterRegistry, 1000, Duration.ofHours(1), false);
+        JPAQuoteIdentifier identifier = identifier(VALID_ISIN, 5L);
+        when(quoteIdentifierRepository.findAndLockOneByIsin(VALID_ISIN)).thenReturn(Optional.empty()).thenReturn(Optional.of(identifier));
+        when(quoteIdentifierRepository.findOneByIsin(VALID_ISIN)).thenReturn(Optional.empty()).thenReturn(Optional.of(identifier));
+        when(quoteIdentifierRepository.save(any())).thenThrow(new DataIntegrityViolationException("unique_quote_identifier_isin"));
+
+        assertThat(identifierResolver.getAndLock(VALID_ISIN)).isSameAs(identifier);
+
+        assertThat(meterRegistry.get(QuoteIdentifierResolver.INSERT_CONFLICT_COUNTER).counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(QuoteIdentifierResolver.LOCK_TIMER).timer().count()).isEqualTo(2);
+    }
+
+    private static JPAQuoteIdentifier identifier(String isin, Long id) {
+        JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
+        identifier.setId(id);
+        identifier.setIsin(isin);
+        return identifier;
+    }
+}
@@ -0,0 +1,28 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.Period;
+
+import org.junit.jupiter.api.Test;
+
+class QuotePartitionMaintainerTest {
+
+    @Test
+    void coversUntilDayWithYearlyPartitions() {
+        assertThat(QuotePartitionMaintainer.partitionStarts(LocalDate.of(2027, 1, 1), Period.ofYears(1), LocalDate.of(2028, 10, 18)))
+                        .containsExactly(LocalDate.of(2027, 1, 1), LocalDate.of(2028, 1, 1));
+    }
+
+    @Test
+    void continuesAtUpperBoundWithMonthlyPartitions() {
+        assertThat(QuotePartitionMaintainer.partitionStarts(LocalDate.of(2027, 1, 1), Period.ofMonths(1), LocalDate.of(2027, 3, 1)))
+                        .containsExactly(LocalDate.of(2027, 1, 1), LocalDate.of(2027, 2, 1), LocalDate.of(2027, 3, 1));
+    }
+
+    @Test
+    void createsNothingIfCovered() {
+        assertThat(QuotePartitionMaintainer.partitionStarts(LocalDate.of(2029, 1, 1), Period.ofYears(1), LocalDate.of(2028, 10, 18))).isEmpty();
+    }
+}
@@ -0,0 +1,62 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import com.wealthpilot.quote.store.util.FillPolicy;
+import com.wealthpilot.quote.store.util.Granularity;
+import com.wealthpilot.quote.store.util.IsinQuote;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+/**
+ * Reads and writes of unknown ISINs with a pool of one connection: an operation needing a second connection for the creation of the identifier
+ * waits for the pool until the connection timeout and fails.
+ */
+@SpringBootTest(properties = { "spring.datasource.hikari.maximum-pool-size=1", "spring.datasource.hikari.connection-timeout=1000" })
+@ActiveProfiles("test")
+class QuoteStoreConnectionPoolTest {
+    private static final LocalDate FROM = LocalDate.of(2022, 1, 1);
+    private static final LocalDate TO = LocalDate.of(2022, 12, 31);
+
+    @Autowired
+    private JPAQuoteService quoteService;
+
+    @Autowired
+    private QuoteAggregationService aggregationService;
+
+    @Autowired
+    private SplitAdjustmentService splitAdjustmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void readsAndWritesUnknownIsinsWithOneConnection() {
+        assertThat(quoteService.getQuoteHistory("DE0000000001").getQuotes()).isEmpty();
+        assertThat(quoteService.getQuoteHistory("DE0000000002", FROM, TO).getQuotes()).isEmpty();
+        assertThat(quoteService.getQuoteAsOf("DE0000000003", TO)).isEmpty();
+        assertThat(quoteService.getQuoteHistories(List.of("DE0000000001", "DE0000000004"))).containsOnlyKeys("DE0000000001", "DE0000000004");
+        assertThat(quoteService.getPriceMatrix(List.of("DE0000000005"), FROM, TO, FillPolicy.NONE).getIsins()).containsExactly("DE0000000005");
+        assertThat(aggregationService.getAggregatedHistory("DE0000000006", FROM, TO, Granularity.MONTH)).isEmpty();
+        assertThat(splitAdjustmentService.getAdjustedQuoteHistory("DE0000000007").getQuotes()).isEmpty();
+        assertThat(splitAdjustmentService.getSplitFactors("DE0000000008")).isEmpty();
+
+        quoteService.storeQuote(new IsinQuote("GER", "DE0000000009", TO, new Quote("EUR", 1.5, TO), QuoteSource.BANK_API, false));
+        IsinQuoteHistory history = new IsinQuoteHistory("DE0000000010", "GER", QuoteSource.BANK_API);
+        history.addQuote(TO, "EUR", 2.5);
+        assertThat(quoteService.replaceQuoteHistory("DE0000000010", history)).isEqualTo(1);
+        splitAdjustmentService.storeSplitFactor("DE0000000011", TO, 0.5);
+
+        assertThat(quoteService.getQuoteHistory("DE0000000009").getQuotes()).containsOnlyKeys(TO);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from quote_identifier", Integer.class)).isEqualTo(11);
+    }
+}
@@ -0,0 +1,20 @@
+package com.wealthpilot.quote.store;
+
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Application context of the quote store tests on an in-memory H2 database per context, configured by <code>application-test.yml</code> of
+ * the <code>test</code> profile.
+ */
+@SpringBootApplication
+public class QuoteStoreTestApplication {
+
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+}
@@ -0,0 +1,70 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ff4j.FF4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import com.wealthpilot.quote.store.util.QuoteSource;
+import com.wealthpilot.quote.store.util.StubQuoteHistoryProvider;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The staleness queue of {@link JPAQuoteIdentifierRepository#findMostStale} with more failing identifiers without quotes than one run takes:
+ * identifiers attempted within the cooldown are skipped.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class QuoteStoreUpdaterQueueTest {
+    private static final List<String> FAILING_ISINS = List.of("DE0000000001", "DE0000000002", "DE0000000003");
+    private static final List<String> STALE_ISINS = List.of("DE0000000004", "DE0000000005");
+
+    @Autowired
+    private JPAQuoteIdentifierRepository quoteIdentifierRepository;
+
+    @Test
+    void failingIdentifiersWithoutQuotesDoNotTakeTheQueueOfEveryRun() {
+        FAILING_ISINS.forEach(isin -> saveIdentifier(isin, null));
+        STALE_ISINS.forEach(isin -> saveIdentifier(isin, LocalDate.now().minusDays(10)));
+        StubQuoteHistoryProvider provider = new StubQuoteHistoryProvider(QuoteSource.NDGIT);
+        FAILING_ISINS.forEach(provider::failFor);
+        FF4j ff4j = mock(FF4j.class);
+        when(ff4j.check(QuoteStoreUpdater.FEATURE)).thenReturn(true);
+        QuoteStoreUpdater updater = new QuoteStoreUpdater(quoteIdentifierRepository, QuoteStoreUpdaterTest.providers(provider), new SimpleMeterRegistry(),
+                        ff4j, 1, FAILING_ISINS.size(), Duration.ofHours(23));
+        Set<String> storedIsins = ConcurrentHashMap.newKeySet();
+
+        updater.updateAll((identifier, history) -> storedIsins.add(identifier.getIsin()));
+        assertThat(storedIsins).isEmpty();
+
+        updater.updateAll((identifier, history) -> storedIsins.add(identifier.getIsin()));
+        assertThat(storedIsins).containsExactlyInAnyOrderElementsOf(STALE_ISINS);
+        assertThat(quoteIdentifierRepository.findAll()).allSatisfy(identifier -> assertThat(identifier.getLastUpdateAttempt()).isNotNull());
+
+        storedIsins.clear();
+        updater.updateAll((identifier, history) -> storedIsins.add(identifier.getIsin()));
+        assertThat(storedIsins).isEmpty();
+    }
+
+    private void saveIdentifier(String isin, LocalDate latestQuoteDate) {
+        JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
+        identifier.setIsin(isin);
+        identifier.setFetchDate(ZonedDateTime.now().minusDays(1));
+        identifier.setLatestQuoteDate(latestQuoteDate);
+        identifier.setMarketPlace("GER");
+        identifier.setQuoteSource(QuoteSource.NDGIT);
+        quoteIdentifierRepository.save(identifier);
+    }
+}
@@ -0,0 +1,113 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ff4j.FF4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.domain.PageRequest;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.QuoteHistoryProvider;
+import com.wealthpilot.quote.store.util.QuoteSource;
+import com.wealthpilot.quote.store.util.StubQuoteHistoryProvider;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class QuoteStoreUpdaterTest {
+
+    @Mock
+    private JPAQuoteIdentifierRepository quoteIdentifierRepository;
+
+    @Mock
+    private FF4j ff4j;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void fetchesMostStaleIdentifiersOfEverySourceOnWorkerPool() {
+        JPAQuoteIdentifier first = identifier(1L, "DE000A1EWWW0", QuoteSource.NDGIT);
+        JPAQuoteIdentifier second = identifier(2L, "US0378331005", QuoteSource.NDGIT);
+        JPAQuoteIdentifier failing = identifier(3L, "DE0007164600", QuoteSource.NDGIT);
+        JPAQuoteIdentifier other = identifier(4L, "DE0005140008", QuoteSource.BANK_API);
+        IsinQuoteHistory history = new IsinQuoteHistory(first.getIsin(), "GER", QuoteSource.NDGIT);
+        history.addQuote(LocalDate.now(), "EUR", 1.0);
+        StubQuoteHistoryProvider provider = new StubQuoteHistoryProvider(QuoteSource.NDGIT).addHistory(history).failFor(failing.getIsin());
+        when(quoteIdentifierRepository.findMostStale(eq(QuoteSource.NDGIT), any(), any(), eq(PageRequest.ofSize(3)))).thenReturn(List.of(first, second, failing));
+        when(quoteIdentifierRepository.findMostStale(eq(QuoteSource.BANK_API), any(), any(), eq(PageRequest.ofSize(3)))).thenReturn(List.of(other));
+        when(ff4j.check(QuoteStoreUpdater.FEATURE)).thenReturn(true);
+        QuoteStoreUpdater updater = new QuoteStoreUpdater(quoteIdentifierRepository, providers(provider, new StubQuoteHistoryProvider(QuoteSource.BANK_API)),
+                        meterRegistry, ff4j, 2, 3, Duration.ofHours(23));
+        Map<String, IsinQuoteHistory> storedHistories = new ConcurrentHashMap<>();
+
+        updater.updateAll((identifier, fetchedHistory) -> {
+            storedHistories.put(identifier.getIsin(), fetchedHistory);
+            return !fetchedHistory.getQuotes().isEmpty();
+        });
+
+        assertThat(storedHistories).containsOnlyKeys(first.getIsin(), second.getIsin(), other.getIsin());
+        assertThat(storedHistories.get(first.getIsin())).isSameAs(history);
+        assertThat(isinCount("replaced")).isEqualTo(1);
+        assertThat(isinCount("unchanged")).isEqualTo(1);
+        assertThat(isinCount("failed")).isEqualTo(1);
+        assertThat(meterRegistry.get(QuoteStoreUpdater.FETCH_TIMER).tag("source", "NDGIT").timer().count()).isEqualTo(3);
+        assertThat(meterRegistry.get(QuoteStoreUpdater.FETCH_TIMER).tag("source", "BANK_API").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        QuoteStoreUpdater updater = new QuoteStoreUpdater(quoteIdentifierRepository, providers(new StubQuoteHistoryProvider(QuoteSource.NDGIT)), meterRegistry,
+                        ff4j, 2, 2, Duration.ofHours(23));
+
+        updater.updateAll((identifier, fetchedHistory) -> true);
+
+        verifyNoInteractions(quoteIdentifierRepository);
+    }
+
+    @Test
+    void doesNothingWithoutProviders() {
+        when(ff4j.check(QuoteStoreUpdater.FEATURE)).thenReturn(true);
+        QuoteStoreUpdater updater = new QuoteStoreUpdater(quoteIdentifierRepository, providers(), meterRegistry, ff4j, 2, 2, Duration.ofHours(23));
+
+        updater.updateAll((identifier, fetchedHistory) -> true);
+
+        assertThat(meterRegistry.getMeters()).isEmpty();
+    }
+
+    static ObjectProvider<QuoteHistoryProvider> providers(QuoteHistoryProvider... providers) {
+        Map<String, Object> beans = new HashMap<>();
+        Arrays.stream(providers).forEach(provider -> beans.put(provider.getQuoteSource().name(), provider));
+        return new StaticListableBeanFactory(beans).getBeanProvider(QuoteHistoryProvider.class);
+    }
+
+    private double isinCount(String result) {
+        return meterRegistry.get(QuoteStoreUpdater.ISIN_COUNTER).tag("source", "NDGIT").tag("result", result).counter().count();
+    }
+
+    private static JPAQuoteIdentifier identifier(Long id, String isin, QuoteSource quoteSource) {
+        JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
+        identifier.setId(id);
+        identifier.setIsin(isin);
+        identifier.setFetchDate(ZonedDateTime.now().minusDays(10).plusMinutes(id));
+        identifier.setMarketPlace("GER");
+        identifier.setQuoteSource(quoteSource);
+        return identifier;
+    }
+}
@@ -0,0 +1,95 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ReadReplicaRoutingDataSourceTest {
+    private static final String ROLE_QUERY = "select name from database_role";
+
+    private final EmbeddedDatabase primary = database("primary");
+    private final EmbeddedDatabase replica = database("replica");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readWriteTemplate;
+    private TransactionTemplate readOnlyTemplate;
+
+    @AfterEach
+    void tearDown() {
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    @Test
+    void routesOnlyReadOnlyTransactionsToReplica() {
+        createRouting(Duration.ZERO, "select 0");
+
+        assertThat(readRole(readOnlyTemplate)).isEqualTo("replica");
+        assertThat(readRole(readWriteTemplate)).isEqualTo("primary");
+        assertThat(jdbcTemplate.queryForObject(ROLE_QUERY, String.class)).isEqualTo("primary");
+        assertThat(routed("replica", "read-only")).isEqualTo(1);
+    }
+
+    @Test
+    void keepsReadsOnPrimaryWhileReplicaLagsOrLagIsUnknown() {
+        ReadReplicaRoutingDataSource routing = createRouting(Duration.ofSeconds(5), "select count(*) * 10 from database_role");
+
+        assertThat(readRole(readOnlyTemplate)).isEqualTo("primary");
+        assertThat(meterRegistry.get(ReadReplicaRoutingDataSource.REPLICA_LAG_GAUGE).gauge().value()).isEqualTo(10);
+
+        new JdbcTemplate(replica).execute("drop table database_role");
+        routing.checkReplicaLag();
+
+        assertThat(readRole(readOnlyTemplate)).isEqualTo("primary");
+        assertThat(meterRegistry.get(ReadReplicaRoutingDataSource.REPLICA_LAG_GAUGE).gauge().value()).isNaN();
+        assertThat(routed("primary", "replica-lagging")).isEqualTo(2);
+    }
+
+    @Test
+    void keepsReadsOnPrimaryForMaxLagAfterWrite() {
+        createRouting(Duration.ofHours(1), "select 0");
+        assertThat(readRole(readOnlyTemplate)).isEqualTo("replica");
+
+        readWriteTemplate.execute(status -> jdbcTemplate.update("update database_role set name = 'written'"));
+
+        assertThat(readRole(readOnlyTemplate)).isEqualTo("written");
+        assertThat(routed("primary", "recent-write")).isEqualTo(1);
+    }
+
+    private ReadReplicaRoutingDataSource createRouting(Duration maxLag, String lagQuery) {
+        ReadReplicaRoutingDataSource routing = new ReadReplicaRoutingDataSource(primary, replica, meterRegistry, maxLag, lagQuery);
+        routing.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readWriteTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyTemplate.setReadOnly(true);
+        return routing;
+    }
+
+    private String readRole(TransactionTemplate transactionTemplate) {
+        return transactionTemplate.execute(status -> jdbcTemplate.queryForObject(ROLE_QUERY, String.class));
+    }
+
+    private double routed(String target, String reason) {
+        return meterRegistry.get(ReadReplicaRoutingDataSource.ROUTED_COUNTER).tag("target", target).tag("reason", reason).counter().count();
+    }
+
+    private static EmbeddedDatabase database(String role) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        new JdbcTemplate(database).execute("create table database_role (name varchar(10)); insert into database_role values ('" + role + "')");
+        return database;
+    }
+}
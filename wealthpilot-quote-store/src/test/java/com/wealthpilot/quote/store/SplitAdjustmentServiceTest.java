@@ -0,0 +1,138 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import com.wealthpilot.quote.store.util.IsinQuoteHistory;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class SplitAdjustmentServiceTest {
+    private static final String VALID_ISIN = "DE000A1EWWW0";
+    private static final LocalDate SPLIT_DATE = LocalDate.of(2022, 6, 1);
+
+    @Mock
+    private JPAQuoteService quoteService;
+
+    @Mock
+    private QuoteIdentifierResolver identifierResolver;
+
+    @Mock
+    private JPASplitFactorRepository splitFactorRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void appliesAllFactorsToSourcesNotCorrectingSplits() {
+        SplitAdjustmentService service = createService(identifier(QuoteSource.BANK_API, SPLIT_DATE.plusYears(1)));
+        IsinQuoteHistory history = history(QuoteSource.BANK_API);
+        when(quoteService.getQuoteHistory(VALID_ISIN)).thenReturn(history);
+
+        IsinQuoteHistory adjusted = service.getAdjustedQuoteHistory(VALID_ISIN);
+
+        assertThat(adjusted.getSeries().getAmount(0)).isEqualTo(50);
+        assertThat(adjusted.getSeries().getAmount(1)).isEqualTo(60);
+        assertThat(service.getAdjustedQuoteHistory(VALID_ISIN)).isSameAs(adjusted);
+        verify(splitFactorRepository, times(1)).findAllByIdentifierIdOrderByExDate(5L);
+        verify(identifierResolver).inReadOnlyTransaction(eq(List.of(VALID_ISIN)), any());
+    }
+
+    @Test
+    void appliesOnlyFactorsAfterFetchDateToSourcesCorrectingSplits() {
+        SplitAdjustmentService service = createService(identifier(QuoteSource.NDGIT, SPLIT_DATE.plusDays(1)));
+        when(quoteService.getQuoteHistory(VALID_ISIN)).thenReturn(history(QuoteSource.NDGIT));
+
+        assertThat(service.getAdjustedQuoteHistory(VALID_ISIN).getSeries().getAmount(0)).isEqualTo(100);
+    }
+
+    @Test
+    void ignoresFetchDateOfQuotesStoredAfterTheHistory() {
+        JPAQuoteIdentifier identifier = identifier(QuoteSource.NDGIT, SPLIT_DATE.minusDays(1));
+        identifier.setFetchDate(SPLIT_DATE.plusDays(10).atStartOfDay(ZonedDateTime.now().getZone()));
+        SplitAdjustmentService service = createService(identifier);
+        when(quoteService.getQuoteHistory(VALID_ISIN)).thenReturn(history(QuoteSource.NDGIT));
+
+        assertThat(service.getAdjustedQuoteHistory(VALID_ISIN).getSeries().getAmount(0)).isEqualTo(50);
+    }
+
+    @Test
+    void updatesCachedViewForChangedHistory() {
+        SplitAdjustmentService service = createService(identifier(QuoteSource.BANK_API, SPLIT_DATE));
+        IsinQuoteHistory history = history(QuoteSource.BANK_API);
+        IsinQuoteHistory extendedHistory = history(QuoteSource.BANK_API);
+        extendedHistory.addQuote(SPLIT_DATE.plusDays(1), "EUR", 61);
+        when(quoteService.getQuoteHistory(VALID_ISIN)).thenReturn(history, extendedHistory.toUnmodifiable());
+        service.getAdjustedQuoteHistory(VALID_ISIN);
+
+        assertThat(service.getAdjustedQuoteHistory(VALID_ISIN).getSeries().getAmount(2)).isEqualTo(61);
+        assertThat(meterRegistry.get(SplitAdjustmentService.RECOMPUTED_COUNTER).counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void doesNotCacheViewOfFactorsOutdatedWhileReading() {
+        JPAQuoteIdentifier identifier = identifier(QuoteSource.BANK_API, SPLIT_DATE);
+        SplitAdjustmentService service = createService(identifier);
+        when(quoteService.getQuoteHistory(VALID_ISIN)).thenReturn(history(QuoteSource.BANK_API));
+        when(identifierResolver.getAndLock(VALID_ISIN)).thenReturn(identifier);
+        when(identifierResolver.inTransaction(any(), any())).thenAnswer(
+                        invocation -> invocation.<TransactionCallback<?>>getArgument(1).doInTransaction(mock(TransactionStatus.class)));
+        when(splitFactorRepository.findAllByIdentifierIdOrderByExDate(5L)).thenAnswer(invocation -> {
+            // a factor is stored after the factors were read
+            service.storeSplitFactor(VALID_ISIN, SPLIT_DATE.plusDays(1), 0.5);
+            return List.of();
+        }).thenReturn(List.of());
+
+        assertThat(service.getAdjustedQuoteHistory(VALID_ISIN).getSeries().getAmount(0)).isEqualTo(100);
+        service.getAdjustedQuoteHistory(VALID_ISIN);
+        service.getAdjustedQuoteHistory(VALID_ISIN);
+
+        verify(splitFactorRepository, times(2)).findAllByIdentifierIdOrderByExDate(5L);
+    }
+
+    private SplitAdjustmentService createService(JPAQuoteIdentifier identifier) {
+        JPASplitFactor splitFactor = new JPASplitFactor();
+        splitFactor.setIdentifier(identifier);
+        splitFactor.setExDate(SPLIT_DATE);
+        splitFactor.setFactor(0.5);
+        when(identifierResolver.get(VALID_ISIN)).thenReturn(identifier);
+        when(identifierResolver.inReadOnlyTransaction(any(), any())).thenAnswer(
+                        invocation -> invocation.<TransactionCallback<?>>getArgument(1).doInTransaction(mock(TransactionStatus.class)));
+        when(splitFactorRepository.findAllByIdentifierIdOrderByExDate(5L)).thenReturn(List.of(splitFactor));
+        return new SplitAdjustmentService(quoteService, identifierResolver, splitFactorRepository, meterRegistry, 1000, Duration.ofHours(1));
+    }
+
+    private static JPAQuoteIdentifier identifier(QuoteSource quoteSource, LocalDate historyFetchDate) {
+        JPAQuoteIdentifier identifier = new JPAQuoteIdentifier();
+        identifier.setId(5L);
+        identifier.setIsin(VALID_ISIN);
+        identifier.setQuoteSource(quoteSource);
+        identifier.setHistoryFetchDate(historyFetchDate.atStartOfDay(ZonedDateTime.now().getZone()));
+        identifier.setFetchDate(identifier.getHistoryFetchDate());
+        return identifier;
+    }
+
+    private static IsinQuoteHistory history(QuoteSource quoteSource) {
+        IsinQuoteHistory history = new IsinQuoteHistory(VALID_ISIN, "GER", quoteSource);
+        history.addQuote(SPLIT_DATE.minusDays(1), "EUR", 100);
+        history.addQuote(SPLIT_DATE, "EUR", 60);
+        return history;
+    }
+}
@@ -0,0 +1,156 @@
+package com.wealthpilot.quote.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import com.wealthpilot.quote.store.util.IsinQuote;
+import com.wealthpilot.quote.store.util.Quote;
+import com.wealthpilot.quote.store.util.QuoteSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindQuoteStoreTest {
+
+    private static final String ISIN = "DE000A1EWWW0";
+    private static final String OTHER_ISIN = "US0378331005";
+
+    @Mock
+    private JPAQuoteService quoteService;
+
+    @SuppressWarnings("unchecked")
+    private final ArgumentCaptor<List<IsinQuote>> quotesCaptor = ArgumentCaptor.forClass(List.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WriteBehindQuoteStore quoteStore;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        quoteStore.destroy();
+    }
+
+    @Test
+    void coalescesQuotesOfSameIsinAndDateUntilFlush() {
+        quoteStore = new WriteBehindQuoteStore(quoteService, meterRegistry, 100, 10, Duration.ofHours(1), 5, Duration.ZERO);
+        IsinQuote latest = quote(ISIN, LocalDate.now(), 1.2);
+
+        quoteStore.storeQuote(quote(ISIN, LocalDate.now(), 1.0));
+        quoteStore.storeQuote(quote(OTHER_ISIN, LocalDate.now(), 7.0));
+        quoteStore.storeQuote(latest);
+        verifyNoInteractions(quoteService);
+        quoteStore.flush();
+
+        verify(quoteService).storeQuotes(quotesCaptor.capture());
+        assertThat(quotesCaptor.getValue()).extracting(IsinQuote::getIsin).containsExactly(ISIN, OTHER_ISIN);
+        assertThat(quotesCaptor.getValue().get(0)).isSameAs(latest);
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.COALESCING_GAUGE).gauge().value()).isEqualTo(1.5);
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.FLUSH_TIMER).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void flushesInBackgroundWhenBatchIsFull() {
+        quoteStore = new WriteBehindQuoteStore(quoteService, meterRegistry, 100, 2, Duration.ofHours(1), 5, Duration.ZERO);
+
+        quoteStore.storeQuote(quote(ISIN, LocalDate.now(), 1.0));
+        quoteStore.storeQuote(quote(ISIN, LocalDate.now().minusDays(1), 1.0));
+
+        verify(quoteService, timeout(10_000)).storeQuotes(quotesCaptor.capture());
+        assertThat(quotesCaptor.getValue()).hasSize(2);
+    }
+
+    @Test
+    void callerFlushesWhenBufferIsFull() {
+        quoteStore = new WriteBehindQuoteStore(quoteService, meterRegistry, 3, 2, Duration.ofHours(1), 5, Duration.ZERO);
+        doThrow(new IllegalStateException("database down")).doNothing().when(quoteService).storeQuotes(any());
+
+        for (int daysPast = 0; daysPast < 3; daysPast++) {
+            quoteStore.storeQuote(quote(ISIN, LocalDate.now().minusDays(daysPast), 1.0));
+        }
+        quoteStore.flush();
+
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.RECEIVED_COUNTER).counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.STORED_COUNTER).counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.FAILED_COUNTER).counter().count()).isZero();
+    }
+
+    @Test
+    void retriesFailedBatchWithoutOverwritingNewerQuotes() {
+        quoteStore = new WriteBehindQuoteStore(quoteService, meterRegistry, 100, 10, Duration.ofHours(1), 5, Duration.ZERO);
+        IsinQuote failed = quote(OTHER_ISIN, LocalDate.now(), 7.0);
+        IsinQuote newer = quote(ISIN, LocalDate.now(), 1.2);
+        doAnswer(invocation -> {
+            quoteStore.storeQuote(newer);
+            throw new IllegalStateException("database down");
+        }).doNothing().when(quoteService).storeQuotes(any());
+
+        quoteStore.storeQuote(quote(ISIN, LocalDate.now(), 1.0));
+        quoteStore.storeQuote(failed);
+        quoteStore.flush();
+        quoteStore.flush();
+
+        verify(quoteService, times(2)).storeQuotes(quotesCaptor.capture());
+        assertThat(quotesCaptor.getValue()).containsExactlyInAnyOrder(newer, failed);
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.STORED_COUNTER).counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.FAILED_COUNTER).counter().count()).isZero();
+    }
+
+    @Test
+    void dropsQuotesAfterMaxAttempts() {
+        quoteStore = new WriteBehindQuoteStore(quoteService, meterRegistry, 100, 10, Duration.ofHours(1), 2, Duration.ZERO);
+        doThrow(new IllegalStateException("database down")).when(quoteService).storeQuotes(any());
+
+        quoteStore.storeQuote(quote(ISIN, LocalDate.now(), 1.0));
+        quoteStore.flush();
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.FAILED_COUNTER).counter().count()).isZero();
+        quoteStore.flush();
+        quoteStore.flush();
+
+        verify(quoteService, times(2)).storeQuotes(any());
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.FAILED_COUNTER).counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.COALESCING_GAUGE).gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void coalescingRatioIsOneBeforeFirstFlush() {
+        quoteStore = new WriteBehindQuoteStore(quoteService, meterRegistry, 100, 10, Duration.ofHours(1), 5, Duration.ZERO);
+
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.COALESCING_GAUGE).gauge().value()).isEqualTo(1.0);
+        quoteStore.storeQuote(quote(ISIN, LocalDate.now(), 1.0));
+        assertThat(meterRegistry.get(WriteBehindQuoteStore.COALESCING_GAUGE).gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void flushesBeforeStoringBulk() {
+        quoteStore = new WriteBehindQuoteStore(quoteService, meterRegistry, 100, 10, Duration.ofHours(1), 5, Duration.ZERO);
+        IsinQuote buffered = quote(ISIN, LocalDate.now(), 1.0);
+        IsinQuote bulk = quote(OTHER_ISIN, LocalDate.now(), 1.0);
+
+        quoteStore.storeQuote(buffered);
+        quoteStore.storeQuotes(List.of(bulk));
+
+        InOrder inOrder = inOrder(quoteService);
+        inOrder.verify(quoteService).storeQuotes(List.of(buffered));
+        inOrder.verify(quoteService).storeQuotes(List.of(bulk));
+    }
+
+    private static IsinQuote quote(String isin, LocalDate date, double amount) {
+        return new IsinQuote("GER", isin, date, new Quote("EUR", amount, date), QuoteSource.BANK_API, false);
+    }
+}
@@ -0,0 +1,53 @@
+package com.wealthpilot.quote.store.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+class CurrenciesTest {
+    private static final LocalDate START = LocalDate.of(2002, 1, 1);
+
+    @Test
+    void internReturnsCanonicalInstanceOfKnownCurrencies() {
+        String eur = Currencies.intern(copy("EUR"));
+
+        assertThat(Currencies.intern(copy("EUR"))).isSameAs(eur);
+        assertThat(Currencies.intern(copy("%"))).isSameAs(Constants.PERCENTAGE_CURRENCY);
+        assertThat(Currencies.intern("eur")).isEqualTo("eur");
+        assertThat(Currencies.intern("XYZ1")).isEqualTo("XYZ1");
+        assertThat(Currencies.intern(null)).isNull();
+    }
+
+    @Test
+    void canonicalUpperCasesCurrencies() {
+        assertThat(Currencies.canonical(copy("usd"))).isSameAs(Currencies.intern("USD"));
+        assertThat(Currencies.canonical("abcd")).isEqualTo("ABCD");
+        assertThat(Currencies.canonical(null)).isNull();
+    }
+
+    @Test
+    void quotesShareCanonicalCurrencies() {
+        List<Quote> quotes = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            quotes.add(new Quote(copy(i % 2 == 0 ? "EUR" : "USD"), i, START));
+        }
+        List<String> copies = new ArrayList<>();
+        for (Quote quote : quotes) {
+            copies.add(copy(quote.getCurrency()));
+        }
+
+        assertThat(quotes).extracting(Quote::getCurrency).filteredOn("EUR"::equals).allMatch(currency -> currency == Currencies.intern("EUR"));
+        long sharedSize = GraphLayout.parseInstance(quotes).totalSize();
+        long copiedSize = GraphLayout.parseInstance(quotes, copies).totalSize();
+        assertThat(sharedSize).isLessThan(copiedSize / 2);
+    }
+
+    private static String copy(String currency) {
+        return new String(currency.toCharArray());
+    }
+}
@@ -0,0 +1,87 @@
+package com.wealthpilot.quote.store.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class IsinQuoteHistoryTest {
+    private static final String ISIN = "DE000A1EWWW0";
+    private static final LocalDate START = LocalDate.of(2002, 1, 1);
+
+    @Test
+    void behavesLikeAMapOfQuotesForRandomlyOrderedQuotes() {
+        Random random = new Random(42);
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.REFINITIV_RKD);
+        Map<LocalDate, Quote> expectedQuotes = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            LocalDate date = START.plusDays(random.nextInt(7000));
+            Quote quote = new Quote(random.nextInt(10) == 0 ? "USD" : "EUR", random.nextDouble() * 100, date);
+            history.addQuote(quote);
+            expectedQuotes.put(date, quote);
+        }
+
+        assertThat(history.getQuotes()).isEqualTo(expectedQuotes);
+        assertThat(new ArrayList<>(history.getQuotes().keySet())).isSorted();
+        assertThat(history.getFirstDate()).isEqualTo(expectedQuotes.keySet().stream().min(LocalDate::compareTo));
+        assertThat(history.getLatestDate()).isEqualTo(expectedQuotes.keySet().stream().max(LocalDate::compareTo));
+        expectedQuotes.forEach((date, quote) -> assertThat(history.getQuote(date)).contains(quote));
+        assertThat(history.getQuote(START.minusDays(1))).isEmpty();
+    }
+
+    @Test
+    void laterQuoteForSameDateWins() {
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.BANK_API);
+        history.addQuote(START, "EUR", 1.0);
+        assertThat(history.getQuote(START)).contains(new Quote("EUR", 1.0, START));
+
+        history.addQuote(START.minusDays(1), "EUR", 0.5);
+        history.addQuote(START, "USD", 2.0);
+
+        assertThat(history.getQuotes()).containsExactly(Map.entry(START.minusDays(1), new Quote("EUR", 0.5, START.minusDays(1))),
+                        Map.entry(START, new Quote("USD", 2.0, START)));
+    }
+
+    @Test
+    void subHistoryIsRangeViewOfQuotes() {
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.BANK_API);
+        for (int day = 0; day < 10; day += 2) {
+            history.addQuote(START.plusDays(day), day < 6 ? "EUR" : "USD", day);
+        }
+
+        IsinQuoteHistory subHistory = history.subHistory(START.plusDays(1), START.plusDays(6));
+
+        assertThat(subHistory.getQuotes().keySet()).containsExactly(START.plusDays(2), START.plusDays(4), START.plusDays(6));
+        assertThat(subHistory.getQuote(START.plusDays(6))).contains(new Quote("USD", 6, START.plusDays(6)));
+        assertThat(subHistory.getQuote(START)).isEmpty();
+        assertThat(subHistory.getFirstDate()).contains(START.plusDays(2));
+        assertThat(subHistory.getLatestDate()).contains(START.plusDays(6));
+        assertThat(history.subHistory(START.plusDays(20), START.plusDays(30)).getQuotes()).isEmpty();
+        assertThat(history.subHistory(LocalDate.MIN, LocalDate.MAX)).isEqualTo(history);
+        assertThat(history.subHistory(LocalDate.MIN, START.plusDays(2)).getQuotes().keySet()).containsExactly(START, START.plusDays(2));
+        assertThat(history.getSeries().getLatestQuoteAsOf(LocalDate.MAX)).contains(new Quote("USD", 8, START.plusDays(8)));
+        assertThat(history.getSeries().getLatestQuoteAsOf(LocalDate.MIN)).isEmpty();
+        assertThatThrownBy(() -> subHistory.addQuote(START, "EUR", 1.0)).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void equalHistoriesIndependentOfInsertionOrder() {
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.BANK_API);
+        IsinQuoteHistory reversedHistory = new IsinQuoteHistory(ISIN, "GER", QuoteSource.BANK_API);
+        List<Quote> quotes = List.of(new Quote("EUR", 1.0, START), new Quote("EUR", 2.0, START.plusDays(1)), new Quote("EUR", 3.0, START.plusDays(3)));
+        quotes.forEach(history::addQuote);
+        for (int i = quotes.size() - 1; i >= 0; i--) {
+            reversedHistory.addQuote(quotes.get(i));
+        }
+
+        assertThat(history).isEqualTo(reversedHistory).hasSameHashCodeAs(reversedHistory);
+        assertThat(history.toUnmodifiable()).isEqualTo(history);
+    }
+}
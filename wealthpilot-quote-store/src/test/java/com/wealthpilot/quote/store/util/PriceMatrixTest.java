@@ -0,0 +1,55 @@
+package com.wealthpilot.quote.store.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PriceMatrixTest {
+    private static final LocalDate FROM = LocalDate.of(2022, 1, 3);
+
+    @Test
+    void alignsSeriesOnUnionOfQuoteDatesInRange() {
+        QuoteSeries first = QuoteSeries.builder().add(FROM.minusDays(1), "EUR", 9).add(FROM, "EUR", 10).add(FROM.plusDays(2), "EUR", 12).build();
+        QuoteSeries second = QuoteSeries.builder().add(FROM.plusDays(1), "USD", 21).add(FROM.plusDays(3), "USD", 23).build();
+
+        PriceMatrix matrix = PriceMatrix.of(List.of("A", "B", "C"), List.of(first, second, QuoteSeries.EMPTY), FROM, FROM.plusDays(2), FillPolicy.NONE);
+
+        assertThat(matrix.getDates()).containsExactly(FROM, FROM.plusDays(1), FROM.plusDays(2));
+        assertThat(matrix.getRows()).isEqualTo(3);
+        assertThat(matrix.getColumns()).isEqualTo(3);
+        assertThat(matrix.getAmounts()).containsExactly(10, Double.NaN, 12, Double.NaN, 21, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        assertThat(matrix.get(1, 1)).isEqualTo(21);
+        assertThatThrownBy(() -> matrix.get(3, 0)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void forwardFillsOnlyQuotesValidForDate() {
+        QuoteSeries sparse = QuoteSeries.builder()
+                        .add(FROM.minusDays(Quote.MAX_DAYS_VALID_QUOTE), "EUR", 1)
+                        .add(FROM.plusDays(1), "EUR", 2)
+                        .build();
+        QuoteSeries daily = QuoteSeries.builder()
+                        .add(FROM, "EUR", 0)
+                        .add(FROM.plusDays(1 + Quote.MAX_DAYS_VALID_QUOTE), "EUR", 0)
+                        .add(FROM.plusDays(2 + Quote.MAX_DAYS_VALID_QUOTE), "EUR", 0)
+                        .build();
+
+        PriceMatrix matrix = PriceMatrix.of(List.of("A", "B"), List.of(sparse, daily), FROM, FROM.plusDays(10), FillPolicy.FORWARD_FILL);
+
+        assertThat(matrix.getColumn(0)).containsExactly(1, 2, 2, Double.NaN);
+    }
+
+    @Test
+    void hasNoRowsForEmptyRange() {
+        QuoteSeries series = QuoteSeries.builder().add(FROM, "EUR", 10).build();
+
+        PriceMatrix matrix = PriceMatrix.of(List.of("A"), List.of(series), FROM, FROM.minusDays(1), FillPolicy.FORWARD_FILL);
+
+        assertThat(matrix.getRows()).isZero();
+        assertThat(matrix.getColumn(0)).isEmpty();
+    }
+}
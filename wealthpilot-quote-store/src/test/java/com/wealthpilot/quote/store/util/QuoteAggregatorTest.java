@@ -0,0 +1,73 @@
+package com.wealthpilot.quote.store.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class QuoteAggregatorTest {
+
+    @Test
+    void aggregatesIsoWeeksAcrossYearBoundary() {
+        QuoteSeries series = QuoteSeries.builder()
+                        .add(LocalDate.of(2020, 12, 31), "EUR", 10)
+                        .add(LocalDate.of(2021, 1, 1), "EUR", 14)
+                        .add(LocalDate.of(2021, 1, 3), "USD", 12)
+                        .add(LocalDate.of(2021, 1, 4), "EUR", 20)
+                        .build();
+
+        List<AggregatedQuote> weeks = QuoteAggregator.aggregate(series, Granularity.WEEK);
+
+        assertThat(weeks).containsExactly(AggregatedQuote.builder()
+                        .periodStart(LocalDate.of(2020, 12, 28))
+                        .lastDate(LocalDate.of(2021, 1, 3))
+                        .currency("USD")
+                        .open(10)
+                        .high(14)
+                        .low(10)
+                        .last(12)
+                        .average(12)
+                        .count(3)
+                        .build(),
+                        AggregatedQuote.builder()
+                                        .periodStart(LocalDate.of(2021, 1, 4))
+                                        .lastDate(LocalDate.of(2021, 1, 4))
+                                        .currency("EUR")
+                                        .open(20)
+                                        .high(20)
+                                        .low(20)
+                                        .last(20)
+                                        .average(20)
+                                        .count(1)
+                                        .build());
+    }
+
+    @Test
+    void aggregatesMonthsQuartersAndYears() {
+        QuoteSeries.Builder builder = QuoteSeries.builder();
+        LocalDate date = LocalDate.of(2021, 1, 1);
+        for (int i = 0; i < 730; i++) {
+            builder.add(date.plusDays(i), "EUR", i);
+        }
+        QuoteSeries series = builder.build();
+
+        List<AggregatedQuote> months = QuoteAggregator.aggregate(series, Granularity.MONTH);
+
+        assertThat(months).hasSize(24);
+        assertThat(months.get(1).getPeriodStart()).isEqualTo(LocalDate.of(2021, 2, 1));
+        assertThat(months.get(1).getOpen()).isEqualTo(31);
+        assertThat(months.get(1).getLast()).isEqualTo(58);
+        assertThat(months.get(1).getCount()).isEqualTo(28);
+        assertThat(QuoteAggregator.aggregate(series, Granularity.QUARTER)).extracting(AggregatedQuote::getPeriodStart)
+                        .contains(LocalDate.of(2022, 10, 1))
+                        .hasSize(8);
+        assertThat(QuoteAggregator.aggregate(series, Granularity.YEAR)).extracting(AggregatedQuote::getAverage).containsExactly(182.0, 547.0);
+    }
+
+    @Test
+    void aggregatesEmptySeriesToNoPeriods() {
+        assertThat(QuoteAggregator.aggregate(QuoteSeries.EMPTY, Granularity.MONTH)).isEmpty();
+    }
+}
@@ -0,0 +1,139 @@
+package com.wealthpilot.quote.store.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class QuoteHistoryCodecTest {
+    private static final String ISIN = "DE000A1EWWW0";
+    private static final LocalDate START = LocalDate.of(1960, 1, 1);
+    private static final String[] CURRENCIES = { "EUR", "USD", "%", null };
+
+    @Test
+    void decodesRandomHistoriesAsEncoded() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            IsinQuoteHistory history = randomHistory(random, random.nextInt(1000));
+
+            IsinQuoteHistory decoded = QuoteHistoryCodec.decode(QuoteHistoryCodec.encode(history));
+
+            assertThat(decoded).isEqualTo(history);
+            assertThat(decoded.getMarketPlace()).isEqualTo(history.getMarketPlace());
+            assertThat(decoded.getSeries().size()).isEqualTo(history.getSeries().size());
+        }
+    }
+
+    @Test
+    void decodesRandomRangesLikeSubHistory() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            IsinQuoteHistory history = randomHistory(random, random.nextInt(2000));
+            byte[] encoded = QuoteHistoryCodec.encode(history);
+            LocalDate from = START.plusDays(random.nextInt(20000) - 100);
+            LocalDate to = from.plusDays(random.nextInt(5000) - 100);
+
+            assertThat(QuoteHistoryCodec.decode(encoded, from, to)).isEqualTo(history.subHistory(from, to));
+        }
+    }
+
+    @Test
+    void decodesOpenRangesBeyondTheEpochDaysOfQuotes() {
+        IsinQuoteHistory history = randomHistory(new Random(42), 500);
+        byte[] encoded = QuoteHistoryCodec.encode(history);
+
+        assertThat(QuoteHistoryCodec.decode(encoded, LocalDate.MIN, LocalDate.MAX)).isEqualTo(history);
+        assertThat(QuoteHistoryCodec.decode(encoded, LocalDate.MIN, history.getFirstDate().orElseThrow().minusDays(1)).getQuotes()).isEmpty();
+        assertThat(QuoteHistoryCodec.decode(encoded, history.getLatestDate().orElseThrow().plusDays(1), LocalDate.MAX).getQuotes()).isEmpty();
+    }
+
+    @Test
+    void keepsSpecialAmountsBitExact() {
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, null, QuoteSource.MANUAL);
+        double[] amounts = { 0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, 1.0, 1.0 };
+        for (int i = 0; i < amounts.length; i++) {
+            history.addQuote(START.plusDays(i * 40000L), "EUR", amounts[i]);
+        }
+
+        QuoteSeries decoded = QuoteHistoryCodec.decode(QuoteHistoryCodec.encode(history)).getSeries();
+
+        for (int i = 0; i < amounts.length; i++) {
+            assertThat(Double.doubleToRawLongBits(decoded.getAmount(i))).isEqualTo(Double.doubleToRawLongBits(amounts[i]));
+        }
+    }
+
+    @Test
+    void decodesEmptyHistory() {
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.NDGIT);
+
+        assertThat(QuoteHistoryCodec.decode(QuoteHistoryCodec.encode(history))).isEqualTo(history);
+        assertThat(QuoteHistoryCodec.decode(QuoteHistoryCodec.encode(history), START, START.plusDays(1)).getQuotes()).isEmpty();
+    }
+
+    @Test
+    void decodedHistoryIsUnmodifiableAndSharesCanonicalCurrencies() {
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.NDGIT);
+        history.addQuote(START, new String("EUR".toCharArray()), 1.0);
+
+        IsinQuoteHistory decoded = QuoteHistoryCodec.decode(QuoteHistoryCodec.encode(history));
+
+        assertThat(decoded.getSeries().getCurrency(0)).isSameAs(Currencies.intern("EUR"));
+        assertThatThrownBy(() -> decoded.addQuote(new Quote("EUR", 1.0, START))).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void compressesBusinessDayPrices() {
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, "GER", QuoteSource.NDGIT);
+        LocalDate date = LocalDate.of(2000, 1, 3);
+        double amount = 100;
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            history.addQuote(date, "EUR", amount);
+            date = date.plusDays(date.getDayOfWeek().getValue() == 5 ? 3 : 1);
+            amount = random.nextInt(4) == 0 ? amount : Math.round(amount * (1 + (random.nextDouble() - 0.5) * 0.01) * 100) / 100.0;
+        }
+
+        // 4 bytes epoch-day and 8 bytes amount per quote uncompressed
+        assertThat(QuoteHistoryCodec.encode(history).length).isLessThan(5000 * 12 / 2);
+    }
+
+    @Test
+    void rejectsCorruptInput() {
+        Random random = new Random(42);
+        byte[] encoded = QuoteHistoryCodec.encode(randomHistory(random, 500));
+
+        assertThatThrownBy(() -> QuoteHistoryCodec.decode("no quotes in here".getBytes())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QuoteHistoryCodec.decode(Arrays.copyOf(encoded, encoded.length - 1))).isInstanceOf(IllegalArgumentException.class);
+        for (int i = 0; i < 200; i++) {
+            byte[] corrupt = encoded.clone();
+            corrupt[random.nextInt(corrupt.length)] ^= 1 << random.nextInt(8);
+            try {
+                QuoteHistoryCodec.decode(corrupt);
+            } catch (IllegalArgumentException e) {
+                // expected for most flipped bits, others change only an amount
+            }
+        }
+    }
+
+    private static IsinQuoteHistory randomHistory(Random random, int length) {
+        IsinQuoteHistory history = new IsinQuoteHistory(ISIN, random.nextBoolean() ? "GER" : null, QuoteSource.values()[random.nextInt(QuoteSource.values().length)]);
+        LocalDate date = START.plusDays(random.nextInt(1000));
+        double amount = random.nextDouble() * 1000;
+        String currency = CURRENCIES[random.nextInt(CURRENCIES.length)];
+        for (int i = 0; i < length; i++) {
+            history.addQuote(date, currency, amount);
+            int gap = random.nextInt(50);
+            date = date.plusDays(gap < 40 ? 1 : gap < 48 ? random.nextInt(10) + 1 : random.nextInt(100000) + 1);
+            int change = random.nextInt(10);
+            amount = change == 0 ? amount : change < 8 ? Math.round(amount * (1 + (random.nextDouble() - 0.5) * 0.04) * 100) / 100.0 : random.nextGaussian() * 1e6;
+            if (random.nextInt(100) == 0) {
+                currency = CURRENCIES[random.nextInt(CURRENCIES.length)];
+            }
+        }
+        return history;
+    }
+}
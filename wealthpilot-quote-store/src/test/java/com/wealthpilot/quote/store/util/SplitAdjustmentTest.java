@@ -0,0 +1,115 @@
+package com.wealthpilot.quote.store.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class SplitAdjustmentTest {
+    private static final LocalDate START = LocalDate.of(2020, 1, 1);
+
+    @Test
+    void multipliesQuotesBeforeExDatesByFactors() {
+        QuoteSeries raw = QuoteSeries.builder()
+                        .add(START, "EUR", 100)
+                        .add(START.plusDays(1), "%", 50)
+                        .add(START.plusDays(2), "EUR", 100)
+                        .add(START.plusDays(3), "EUR", 50)
+                        .add(START.plusDays(4), "EUR", 10)
+                        .build();
+        NavigableMap<LocalDate, Double> factors = new TreeMap<>();
+        factors.put(START.plusDays(3), 0.5);
+        factors.put(START.plusDays(4), 0.2);
+
+        SplitAdjustment adjustment = SplitAdjustment.of(raw, factors);
+
+        assertThat(amounts(adjustment.getAdjusted())).containsExactly(10, 50, 10, 10, 10);
+        assertThat(adjustment.getAdjusted().getCurrency(1)).isEqualTo("%");
+        assertThat(adjustment.getAdjusted().getDate(4)).isEqualTo(START.plusDays(4));
+        assertThat(adjustment.getRecomputed()).isEqualTo(5);
+    }
+
+    @Test
+    void recomputesOnlyAppendedQuotes() {
+        QuoteSeries.Builder builder = QuoteSeries.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add(START.plusDays(i), "EUR", 100 + i);
+        }
+        QuoteSeries raw = builder.build();
+        SplitAdjustment adjustment = SplitAdjustment.of(raw, factors(START.plusDays(50), 0.5));
+
+        SplitAdjustment updated = adjustment.update(builder.add(START.plusDays(100), "EUR", 1).build(), factors(START.plusDays(50), 0.5));
+
+        assertThat(updated.getRecomputed()).isEqualTo(1);
+        assertThat(updated.getAdjusted().getAmount(10)).isEqualTo(55);
+        assertThat(updated.getAdjusted().getAmount(100)).isEqualTo(1);
+        assertThat(adjustment.update(raw, factors(START.plusDays(50), 0.5))).isSameAs(adjustment);
+    }
+
+    @Test
+    void recomputesOnlyQuotesBeforeExDateOfNewFactor() {
+        QuoteSeries.Builder builder = QuoteSeries.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add(START.plusDays(i), "EUR", 100);
+        }
+        QuoteSeries raw = builder.build();
+        SplitAdjustment adjustment = SplitAdjustment.of(raw, factors(START.plusDays(80), 0.5));
+
+        SplitAdjustment updated = adjustment.update(raw, factors(START.plusDays(20), 0.1));
+
+        assertThat(updated.getRecomputed()).isEqualTo(80);
+        assertThat(updated.getAdjusted().getAmount(0)).isEqualTo(10);
+        assertThat(updated.getAdjusted().getAmount(50)).isEqualTo(100);
+    }
+
+    @Test
+    void updatesLikeFullRecomputationForRandomChanges() {
+        Random random = new Random(42);
+        SplitAdjustment adjustment = SplitAdjustment.of(QuoteSeries.EMPTY, new TreeMap<>());
+        IsinQuoteHistory history = new IsinQuoteHistory("DE000A1EWWW0", "GER", QuoteSource.BANK_API);
+        NavigableMap<LocalDate, Double> factors = new TreeMap<>();
+        for (int i = 0; i < 500; i++) {
+            int change = random.nextInt(10);
+            LocalDate date = START.plusDays(random.nextInt(change < 6 ? 1000 : 1100));
+            if (change < 8) {
+                history.addQuote(date, random.nextInt(20) == 0 ? "%" : "EUR", random.nextDouble() * 100);
+            } else if (change == 8) {
+                factors.put(date, random.nextDouble() * 2 + 0.01);
+            } else {
+                factors.remove(factors.isEmpty() ? date : factors.floorKey(date) == null ? factors.firstKey() : factors.floorKey(date));
+            }
+
+            adjustment = adjustment.update(history.getSeries(), factors);
+
+            SplitAdjustment expected = SplitAdjustment.of(history.getSeries(), factors);
+            assertThat(adjustment.getAdjusted().asMap()).isEqualTo(expected.getAdjusted().asMap());
+        }
+    }
+
+    @Test
+    void rejectsInvalidFactors() {
+        assertThatThrownBy(() -> SplitAdjustment.of(QuoteSeries.EMPTY, factors(START, 0))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SplitAdjustment.of(QuoteSeries.EMPTY, factors(START, Double.NaN))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SplitAdjustment.of(QuoteSeries.EMPTY, factors(START, Double.POSITIVE_INFINITY)))
+                        .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static NavigableMap<LocalDate, Double> factors(LocalDate exDate, double factor) {
+        NavigableMap<LocalDate, Double> factors = new TreeMap<>();
+        factors.put(exDate, factor);
+        return factors;
+    }
+
+    private static double[] amounts(QuoteSeries series) {
+        double[] amounts = new double[series.size()];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = series.getAmount(i);
+        }
+        return amounts;
+    }
+}
@@ -0,0 +1,45 @@
+package com.wealthpilot.quote.store.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Local {@link QuoteHistoryProvider} for tests, returning the histories registered by {@link #addHistory(IsinQuoteHistory)}
+ * and failing for ISINs registered by {@link #failFor(String)}.
+ */
+public class StubQuoteHistoryProvider implements QuoteHistoryProvider {
+
+    private final QuoteSource quoteSource;
+    private final Map<String, IsinQuoteHistory> histories = new ConcurrentHashMap<>();
+    private final Map<String, RuntimeException> failures = new ConcurrentHashMap<>();
+
+    public StubQuoteHistoryProvider(QuoteSource quoteSource) {
+        this.quoteSource = quoteSource;
+    }
+
+    public StubQuoteHistoryProvider addHistory(IsinQuoteHistory history) {
+        histories.put(history.getIsin(), history);
+        return this;
+    }
+
+    public StubQuoteHistoryProvider failFor(String isin) {
+        failures.put(isin, new IllegalStateException("Stubbed failure for " + isin));
+        return this;
+    }
+
+    @Override
+    public QuoteSource getQuoteSource() {
+        return quoteSource;
+    }
+
+    @Override
+    public IsinQuoteHistory fetchQuoteHistory(String isin, @Nullable String marketPlace) {
+        RuntimeException failure = failures.get(isin);
+        if (failure != null) {
+            throw failure;
+        }
+        return histories.getOrDefault(isin, new IsinQuoteHistory(isin, marketPlace, quoteSource));
+    }
+}